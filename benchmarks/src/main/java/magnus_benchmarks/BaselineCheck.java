@@ -0,0 +1,109 @@
+package magnus_benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// compares a JMH result file against a stored baseline, both written with '-rf csv', and
+// lists the benchmarks which got slower by more than the threshold
+//
+// Usage: BaselineCheck <baseline.csv> <result.csv> [threshold %]
+// Exits with 1 if any benchmark regressed, so that a build script can stop on it.
+public class BaselineCheck {
+
+    static double threshold = 10.0;  // %
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: BaselineCheck <baseline.csv> <result.csv> [threshold %]");
+            System.exit(-1);
+        }
+        if (args.length > 2) {
+            threshold = Double.parseDouble(args[2]);
+        }
+        try {
+            Map<String, Double> baseline = readScores(args[0]);
+            Map<String, Double> result = readScores(args[1]);
+            int regressions = 0;
+            for (Map.Entry<String, Double> entry: result.entrySet()) {
+                Double before = baseline.get(entry.getKey());
+                if (before == null) {
+                    System.out.println(String.format("%-60s %10.2f  (new)", entry.getKey(), entry.getValue()));
+                    continue;
+                }
+                double change = (entry.getValue() - before) / before * 100;
+                boolean regressed = change > threshold;
+                if (regressed) {
+                    regressions++;
+                }
+                System.out.println(String.format("%-60s %10.2f %10.2f %+7.1f%%%s", entry.getKey(), before, entry.getValue(), change, regressed ? "  REGRESSION" : ""));
+            }
+            for (String name: baseline.keySet()) {
+                if (!result.containsKey(name)) {
+                    System.out.println(String.format("%-60s %10.2f  (missing)", name, baseline.get(name)));
+                }
+            }
+            System.out.println("Regressions over " + threshold + "%: " + regressions);
+            System.exit(regressions == 0 ? 0 : 1);
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    // average time per benchmark and parameter set, keyed as "Benchmark.method:param"
+    static Map<String, Double> readScores(String path) throws IOException {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(path))) {
+            String[] header = split(in.readLine());
+            int score = indexOf(header, "Score");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = split(line);
+                StringBuilder key = new StringBuilder(fields[0]);
+                for (int i = 0; i < header.length; i++) {
+                    if (header[i].startsWith("Param: ") && i < fields.length && !fields[i].isEmpty()) {
+                        key.append(':').append(fields[i]);
+                    }
+                }
+                scores.put(key.toString(), Double.parseDouble(fields[score]));
+            }
+        }
+        return scores;
+    }
+
+    static int indexOf(String[] header, String name) throws IOException {
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IOException("No '" + name + "' column");
+    }
+
+    // one CSV line, fields may be quoted
+    static String[] split(String line) {
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,48 @@
+package magnus_benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import magnus_engine.SensorType;
+import magnus_engine.SimulatedTag;
+import magnus_engine.TemperatureCalibration;
+import org.openjdk.jmh.annotations.*;
+
+// decoding the calibration words of a tag, checked by CRC-16 (Magnus S3) or parity (Xerxes)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalibrationBenchmark {
+
+    short[] magnusS3Words;
+    short[] xerxesWords;
+    byte[] crcBytes;
+
+    @Setup
+    public void setup() {
+        magnusS3Words = SimulatedTag.calibrationWords(SensorType.MAGNUS_S3, 25.0, 2300, 60.0, 2900);
+        xerxesWords = SimulatedTag.calibrationWords(SensorType.XERXES, 25.0, 2300, 60.0, 2900);
+        crcBytes = new byte[] { 0x12, 0x34, 0x56, 0x78, (byte)0x9A, (byte)0xBC };
+    }
+
+    @Benchmark
+    public TemperatureCalibration magnusS3() {
+        return TemperatureCalibration.decode(SensorType.MAGNUS_S3, magnusS3Words);
+    }
+
+    @Benchmark
+    public TemperatureCalibration xerxes() {
+        return TemperatureCalibration.decode(SensorType.XERXES, xerxesWords);
+    }
+
+    @Benchmark
+    public int crc16() {
+        return TemperatureCalibration.crc16(crcBytes);
+    }
+
+    @Benchmark
+    public int crc16Words() {
+        return TemperatureCalibration.crc16(magnusS3Words, 1, 3);
+    }
+}
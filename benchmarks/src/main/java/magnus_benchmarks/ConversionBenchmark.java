@@ -0,0 +1,33 @@
+package magnus_benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// the samples' conversions between embedded read bytes and register words
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+    byte[] dataBytes;
+    short[] dataWords;
+
+    @Setup
+    public void setup() {
+        dataBytes = new byte[] { 0x01, 0x2C, 0x00, 0x0E, 0x09, (byte)0x8A };
+        dataWords = new short[] { 0x012C, 0x000E, 0x098A };
+    }
+
+    @Benchmark
+    public short[] byteArrayToShortArray() {
+        return thingmagic_samples.Common.convertByteArrayToShortArray(dataBytes);
+    }
+
+    @Benchmark
+    public byte[] shortArrayToByteArray() {
+        return thingmagic_samples.Common.convertShortArrayToByteArray(dataWords);
+    }
+}
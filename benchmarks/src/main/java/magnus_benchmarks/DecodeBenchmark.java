@@ -0,0 +1,79 @@
+package magnus_benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import magnus_engine.CalibrationCache;
+import magnus_engine.ReadingBuffer;
+import magnus_engine.Select;
+import magnus_engine.SensorDecoder;
+import magnus_engine.SensorReading;
+import magnus_engine.SensorType;
+import magnus_engine.SimulatedSensorReader;
+import magnus_engine.SimulatedTag;
+import magnus_engine.TagRead;
+import magnus_engine.TemperatureCalibration;
+import org.openjdk.jmh.annotations.*;
+
+// end-to-end decode of one tag read: sensor codes, validity limits, calibration lookup
+// and temperature, through the SensorReading path and the ReadingBuffer path
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({ "MAGNUS_S3", "XERXES" })
+    SensorType type;
+
+    TagRead[] tags;
+    CalibrationCache<TemperatureCalibration> lookupCalibration;
+    ReadingBuffer readings;
+    int next;
+
+    @Setup
+    public void setup() throws Exception {
+        SimulatedTag[] population = SimulatedSensorReader.createPopulation(type, 256, 1);
+        SimulatedSensorReader reader = new SimulatedSensorReader("benchmark", population, 2);
+        reader.timeScale = 0;
+        reader.select(type.selects((byte)3, (byte)31), type.settleMicros);
+        tags = reader.inventory(Select.BANK_RESERVED, type.dataAddress, type.dataLength);
+        lookupCalibration = new CalibrationCache<>(1024);
+        for (TagRead tag: tags) {
+            SimulatedTag source = (SimulatedTag)tag.source;
+            short[] calWords = Arrays.copyOfRange(source.user, type.calibrationAddress, type.calibrationAddress + 4);
+            TemperatureCalibration cal = TemperatureCalibration.decode(type, calWords);
+            lookupCalibration.put(tag.epc, cal, cal.valid);
+        }
+        readings = new ReadingBuffer(type, tags.length);
+    }
+
+    TagRead nextTag() {
+        next = (next + 1) % tags.length;
+        return tags[next];
+    }
+
+    @Benchmark
+    public SensorReading readingPath() {
+        TagRead tag = nextTag();
+        SensorReading reading = SensorDecoder.decode(type, tag);
+        if (reading != null && reading.temperatureStatus == SensorReading.OK) {
+            SensorDecoder.applyCalibration(reading, lookupCalibration.get(tag.epcString()));
+        }
+        return reading;
+    }
+
+    @Benchmark
+    public double bufferPath() {
+        TagRead tag = nextTag();
+        if (readings.size == tags.length) {
+            readings.clear();
+        }
+        int index = SensorDecoder.decode(type, tag, readings);
+        if (index >= 0 && readings.temperatureStatus[index] == SensorReading.OK) {
+            SensorDecoder.applyCalibration(readings, index, lookupCalibration.get(tag.epc));
+        }
+        return index >= 0 ? readings.temperature[index] : 0;
+    }
+}
@@ -0,0 +1,55 @@
+package magnus_benchmarks;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import magnus_engine.EpcTable;
+import magnus_engine.TagRead;
+import org.openjdk.jmh.annotations.*;
+
+// per-tag state lookup from the EPC bytes of a read, EpcTable against the
+// HashMap keyed by hex EPC strings it replaced
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EpcTableBenchmark {
+
+    @Param({ "100000" })
+    int tags;
+
+    byte[][] epcs;
+    EpcTable<Object> table;
+    HashMap<String, Object> map;
+    int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        epcs = new byte[tags][12];
+        table = new EpcTable<>(tags);
+        map = new HashMap<>();
+        for (byte[] epc: epcs) {
+            random.nextBytes(epc);
+            table.put(epc, epc);
+            map.put(TagRead.toHex(epc), epc);
+        }
+    }
+
+    byte[] nextEpc() {
+        next = (next + 7919) % tags;
+        return epcs[next];
+    }
+
+    @Benchmark
+    public Object epcTable() {
+        return table.get(nextEpc());
+    }
+
+    @Benchmark
+    public Object hexStringMap() {
+        return map.get(TagRead.toHex(nextEpc()));
+    }
+}
@@ -0,0 +1,118 @@
+package magnus_benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import magnus_engine.CalibrationStore;
+import magnus_engine.EpcTable;
+import magnus_engine.PopulationGenerator;
+import magnus_engine.ReadingBuffer;
+import magnus_engine.SensorDecoder;
+import magnus_engine.SensorReading;
+import magnus_engine.SensorType;
+import magnus_engine.SimulatedTag;
+import magnus_engine.TagRead;
+import magnus_engine.TemperatureCalibration;
+import org.openjdk.jmh.annotations.*;
+
+// decode, calibration and storage per tag over generated populations of mixed Magnus S2,
+// Magnus S3 and Xerxes tags, 1% of them with corrupted calibration words, so that the
+// cost of cache misses and lookups in large tables shows up
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class PopulationBenchmark {
+
+    @Param({ "10", "10000", "1000000" })
+    int tags;
+
+    SensorType[] types;
+    TagRead[] reads;
+    byte[][] tids;
+    short[][] calWords;
+    EpcTable<TemperatureCalibration> calibrations;
+    ReadingBuffer[] readings;
+    Path storeFile;
+    CalibrationStore store;
+    int next;
+
+    @Setup
+    public void setup() throws Exception {
+        PopulationGenerator generator = new PopulationGenerator(1);
+        types = new SensorType[tags];
+        reads = new TagRead[tags];
+        tids = new byte[tags][];
+        calWords = new short[tags][];
+        calibrations = new EpcTable<>(tags);
+        storeFile = Files.createTempFile("population", ".cal");
+        Files.delete(storeFile);
+        store = CalibrationStore.open(storeFile);
+        for (int i = 0; i < tags; i++) {
+            SimulatedTag tag = generator.tag(i);
+            types[i] = tag.type;
+            reads[i] = generator.read(tag);
+            reads[i].source = null;
+            tids[i] = tag.tid;
+            calWords[i] = PopulationGenerator.calibrationWords(tag);
+            if (calWords[i] != null) {
+                TemperatureCalibration cal = TemperatureCalibration.decode(tag.type, calWords[i]);
+                calibrations.put(tag.epc, cal);
+                store.put(tag.tid, tag.epc, tag.type, calWords[i]);
+            }
+        }
+        readings = new ReadingBuffer[SensorType.values().length];
+        for (SensorType type: SensorType.values()) {
+            readings[type.ordinal()] = new ReadingBuffer(type, 1024);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        store.close();
+        Files.deleteIfExists(storeFile);
+    }
+
+    // tags in a scattered order, as a large population comes in over the rounds
+    int nextTag() {
+        next = (int)((next + 7919L) % tags);
+        return next;
+    }
+
+    @Benchmark
+    public double decode() {
+        int tag = nextTag();
+        SensorType type = types[tag];
+        ReadingBuffer buffer = readings[type.ordinal()];
+        if (buffer.size == 1024) {
+            buffer.clear();
+        }
+        int index = SensorDecoder.decode(type, reads[tag], buffer);
+        if (index >= 0 && buffer.temperatureStatus[index] == SensorReading.OK) {
+            SensorDecoder.applyCalibration(buffer, index, calibrations.get(reads[tag].epc));
+        }
+        return index >= 0 ? buffer.temperature[index] : 0;
+    }
+
+    @Benchmark
+    public TemperatureCalibration calibration() {
+        int tag = nextTag();
+        return calWords[tag] == null ? null : TemperatureCalibration.decode(types[tag], calWords[tag]);
+    }
+
+    @Benchmark
+    public short[] storeLookup() {
+        return store.wordsByEpc(reads[nextTag()].epc);
+    }
+
+    @Benchmark
+    public int storeUpdate() throws Exception {
+        int tag = nextTag();
+        if (calWords[tag] != null) {
+            store.put(tids[tag], reads[tag].epc, types[tag], calWords[tag]);
+        }
+        return tag;
+    }
+}
@@ -0,0 +1,58 @@
+package magnus_benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import com.nordicid.nurapi.CustomExchangeParams;
+import com.nordicid.nurapi.NurApi;
+import com.nordicid.nurapi.NurInventoryExtendedFilter;
+import com.thingmagic.Gen2;
+import magnus_engine.Select;
+import magnus_engine.SensorType;
+import org.openjdk.jmh.annotations.*;
+
+// encoding the On-Chip RSSI filter and sensor activation Select commands, and looking
+// up the encodings already compiled
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectBenchmark {
+
+    byte[] ocrssiMask;
+    byte[] noMask;
+    Select ocrssiSelect;
+
+    @Setup
+    public void setup() {
+        ocrssiMask = new byte[] { (byte)(0x20 | 2) };
+        noMask = new byte[] { };
+        ocrssiSelect = new Select(Select.TARGET_SL, 0, Select.BANK_USER, 0xD0, 8, ocrssiMask);
+        nordicid_samples.Common.customExchangeSelects.compile(ocrssiSelect);
+    }
+
+    @Benchmark
+    public Gen2.Select createGen2Select() {
+        return thingmagic_samples.Common.createGen2Select(4, 0, Gen2.Bank.USER, 0xD0, 8, ocrssiMask);
+    }
+
+    @Benchmark
+    public CustomExchangeParams createCustomExchangeSelect() {
+        return nordicid_samples.Common.createCustomExchangeSelect(NurApi.SESSION_SL, 5, NurApi.BANK_USER, 0xE0, 0, noMask);
+    }
+
+    @Benchmark
+    public NurInventoryExtendedFilter createInventoryExtendedSelect() {
+        return nordicid_samples.Common.createInventoryExtendedSelect(NurApi.SESSION_SL, 0, NurApi.BANK_USER, 0xD0, 8, ocrssiMask);
+    }
+
+    @Benchmark
+    public CustomExchangeParams compiledCustomExchangeSelect() {
+        return nordicid_samples.Common.customExchangeSelects.compile(ocrssiSelect);
+    }
+
+    @Benchmark
+    public Select[] sensorTypeSelects() {
+        return SensorType.MAGNUS_S3.selects((byte)3, (byte)18);
+    }
+}
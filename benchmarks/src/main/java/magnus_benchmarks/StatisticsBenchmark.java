@@ -0,0 +1,58 @@
+package magnus_benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import magnus_engine.ReadingBuffer;
+import magnus_engine.SensorReading;
+import magnus_engine.SensorType;
+import magnus_engine.TagRead;
+import magnus_engine.TagStatistics;
+import org.openjdk.jmh.annotations.*;
+
+// one reading added to the streaming summaries of its tag, going through a round's
+// readings in order over a population large enough that the summaries don't stay in
+// the cache
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsBenchmark {
+
+    @Param({ "100000" })
+    int tags;
+
+    ReadingBuffer readings;
+    TagStatistics statistics;
+    int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        readings = new ReadingBuffer(SensorType.MAGNUS_S3, tags);
+        statistics = new TagStatistics(SensorType.MAGNUS_S3, tags);
+        for (int i = 0; i < tags; i++) {
+            byte[] epc = new byte[12];
+            random.nextBytes(epc);
+            int index = readings.add(new TagRead(epc, 1, 915000, -50, new byte[0], 0, null));
+            readings.ocrssiCode[index] = 8 + random.nextInt(8);
+            readings.temperatureCode[index] = 2000 + random.nextInt(100);
+            readings.temperatureStatus[index] = SensorReading.OK;
+            readings.temperature[index] = 20 + random.nextGaussian();
+        }
+        // past the first values, which are only sorted in
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < tags; i++) {
+                statistics.accept(readings, i);
+            }
+        }
+    }
+
+    @Benchmark
+    public int accept() {
+        next = (next + 1) % tags;
+        statistics.accept(readings, next);
+        return next;
+    }
+}
@@ -0,0 +1,8 @@
+echo off
+cls
+if not exist ".\build" mkdir .\build
+javac -d ./build src/magnus_engine/*.java
+if %ERRORLEVEL% EQU 0 (
+    java -cp ./build magnus_engine.FleetDemo
+)
+pause
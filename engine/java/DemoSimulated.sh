@@ -0,0 +1,8 @@
+#!/bin/bash
+clear
+mkdir -p ./build
+javac -d ./build src/magnus_engine/*.java
+if [ $? -eq 0 ]; then
+    java -cp ./build magnus_engine.SimulatedDemo
+fi
+read -p "Press any key to continue . . ."
@@ -0,0 +1,7 @@
+echo off
+rem usage: ReadingHistory.bat <log directory> <EPC> [from] [to]
+if not exist ".\build" mkdir .\build
+javac -d ./build src/magnus_engine/*.java
+if %ERRORLEVEL% EQU 0 (
+    java -cp ./build magnus_engine.ReadingHistory %*
+)
@@ -0,0 +1,7 @@
+#!/bin/bash
+# usage: ./ReadingHistory.sh <log directory> <EPC> [from] [to]
+mkdir -p ./build
+javac -d ./build src/magnus_engine/*.java
+if [ $? -eq 0 ]; then
+    java -cp ./build magnus_engine.ReadingHistory "$@"
+fi
@@ -0,0 +1,7 @@
+echo off
+rem usage: ReplayReader.bat <capture file> [speed] [sensor type] [calibration file]
+if not exist ".\build" mkdir .\build
+javac -d ./build src/magnus_engine/*.java
+if %ERRORLEVEL% EQU 0 (
+    java -cp ./build magnus_engine.ReplayReader %*
+)
@@ -0,0 +1,7 @@
+#!/bin/bash
+# usage: ./ReplayReader.sh <capture file> [speed] [sensor type] [calibration file]
+mkdir -p ./build
+javac -d ./build src/magnus_engine/*.java
+if [ $? -eq 0 ]; then
+    java -cp ./build magnus_engine.ReplayReader "$@"
+fi
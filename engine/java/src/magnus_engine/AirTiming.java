@@ -0,0 +1,98 @@
+package magnus_engine;
+
+// approximate EPC Gen2 air interface timing, used to charge simulated commands with
+// the time they would take on a real reader
+public class AirTiming {
+
+    /**
+     * Link Settings
+     * Defaults match Common.blf, Common.encoding and Tari in the ThingMagic samples
+     */
+    public double tariMicros = 25;
+    public int blfKhz = 250;
+    public int millerM = 4;
+
+    // reader to tag: data-0 is one Tari, data-1 between 1.5 and 2 Tari
+    double readerBitMicros() {
+        return tariMicros * 1.375;
+    }
+
+    // tag to reader: M subcarrier cycles per bit
+    double tagBitMicros() {
+        return millerM * 1000.0 / blfKhz;
+    }
+
+    // frame-sync ahead of every reader command: delimiter, data-0 and RTcal
+    double readerPreambleMicros() {
+        return 12.5 + tariMicros + 2.75 * tariMicros;
+    }
+
+    // a Query starts with the full preamble, which adds TRcal
+    double queryPreambleMicros() {
+        return readerPreambleMicros() + 3 * 2.75 * tariMicros;
+    }
+
+    // tag preamble including pilot tone
+    double tagPreambleMicros() {
+        return 10 * tagBitMicros();
+    }
+
+    // turnaround gaps T1 (reader to tag reply) and T2 (tag reply to next command)
+    double t1Micros() {
+        return Math.max(2.75 * tariMicros, 10 * 1000.0 / blfKhz);
+    }
+
+    double t2Micros() {
+        return 10 * 1000.0 / blfKhz;
+    }
+
+    double readerCommandMicros(int bits) {
+        return readerPreambleMicros() + bits * readerBitMicros();
+    }
+
+    double tagReplyMicros(int bits) {
+        return t1Micros() + tagPreambleMicros() + bits * tagBitMicros() + t2Micros();
+    }
+
+    // Select: CMD, Target, Action, MemBank, Pointer (EBV), Length, Mask, Truncate, CRC-16
+    public long selectMicros(Select select) {
+        int pointerBits = select.pointer < 0x80 ? 8 : (select.pointer < 0x4000 ? 16 : 24);
+        int bits = 4 + 3 + 3 + 2 + pointerBits + 8 + select.length + 1 + 16;
+        return (long)readerCommandMicros(bits);
+    }
+
+    // one tag singulated, acknowledged and read with 'readWords' words of embedded read
+    public long singulationMicros(int epcBytes, int readWords) {
+        double micros = 0;
+        micros += readerCommandMicros(4) + tagReplyMicros(16);                    // QueryRep, RN16
+        micros += readerCommandMicros(18) + tagReplyMicros((2 + epcBytes + 2) * 8); // ACK, PC + EPC + CRC
+        if (readWords > 0) {
+            micros += readerCommandMicros(8 + 16 + 16) + tagReplyMicros(32);      // Req_RN, handle
+            micros += readerCommandMicros(8 + 2 + 8 + 8 + 16 + 16)                 // Read
+                    + tagReplyMicros(1 + 16 * readWords + 16 + 16);
+        }
+        return (long)micros;
+    }
+
+    // a whole inventory round; with a well chosen Q roughly 1.7 empty or
+    // collided slots are spent for every tag singulated
+    public long roundMicros(int tags, int epcBytes, int readWords) {
+        double emptySlot = readerCommandMicros(4) + t1Micros() + tagBitMicros() * 4;
+        double collidedSlot = readerCommandMicros(4) + tagReplyMicros(16);
+        double query = queryPreambleMicros() + 22 * readerBitMicros();
+        double micros = query + tags * (singulationMicros(epcBytes, readWords) + 0.9 * emptySlot + 0.8 * collidedSlot);
+        if (tags == 0) {
+            micros += 4 * emptySlot;
+        }
+        return (long)micros;
+    }
+
+    // a whole inventory round after its Select commands, as a sample sends them
+    public long roundMicros(Select[] selects, int tags, int epcBytes, int readWords) {
+        long micros = roundMicros(tags, epcBytes, readWords);
+        for (Select select: selects) {
+            micros += selectMicros(select);
+        }
+        return micros;
+    }
+}
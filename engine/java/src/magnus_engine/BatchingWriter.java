@@ -0,0 +1,203 @@
+package magnus_engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+// writes readings in a ReadingFormat from its own thread, in batches
+//
+// accept() only copies the reading into a pooled SensorReading and hands it to the
+// writer thread through a ReadQueue, so a slow console or disk never stretches a
+// round. If the writer falls behind the reading is dropped and counted, close()
+// reports how many. The writer formats readings into one buffer and writes it out
+// once it holds flushSize bytes, or when the oldest reading in it has waited
+// flushMillis.
+public class BatchingWriter implements ReadingSink {
+
+    /**
+     * Writer Settings
+     *
+     * Flush Size: bytes collected before they are written out
+     *
+     * Flush Interval: longest a formatted reading waits to be written, in milliseconds
+     *
+     * Queue Capacity: readings buffered between the read loop and the writer
+     */
+    public int flushSize = 64 * 1024;
+    public long flushMillis = 100;
+    public static int queueCapacity = 65536;
+
+    final ReadingFormat format;
+    final OutputStream out;
+    final ReadQueue<Object> pending;  // readings and lines of text, in order
+    final ReadQueue<SensorReading> free;
+    final Thread writer;
+    volatile boolean running = true;
+
+    // writer state, only used by the writer thread
+    final OutputBuffer buffer;
+
+    // totals since the writer was created
+    public volatile long written;
+    public volatile long errors;
+
+    // write to 'out' in 'format', starting with the format's header if 'header' is set
+    public BatchingWriter(ReadingFormat format, OutputStream out, boolean header) {
+        this.format = format;
+        this.out = out;
+        this.pending = new ReadQueue<>(queueCapacity);
+        this.free = new ReadQueue<>(queueCapacity);
+        this.buffer = new OutputBuffer(flushSize + 1024);
+        if (header) {
+            format.header(buffer);
+        }
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "BatchingWriter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // append to a file in the format its extension names, see ReadingFormat.forFile()
+    public static BatchingWriter open(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        boolean header = !Files.exists(path) || Files.size(path) == 0;
+        OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new BatchingWriter(ReadingFormat.forFile(fileName), out, header);
+    }
+
+    public void accept(SensorReading reading) {
+        SensorReading copy = reading(reading.type, reading.tag);
+        copy.reader = reading.reader;
+        copy.moistureCode = reading.moistureCode;
+        copy.ocrssiCode = reading.ocrssiCode;
+        copy.temperatureCode = reading.temperatureCode;
+        copy.backport1Code = reading.backport1Code;
+        copy.backport2Code = reading.backport2Code;
+        copy.moistureStatus = reading.moistureStatus;
+        copy.temperatureStatus = reading.temperatureStatus;
+        copy.backportStatus = reading.backportStatus;
+        copy.temperature = reading.temperature;
+        submit(copy);
+    }
+
+    public void accept(ReadingBuffer readings, int index) {
+        SensorReading copy = reading(readings.type, readings.tags[index]);
+        copy.reader = readings.reader;
+        copy.moistureCode = readings.moistureCode[index];
+        copy.ocrssiCode = readings.ocrssiCode[index];
+        copy.temperatureCode = readings.temperatureCode[index];
+        copy.backport1Code = readings.backport1Code[index];
+        copy.backport2Code = readings.backport2Code[index];
+        copy.moistureStatus = readings.moistureStatus[index];
+        copy.temperatureStatus = readings.temperatureStatus[index];
+        copy.backportStatus = readings.backportStatus[index];
+        copy.temperature = readings.temperature[index];
+        submit(copy);
+    }
+
+    // a line of text written in order with the readings before it, e.g. a round's header
+    // on the console; dropped like a reading if the writer falls behind
+    public void println(String line) {
+        pending.offer(line);
+    }
+
+    // readings dropped because the writer fell behind
+    public long dropped() {
+        return pending.dropped();
+    }
+
+    // write what is queued and stop the writer; the stream is closed unless it is the console
+    public void close() throws InterruptedException {
+        running = false;
+        writer.join();
+        try {
+            if (out == System.out || out == System.err) {
+                out.flush();
+            }
+            else {
+                out.close();
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Error: output: " + e.getMessage());
+            errors++;
+        }
+        if (dropped() > 0) {
+            System.out.println("Error: output: " + dropped() + " reading(s) dropped, the writer fell behind");
+        }
+    }
+
+    // a free reading for a tag, the tag itself is never reused by the readers
+    SensorReading reading(SensorType type, TagRead tag) {
+        SensorReading reading = free.poll();
+        if (reading == null) {
+            return new SensorReading(type, tag);
+        }
+        reading.type = type;
+        reading.tag = tag;
+        return reading;
+    }
+
+    void submit(SensorReading reading) {
+        if (!pending.offer(reading)) {
+            reading.tag = null;
+            free.offer(reading);
+        }
+    }
+
+    void write() {
+        long flushAt = Long.MAX_VALUE;  // when the oldest buffered reading is due
+        while (true) {
+            Object item = pending.poll();
+            if (item == null) {
+                if (buffer.length() != 0 && System.currentTimeMillis() >= flushAt) {
+                    flush();
+                    flushAt = Long.MAX_VALUE;
+                }
+                if (!running && pending.size() == 0) {
+                    break;
+                }
+                LockSupport.parkNanos(1000000);
+                continue;
+            }
+            if (item instanceof String) {
+                buffer.append((String)item);
+                buffer.newLine();
+            }
+            else {
+                SensorReading reading = (SensorReading)item;
+                format.format(reading, buffer);
+                reading.tag = null;
+                free.offer(reading);
+                written++;
+            }
+            if (flushAt == Long.MAX_VALUE) {
+                flushAt = System.currentTimeMillis() + flushMillis;
+            }
+            if (buffer.length() >= flushSize) {
+                flush();
+                flushAt = Long.MAX_VALUE;
+            }
+        }
+        flush();
+    }
+
+    void flush() {
+        try {
+            buffer.writeTo(out);
+            out.flush();
+        }
+        catch (IOException e) {
+            System.out.println("Error: output: " + e.getMessage());
+            errors++;
+        }
+        buffer.clear();
+    }
+}
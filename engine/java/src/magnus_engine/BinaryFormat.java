@@ -0,0 +1,84 @@
+package magnus_engine;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+// compact binary readings, big-endian: a header of magic "MRBN" and version, then one
+// variable-size record per reading
+//
+// Record: type (1), EPC length (1), EPC, timestamp (8), antenna (1), frequency (4),
+// RSSI (2), moisture, temperature and backport status (1 each), on-chip RSSI, moisture,
+// temperature, backport 1 and backport 2 codes (2 each, 0xFFFF if not read), temperature
+// in degC (8, NaN unless its status is ok). A reading of a 96-bit EPC takes 50 bytes.
+//
+// The reader name is not recorded, write one file per reader to keep it.
+public class BinaryFormat implements ReadingFormat {
+
+    static final int MAGIC = 0x4D52424E;  // "MRBN"
+    static final int VERSION = 1;
+
+    public void header(OutputBuffer out) {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    public void format(SensorReading reading, OutputBuffer out) {
+        TagRead tag = reading.tag;
+        out.writeByte(reading.type.ordinal());
+        out.writeByte(tag.epc.length);
+        out.write(tag.epc);
+        out.writeLong(tag.timestamp);
+        out.writeByte(tag.antenna);
+        out.writeInt(tag.frequency);
+        out.writeShort(tag.rssi);
+        out.writeByte(reading.moistureStatus);
+        out.writeByte(reading.temperatureStatus);
+        out.writeByte(reading.backportStatus);
+        out.writeShort(reading.ocrssiCode);
+        out.writeShort(reading.moistureCode);
+        out.writeShort(reading.temperatureCode);
+        out.writeShort(reading.backport1Code);
+        out.writeShort(reading.backport2Code);
+        out.writeLong(Double.doubleToRawLongBits(reading.temperature));
+    }
+
+    // check the header of a binary readings file
+    public static void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new IOException("not a binary readings file");
+        }
+    }
+
+    // the next reading, null at the end of the file
+    public static SensorReading read(DataInputStream in) throws IOException {
+        int type;
+        try {
+            type = in.readUnsignedByte();
+        }
+        catch (EOFException e) {
+            return null;
+        }
+        byte[] epc = new byte[in.readUnsignedByte()];
+        in.readFully(epc);
+        long timestamp = in.readLong();
+        int antenna = in.readUnsignedByte();
+        int frequency = in.readInt();
+        int rssi = in.readShort();
+        SensorReading reading = new SensorReading(SensorType.values()[type], new TagRead(epc, antenna, frequency, rssi, null, timestamp, null));
+        reading.moistureStatus = in.readUnsignedByte();
+        reading.temperatureStatus = in.readUnsignedByte();
+        reading.backportStatus = in.readUnsignedByte();
+        reading.ocrssiCode = code(in.readUnsignedShort());
+        reading.moistureCode = code(in.readUnsignedShort());
+        reading.temperatureCode = code(in.readUnsignedShort());
+        reading.backport1Code = code(in.readUnsignedShort());
+        reading.backport2Code = code(in.readUnsignedShort());
+        reading.temperature = Double.longBitsToDouble(in.readLong());
+        return reading;
+    }
+
+    static int code(int word) {
+        return word == 0xFFFF ? -1 : word;
+    }
+}
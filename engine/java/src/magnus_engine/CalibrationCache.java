@@ -0,0 +1,113 @@
+package magnus_engine;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// bounded cache of temperature calibrations by EPC, evicting the least recently used
+// tags once full
+//
+// Calibrations that failed their CRC-16 or parity check are cached as well (negative
+// entries) so that such tags aren't singulated again every round. Negative entries
+// expire after negativeMillis so that a tag is eventually given another chance.
+//
+// Looking a tag up by its EPC bytes allocates nothing, the EPC is only copied when a
+// calibration is added.
+public class CalibrationCache<T> {
+
+    final int capacity;
+    final long negativeMillis;
+    final LinkedHashMap<EpcKey, Cached<T>> entries;
+    final EpcKey probe = new EpcKey(new byte[0]);
+
+    // statistics since the cache was created
+    public long hits;
+    public long misses;
+    public long evictions;
+
+    static class Cached<T> {
+        final T calibration;
+        final long expires;  // 0 for valid calibrations
+
+        Cached(T calibration, long expires) {
+            this.calibration = calibration;
+            this.expires = expires;
+        }
+    }
+
+    // EPC as a map key, compared by content
+    static class EpcKey {
+        byte[] epc;
+        int hash;
+
+        EpcKey(byte[] epc) {
+            set(epc);
+        }
+
+        void set(byte[] epc) {
+            this.epc = epc;
+            this.hash = Arrays.hashCode(epc);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof EpcKey && Arrays.equals(epc, ((EpcKey)other).epc);
+        }
+    }
+
+    public CalibrationCache(int capacity) {
+        this(capacity, 10 * 60 * 1000);
+    }
+
+    public CalibrationCache(int capacity, long negativeMillis) {
+        this.capacity = capacity;
+        this.negativeMillis = negativeMillis;
+        this.entries = new LinkedHashMap<EpcKey, Cached<T>>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<EpcKey, Cached<T>> eldest) {
+                if (size() > CalibrationCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // cached calibration of a tag, null if it has to be read
+    public T get(String epc) {
+        return get(TagRead.fromHex(epc));
+    }
+
+    public synchronized T get(byte[] epc) {
+        probe.set(epc);
+        Cached<T> entry = entries.get(probe);
+        if (entry != null && entry.expires != 0 && entry.expires < System.currentTimeMillis()) {
+            entries.remove(probe);
+            entry = null;
+        }
+        probe.epc = null;
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.calibration;
+    }
+
+    // cache a calibration, 'valid' is false if it failed its CRC-16 or parity check
+    public void put(String epc, T calibration, boolean valid) {
+        put(TagRead.fromHex(epc), calibration, valid);
+    }
+
+    public synchronized void put(byte[] epc, T calibration, boolean valid) {
+        long expires = valid ? 0 : System.currentTimeMillis() + negativeMillis;
+        entries.put(new EpcKey(epc.clone()), new Cached<T>(calibration, expires));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,238 @@
+package magnus_engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+
+// temperature calibration words of every tag seen so far, kept across restarts in a
+// memory-mapped file of fixed-size records
+//
+// Records are keyed by the tag's TID, which can't be rewritten, and also remember the
+// EPC the tag was last seen with so that a known tag needs no singulation at all.
+// If a tag's EPC is rewritten the EPC lookup misses, the TID is read again and the
+// record is updated with the new EPC. An EPC claimed by the records of more than one
+// TID, a duplicate or reused EPC, is left out of the EPC lookup altogether, so those
+// tags are always identified by their TID instead of getting another tag's
+// calibration. Calibration words failing their CRC-16 or parity are never stored, a
+// bad read is read again rather than kept.
+public class CalibrationStore {
+
+    // file layout
+    static final int MAGIC = 0x4D43414C;  // "MCAL"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;    // magic, version, record count
+    static final int RECORD_SIZE = 64;
+    static final int INITIAL_CAPACITY = 1024;
+
+    // record layout
+    static final int STATUS = 0;          // 0 = empty, 1 = in use
+    static final int TYPE = 1;            // SensorType ordinal
+    static final int TID_LENGTH = 2;
+    static final int EPC_LENGTH = 3;
+    static final int WORDS = 4;           // 4 calibration words
+    static final int TID = 12;            // up to 20 bytes
+    static final int EPC = 32;            // up to 32 bytes
+    static final int MAX_TID_LENGTH = 20;
+    static final int MAX_EPC_LENGTH = 32;
+
+    final FileChannel channel;
+    MappedByteBuffer buffer;
+    int capacity;
+    int count;
+    final HashMap<String, Integer> byTid = new HashMap<>();
+    final HashMap<String, Integer> byEpc = new HashMap<>();
+    final HashSet<String> ambiguousEpcs = new HashSet<>();  // claimed by more than one TID
+
+    CalibrationStore(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static CalibrationStore open(String fileName) throws IOException {
+        return open(Paths.get(fileName));
+    }
+
+    public static CalibrationStore open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        CalibrationStore store = new CalibrationStore(channel);
+        long size = channel.size();
+        if (size == 0) {
+            store.map(INITIAL_CAPACITY);
+            store.buffer.putInt(0, MAGIC);
+            store.buffer.putInt(4, VERSION);
+            store.buffer.putInt(8, 0);
+        }
+        else {
+            store.map((int)((size - HEADER_SIZE) / RECORD_SIZE));
+            if (store.buffer.getInt(0) != MAGIC || store.buffer.getInt(4) != VERSION) {
+                channel.close();
+                throw new IOException(path + " is not a calibration store");
+            }
+            store.load();
+        }
+        return store;
+    }
+
+    // calibration words of a tag by its TID, null if unknown
+    public synchronized short[] words(byte[] tid) {
+        Integer record = byTid.get(TagRead.toHex(tid));
+        return record == null ? null : readWords(record);
+    }
+
+    // calibration words of a tag by the EPC it was last seen with, null if unknown
+    public synchronized short[] wordsByEpc(byte[] epc) {
+        Integer record = byEpc.get(TagRead.toHex(epc));
+        return record == null ? null : readWords(record);
+    }
+
+    public synchronized SensorType type(byte[] tid) {
+        Integer record = byTid.get(TagRead.toHex(tid));
+        return record == null ? null : SensorType.values()[buffer.get(offset(record) + TYPE)];
+    }
+
+    // TID of a tag by the EPC it was last seen with, null if unknown
+    public synchronized byte[] tidByEpc(byte[] epc) {
+        Integer record = byEpc.get(TagRead.toHex(epc));
+        if (record == null) {
+            return null;
+        }
+        int offset = offset(record);
+        byte[] tid = new byte[buffer.get(offset + TID_LENGTH)];
+        for (int i = 0; i < tid.length; i++) {
+            tid[i] = buffer.get(offset + TID + i);
+        }
+        return tid;
+    }
+
+    // add or update the record of a tag, false if the calibration words fail their check
+    // and weren't stored
+    public synchronized boolean put(byte[] tid, byte[] epc, SensorType type, short[] calWords) throws IOException {
+        if (tid.length > MAX_TID_LENGTH || epc.length > MAX_EPC_LENGTH) {
+            throw new IllegalArgumentException("TID or EPC too long");
+        }
+        if (type.hasTemperature() && !TemperatureCalibration.decode(type, calWords).valid) {
+            return false;
+        }
+        String tidKey = TagRead.toHex(tid);
+        Integer record = byTid.get(tidKey);
+        if (record == null) {
+            if (count == capacity) {
+                map(capacity * 2);
+            }
+            record = count;
+        }
+        else {
+            String oldEpcKey = epcKey(record);
+            if (record.equals(byEpc.get(oldEpcKey))) {
+                byEpc.remove(oldEpcKey);
+            }
+        }
+        int offset = offset(record);
+        buffer.put(offset + TYPE, (byte)type.ordinal());
+        buffer.put(offset + TID_LENGTH, (byte)tid.length);
+        buffer.put(offset + EPC_LENGTH, (byte)epc.length);
+        for (int i = 0; i < 4; i++) {
+            buffer.putShort(offset + WORDS + 2 * i, calWords[i]);
+        }
+        for (int i = 0; i < tid.length; i++) {
+            buffer.put(offset + TID + i, tid[i]);
+        }
+        for (int i = 0; i < epc.length; i++) {
+            buffer.put(offset + EPC + i, epc[i]);
+        }
+        // mark the record in use only once it is complete
+        buffer.put(offset + STATUS, (byte)1);
+        if (record == count) {
+            count++;
+            buffer.putInt(8, count);
+        }
+        byTid.put(tidKey, record);
+        indexEpc(TagRead.toHex(epc), record);
+        return true;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    // write pending changes to disk
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // rebuild the in-memory indexes from the file
+    void load() {
+        int stored = buffer.getInt(8);
+        count = 0;
+        for (int record = 0; record < Math.min(stored, capacity); record++) {
+            if (buffer.get(offset(record) + STATUS) != 1) {
+                // a record interrupted while being written ends the file
+                break;
+            }
+            byTid.put(tidKey(record), record);
+            indexEpc(epcKey(record), record);
+            count++;
+        }
+    }
+
+    // add a record to the EPC lookup, unless another TID's record claims the EPC as well
+    void indexEpc(String epcKey, int record) {
+        if (ambiguousEpcs.contains(epcKey)) {
+            return;
+        }
+        Integer other = byEpc.get(epcKey);
+        if (other != null && other != record && !tidKey(other).equals(tidKey(record))) {
+            byEpc.remove(epcKey);
+            ambiguousEpcs.add(epcKey);
+            return;
+        }
+        byEpc.put(epcKey, record);
+    }
+
+    // map the file for 'records' records, growing it if needed
+    void map(int records) throws IOException {
+        capacity = Math.max(records, INITIAL_CAPACITY);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)capacity * RECORD_SIZE);
+    }
+
+    short[] readWords(int record) {
+        int offset = offset(record);
+        short[] calWords = new short[4];
+        for (int i = 0; i < 4; i++) {
+            calWords[i] = buffer.getShort(offset + WORDS + 2 * i);
+        }
+        return calWords;
+    }
+
+    String tidKey(int record) {
+        int offset = offset(record);
+        return key(offset + TID, buffer.get(offset + TID_LENGTH));
+    }
+
+    String epcKey(int record) {
+        int offset = offset(record);
+        return key(offset + EPC, buffer.get(offset + EPC_LENGTH));
+    }
+
+    String key(int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+        return TagRead.toHex(bytes);
+    }
+
+    static int offset(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+}
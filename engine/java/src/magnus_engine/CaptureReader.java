@@ -0,0 +1,147 @@
+package magnus_engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// records the raw results of another reader into a capture file for ReplayReader:
+// every inventory's tag reads (EPC, antenna, frequency, RSSI, embedded read data and
+// timestamp) and every memory read, whether it found the tag or not
+//
+// Capture file, big-endian: magic "MRCP", version (1), sensor type ordinal (1, 255 if
+// unknown), reader name (modified UTF-8), then records of
+// - inventory: 1, capture time (8), bank (1), address (2), length (1), tag count (4)
+//   and per tag EPC length (1), EPC, antenna (1), frequency (4), RSSI (2),
+//   data length (2, -1 if none), data, timestamp (8)
+// - memory read: 2, capture time (8), EPC length (1), EPC, bank (1), address (2),
+//   length (1), word count (2, -1 if the tag was not found), words
+public class CaptureReader implements SensorReader {
+
+    static final int MAGIC = 0x4D524350;  // "MRCP"
+    static final int VERSION = 1;
+    static final int INVENTORY = 1;
+    static final int MEMORY_READ = 2;
+
+    final SensorReader reader;
+    final DataOutputStream out;
+
+    // totals since the capture was started
+    public long inventories;
+    public long memoryReads;
+    public long errors;  // records that could not be written
+
+    public CaptureReader(SensorReader reader, SensorType type, String fileName) throws IOException {
+        this.reader = reader;
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 65536));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(type == null ? 255 : type.ordinal());
+        out.writeUTF(reader.name());
+    }
+
+    public String name() {
+        return reader.name();
+    }
+
+    public void select(Select[] selects, int settleMicros) throws Exception {
+        reader.select(selects, settleMicros);
+    }
+
+    public int maxSelects() {
+        return reader.maxSelects();
+    }
+
+    public TagRead[] inventory(int bank, int address, int length) throws Exception {
+        TagRead[] tags = reader.inventory(bank, address, length);
+        synchronized (out) {
+            try {
+                out.writeByte(INVENTORY);
+                out.writeLong(System.currentTimeMillis());
+                out.writeByte(bank);
+                out.writeShort(address);
+                out.writeByte(length);
+                out.writeInt(tags.length);
+                for (TagRead tag: tags) {
+                    writeEpc(tag.epc);
+                    out.writeByte(tag.antenna);
+                    out.writeInt(tag.frequency);
+                    out.writeShort(tag.rssi);
+                    if (tag.data == null) {
+                        out.writeShort(-1);
+                    }
+                    else {
+                        out.writeShort(tag.data.length);
+                        out.write(tag.data);
+                    }
+                    out.writeLong(tag.timestamp);
+                }
+                inventories++;
+            }
+            catch (IOException e) {
+                captureError(e);
+            }
+        }
+        return tags;
+    }
+
+    public short[] readMemBlock(TagRead tag, int bank, int address, int length) throws Exception {
+        short[] words = null;
+        try {
+            words = reader.readMemBlock(tag, bank, address, length);
+            return words;
+        }
+        finally {
+            // a failed capture must not replace the reader's own exception, it is counted
+            synchronized (out) {
+                try {
+                    out.writeByte(MEMORY_READ);
+                    out.writeLong(System.currentTimeMillis());
+                    writeEpc(tag.epc);
+                    out.writeByte(bank);
+                    out.writeShort(address);
+                    out.writeByte(length);
+                    if (words == null) {
+                        out.writeShort(-1);
+                    }
+                    else {
+                        out.writeShort(words.length);
+                        for (short word: words) {
+                            out.writeShort(word);
+                        }
+                    }
+                    memoryReads++;
+                }
+                catch (IOException e) {
+                    captureError(e);
+                }
+            }
+        }
+    }
+
+    public void setPower(int antenna, double dBm) throws Exception {
+        reader.setPower(antenna, dBm);
+    }
+
+    public void close() {
+        reader.close();
+        synchronized (out) {
+            try {
+                out.close();
+            }
+            catch (IOException e) {
+                System.out.println("Error: capture: " + e.getMessage());
+            }
+        }
+    }
+
+    void captureError(IOException e) {
+        System.out.println("Error: capture: " + e.getMessage());
+        errors++;
+    }
+
+    void writeEpc(byte[] epc) throws IOException {
+        out.writeByte(epc.length);
+        out.write(epc);
+    }
+}
@@ -0,0 +1,25 @@
+package magnus_engine;
+
+// prints readings in the same format as the samples' printSensorResults, from the
+// writer thread of a BatchingWriter so a slow console never stretches a round
+//
+// Print the other lines of a round, like "Read Attempt #1", with println() rather
+// than System.out, so they come out in order with the readings on the one writer
+// thread. Call close() at the end to print what is still queued; it also reports
+// readings dropped because the console fell behind.
+public class ConsoleSink extends BatchingWriter {
+
+    public ConsoleSink() {
+        super(new TextFormat(), System.out, false);
+    }
+
+    // once closed the lines are printed directly
+    public void println(String line) {
+        if (running) {
+            super.println(line);
+        }
+        else {
+            System.out.println(line);
+        }
+    }
+}
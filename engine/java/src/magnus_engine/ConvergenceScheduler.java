@@ -0,0 +1,176 @@
+package magnus_engine;
+
+import java.util.Arrays;
+
+// ends a reading cycle as soon as its readings are good enough, instead of after a
+// fixed number of read attempts
+//
+// As a ReadingSink it keeps the last consistentReadings sensor codes of every tag, the
+// temperature code for families with a temperature sensor and the moisture code for
+// the others. A tag has converged once all of them are within the tolerance of each
+// other; readings with too little or too much power or a bad code don't count. Once
+// converged a tag stays converged for the rest of the cycle, as with enough tags some
+// would always be outside of the tolerance by chance otherwise. The cycle ends after
+// minAttempts once every tag of the last round has converged, and is extended up to
+// maxAttempts while some are still noisy or missing readings. Tags
+// with at least consistentReadings readings, most of them invalid, don't hold up the
+// cycle: they are usually outside of the On-Chip RSSI limits at this power, and more
+// rounds wouldn't give them enough valid readings.
+//
+// The rounds still inventory every tag, converged or not. Leaving them out of the air
+// interface takes one Select per tag, more than the readers take next to the sensor
+// Selects.
+//
+//     ConvergenceScheduler schedule = new ConvergenceScheduler(type);
+//     SensorEngine engine = new SensorEngine(reader, type, ReadingSink.tee(sink, schedule));
+//     while (schedule.next()) {
+//         engine.readRound();
+//     }
+public class ConvergenceScheduler implements ReadingSink {
+
+    /**
+     * Convergence Settings
+     *
+     * Consistent Readings: number of valid sensor codes of a tag within the
+     * tolerance of each other for the tag to have converged
+     *
+     * Tolerance: largest difference between those codes, for temperature codes
+     * and moisture codes
+     *
+     * Min Attempts, Max Attempts: bounds of the number of rounds in a cycle
+     */
+    public int consistentReadings = 3;
+    public int temperatureCodeTolerance = 8;
+    public int moistureCodeTolerance = 2;
+    public int minAttempts = 3;
+    public int maxAttempts = 30;
+
+    final SensorType type;
+    final EpcTable<Object> tags = new EpcTable<>();
+    int[] codes = new int[0];       // last codes by entry, consistentReadings per entry
+    int[] counts = new int[0];      // number of codes kept by entry
+    int[] nexts = new int[0];       // next position to write by entry
+    int[] reads = new int[0];       // readings by entry
+    int[] validReads = new int[0];  // of those, valid ones
+    boolean[] done = new boolean[0];  // converged by entry
+    int window;
+
+    // the current cycle
+    public int attempts;
+    public int roundTags;           // tags read in the last round
+    public int roundPending;        // of those, tags which haven't converged
+    public int roundUnreadable;     // and tags without valid readings, not pending
+
+    public ConvergenceScheduler(SensorType type) {
+        this.type = type;
+    }
+
+    // start the next round of the cycle, false once the cycle is over
+    public boolean next() {
+        if (attempts >= maxAttempts || (attempts >= minAttempts && roundPending == 0)) {
+            return false;
+        }
+        attempts++;
+        roundTags = 0;
+        roundPending = 0;
+        roundUnreadable = 0;
+        return true;
+    }
+
+    // start a new cycle, forgetting all codes
+    public void reset() {
+        tags.clear();
+        attempts = 0;
+        roundTags = 0;
+        roundPending = 0;
+        roundUnreadable = 0;
+    }
+
+    public void accept(SensorReading reading) {
+        int status = type.hasTemperature() ? reading.temperatureStatus : reading.moistureStatus;
+        add(reading.tag.epc, type.hasTemperature() ? reading.temperatureCode : reading.moistureCode, valid(status));
+    }
+
+    public void accept(ReadingBuffer readings, int index) {
+        int status = type.hasTemperature() ? readings.temperatureStatus[index] : readings.moistureStatus[index];
+        add(readings.tags[index].epc, type.hasTemperature() ? readings.temperatureCode[index] : readings.moistureCode[index], valid(status));
+    }
+
+    // whether a tag has converged in this cycle
+    public boolean converged(byte[] epc) {
+        int entry = tags.find(epc);
+        return entry >= 0 && converged(entry);
+    }
+
+    // the code itself is good, whatever became of its calibration
+    static boolean valid(int status) {
+        return status == SensorReading.OK || status == SensorReading.NO_CALIBRATION || status == SensorReading.INVALID_CALIBRATION;
+    }
+
+    void add(byte[] epc, int code, boolean valid) {
+        roundTags++;
+        if (epc.length > EpcTable.MAX_EPC_LENGTH) {
+            roundPending++;
+            return;
+        }
+        if (window != consistentReadings) {
+            // the setting changed, start over
+            window = consistentReadings;
+            tags.clear();
+            codes = new int[0];
+            counts = new int[0];
+            nexts = new int[0];
+            reads = new int[0];
+            validReads = new int[0];
+            done = new boolean[0];
+        }
+        int size = tags.size();
+        int entry = tags.add(epc);
+        if (entry >= counts.length) {
+            int capacity = Math.max(1024, counts.length * 2);
+            codes = Arrays.copyOf(codes, capacity * window);
+            counts = Arrays.copyOf(counts, capacity);
+            nexts = Arrays.copyOf(nexts, capacity);
+            reads = Arrays.copyOf(reads, capacity);
+            validReads = Arrays.copyOf(validReads, capacity);
+            done = Arrays.copyOf(done, capacity);
+        }
+        if (tags.size() > size) {
+            counts[entry] = 0;
+            nexts[entry] = 0;
+            reads[entry] = 0;
+            validReads[entry] = 0;
+            done[entry] = false;
+        }
+        reads[entry]++;
+        if (valid) {
+            codes[entry * window + nexts[entry]] = code;
+            nexts[entry] = (nexts[entry] + 1) % window;
+            counts[entry] = Math.min(window, counts[entry] + 1);
+            validReads[entry]++;
+        }
+        if (converged(entry)) {
+            return;
+        }
+        if (reads[entry] >= window && validReads[entry] * 2 < reads[entry]) {
+            roundUnreadable++;
+        }
+        else {
+            roundPending++;
+        }
+    }
+
+    boolean converged(int entry) {
+        if (done[entry] || counts[entry] < window) {
+            return done[entry];
+        }
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = entry * window; i < (entry + 1) * window; i++) {
+            min = Math.min(min, codes[i]);
+            max = Math.max(max, codes[i]);
+        }
+        done[entry] = max - min <= (type.hasTemperature() ? temperatureCodeTolerance : moistureCodeTolerance);
+        return done[entry];
+    }
+}
@@ -0,0 +1,69 @@
+package magnus_engine;
+
+// one row per reading, every sensor column present; codes the tag type doesn't have
+// are -1, the temperature is empty unless its status is "ok"
+public class CsvFormat implements ReadingFormat {
+
+    public void header(OutputBuffer out) {
+        out.append("timestamp,reader,epc,antenna,frequency,rssi,type,ocrssi_code,moisture_code,moisture_status,"
+            + "temperature_code,temperature,temperature_status,backport1_code,backport2_code,backport_status");
+        out.append('\n');
+    }
+
+    public void format(SensorReading reading, OutputBuffer out) {
+        TagRead tag = reading.tag;
+        out.append(tag.timestamp);
+        out.append(',');
+        if (reading.reader != null) {
+            appendField(reading.reader, out);
+        }
+        out.append(',');
+        out.appendHex(tag.epc);
+        out.append(',');
+        out.append(tag.antenna);
+        out.append(',');
+        out.append(tag.frequency);
+        out.append(',');
+        out.append(tag.rssi);
+        out.append(',');
+        out.append(reading.type.name());
+        out.append(',');
+        out.append(reading.ocrssiCode);
+        out.append(',');
+        out.append(reading.moistureCode);
+        out.append(',');
+        out.append(SensorReading.statusText(reading.moistureStatus));
+        out.append(',');
+        out.append(reading.temperatureCode);
+        out.append(',');
+        if (reading.temperatureStatus == SensorReading.OK) {
+            out.appendFixed2(reading.temperature);
+        }
+        out.append(',');
+        out.append(SensorReading.statusText(reading.temperatureStatus));
+        out.append(',');
+        out.append(reading.backport1Code);
+        out.append(',');
+        out.append(reading.backport2Code);
+        out.append(',');
+        out.append(SensorReading.statusText(reading.backportStatus));
+        out.append('\n');
+    }
+
+    // quoted if it holds a separator or quote
+    static void appendField(String text, OutputBuffer out) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) {
+            out.append(text);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+}
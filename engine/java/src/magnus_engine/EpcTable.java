@@ -0,0 +1,308 @@
+package magnus_engine;
+
+import java.util.Arrays;
+
+// per-tag state keyed by EPC (or TID) bytes, in an open-addressing hash table of
+// primitive arrays
+//
+// Keys of up to 128 bits are packed into two longs, so looking a tag up goes straight
+// from the EPC bytes a reader returns and allocates nothing; neither are keys or values
+// boxed. Each tag gets an entry number which indexes the state columns: calibration,
+// the last reading and statistics. Removing an entry moves the last entry into its
+// place, so entry numbers are only stable while nothing is removed.
+//
+// Not thread-safe, use one table per thread or synchronize on it.
+public class EpcTable<T> {
+
+    public static final int MAX_EPC_LENGTH = 16;
+
+    // hash table, entry + 1 per slot, 0 for empty
+    int[] slots;
+    int mask;
+
+    // keys by entry
+    long[] keyHigh;
+    long[] keyLow;
+    byte[] keyLength;
+    int[] hashes;
+    int size;
+
+    // state by entry
+    Object[] calibrations;
+    public long[] lastSeen;             // timestamp of the last reading, milliseconds
+    public int[] lastOcrssiCode;
+    public int[] lastMoistureCode;
+    public int[] lastTemperatureCode;
+    public double[] lastTemperature;    // degC, NaN if not read
+    public long[] reads;
+    public long[] temperatureReads;
+    public double[] temperatureSum;
+    public double[] temperatureMin;
+    public double[] temperatureMax;
+
+    public EpcTable() {
+        this(1024);
+    }
+
+    public EpcTable(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 16) * 2 - 1) * 2;
+        slots = new int[tableSize];
+        mask = tableSize - 1;
+        allocate(tableSize / 2);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // entry of a tag, -1 if it isn't in the table
+    public int find(byte[] epc) {
+        if (epc.length > MAX_EPC_LENGTH) {
+            return -1;
+        }
+        long high = high(epc);
+        long low = low(epc);
+        int hash = hash(high, low, epc.length);
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (keyHigh[entry] == high && keyLow[entry] == low && keyLength[entry] == epc.length) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    // entry of a tag, added with empty state if it isn't in the table
+    public int add(byte[] epc) {
+        if (epc.length > MAX_EPC_LENGTH) {
+            throw new IllegalArgumentException("EPC longer than 128 bits");
+        }
+        long high = high(epc);
+        long low = low(epc);
+        int hash = hash(high, low, epc.length);
+        int slot = hash & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (keyHigh[entry] == high && keyLow[entry] == low && keyLength[entry] == epc.length) {
+                return entry;
+            }
+        }
+        if (size == keyHigh.length) {
+            grow();
+            return add(epc);
+        }
+        int entry = size++;
+        keyHigh[entry] = high;
+        keyLow[entry] = low;
+        keyLength[entry] = (byte)epc.length;
+        hashes[entry] = hash;
+        calibrations[entry] = null;
+        lastSeen[entry] = 0;
+        lastOcrssiCode[entry] = -1;
+        lastMoistureCode[entry] = -1;
+        lastTemperatureCode[entry] = -1;
+        lastTemperature[entry] = Double.NaN;
+        reads[entry] = 0;
+        temperatureReads[entry] = 0;
+        temperatureSum[entry] = 0;
+        temperatureMin[entry] = Double.NaN;
+        temperatureMax[entry] = Double.NaN;
+        slots[slot] = entry + 1;
+        return entry;
+    }
+
+    // calibration of a tag, null if unknown
+    public T get(byte[] epc) {
+        int entry = find(epc);
+        return entry < 0 ? null : calibration(entry);
+    }
+
+    // set the calibration of a tag, returns its entry
+    public int put(byte[] epc, T calibration) {
+        int entry = add(epc);
+        calibrations[entry] = calibration;
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T calibration(int entry) {
+        return (T)calibrations[entry];
+    }
+
+    public void setCalibration(int entry, T calibration) {
+        calibrations[entry] = calibration;
+    }
+
+    // keep a reading as the tag's last one and add it to its statistics
+    public void record(int entry, SensorReading reading) {
+        record(entry, reading.tag.timestamp, reading.ocrssiCode, reading.moistureCode, reading.temperatureCode,
+            reading.temperatureStatus == SensorReading.OK ? reading.temperature : Double.NaN);
+    }
+
+    public void record(int entry, ReadingBuffer readings, int index) {
+        record(entry, readings.tags[index].timestamp, readings.ocrssiCode[index], readings.moistureCode[index], readings.temperatureCode[index],
+            readings.temperatureStatus[index] == SensorReading.OK ? readings.temperature[index] : Double.NaN);
+    }
+
+    void record(int entry, long timestamp, int ocrssiCode, int moistureCode, int temperatureCode, double temperature) {
+        lastSeen[entry] = timestamp;
+        lastOcrssiCode[entry] = ocrssiCode;
+        lastMoistureCode[entry] = moistureCode;
+        lastTemperatureCode[entry] = temperatureCode;
+        lastTemperature[entry] = temperature;
+        reads[entry]++;
+        if (!Double.isNaN(temperature)) {
+            if (temperatureReads[entry] == 0) {
+                temperatureMin[entry] = temperature;
+                temperatureMax[entry] = temperature;
+            }
+            temperatureReads[entry]++;
+            temperatureSum[entry] += temperature;
+            temperatureMin[entry] = Math.min(temperatureMin[entry], temperature);
+            temperatureMax[entry] = Math.max(temperatureMax[entry], temperature);
+        }
+    }
+
+    // mean of the valid temperatures of a tag, NaN if there were none
+    public double temperatureMean(int entry) {
+        return temperatureReads[entry] == 0 ? Double.NaN : temperatureSum[entry] / temperatureReads[entry];
+    }
+
+    // EPC of an entry, allocates
+    public byte[] epc(int entry) {
+        byte[] epc = new byte[keyLength[entry]];
+        for (int i = 0; i < epc.length; i++) {
+            long word = i < 8 ? keyHigh[entry] : keyLow[entry];
+            epc[i] = (byte)(word >>> (56 - 8 * (i & 7)));
+        }
+        return epc;
+    }
+
+    // remove an entry, the last entry takes its number
+    public void remove(int entry) {
+        removeSlot(slotOf(entry));
+        int last = --size;
+        if (entry != last) {
+            slots[slotOf(last)] = entry + 1;
+            keyHigh[entry] = keyHigh[last];
+            keyLow[entry] = keyLow[last];
+            keyLength[entry] = keyLength[last];
+            hashes[entry] = hashes[last];
+            calibrations[entry] = calibrations[last];
+            lastSeen[entry] = lastSeen[last];
+            lastOcrssiCode[entry] = lastOcrssiCode[last];
+            lastMoistureCode[entry] = lastMoistureCode[last];
+            lastTemperatureCode[entry] = lastTemperatureCode[last];
+            lastTemperature[entry] = lastTemperature[last];
+            reads[entry] = reads[last];
+            temperatureReads[entry] = temperatureReads[last];
+            temperatureSum[entry] = temperatureSum[last];
+            temperatureMin[entry] = temperatureMin[last];
+            temperatureMax[entry] = temperatureMax[last];
+        }
+        calibrations[last] = null;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+        Arrays.fill(calibrations, 0, size, null);
+        size = 0;
+    }
+
+    int slotOf(int entry) {
+        int slot = hashes[entry] & mask;
+        while (slots[slot] != entry + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // empty a slot, moving later entries of the probe sequence back into the gap
+    void removeSlot(int hole) {
+        for (int slot = (hole + 1) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int home = hashes[slots[slot] - 1] & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                slots[hole] = slots[slot];
+                hole = slot;
+            }
+        }
+        slots[hole] = 0;
+    }
+
+    // double the table, keeping it at most half full
+    void grow() {
+        int capacity = keyHigh.length * 2;
+        keyHigh = Arrays.copyOf(keyHigh, capacity);
+        keyLow = Arrays.copyOf(keyLow, capacity);
+        keyLength = Arrays.copyOf(keyLength, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        calibrations = Arrays.copyOf(calibrations, capacity);
+        lastSeen = Arrays.copyOf(lastSeen, capacity);
+        lastOcrssiCode = Arrays.copyOf(lastOcrssiCode, capacity);
+        lastMoistureCode = Arrays.copyOf(lastMoistureCode, capacity);
+        lastTemperatureCode = Arrays.copyOf(lastTemperatureCode, capacity);
+        lastTemperature = Arrays.copyOf(lastTemperature, capacity);
+        reads = Arrays.copyOf(reads, capacity);
+        temperatureReads = Arrays.copyOf(temperatureReads, capacity);
+        temperatureSum = Arrays.copyOf(temperatureSum, capacity);
+        temperatureMin = Arrays.copyOf(temperatureMin, capacity);
+        temperatureMax = Arrays.copyOf(temperatureMax, capacity);
+        slots = new int[capacity * 2];
+        mask = slots.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hashes[entry] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    void allocate(int capacity) {
+        keyHigh = new long[capacity];
+        keyLow = new long[capacity];
+        keyLength = new byte[capacity];
+        hashes = new int[capacity];
+        calibrations = new Object[capacity];
+        lastSeen = new long[capacity];
+        lastOcrssiCode = new int[capacity];
+        lastMoistureCode = new int[capacity];
+        lastTemperatureCode = new int[capacity];
+        lastTemperature = new double[capacity];
+        reads = new long[capacity];
+        temperatureReads = new long[capacity];
+        temperatureSum = new double[capacity];
+        temperatureMin = new double[capacity];
+        temperatureMax = new double[capacity];
+    }
+
+    // first 8 bytes of the EPC, big-endian and zero padded
+    static long high(byte[] epc) {
+        return pack(epc, 0);
+    }
+
+    // bytes 8 to 15 of the EPC
+    static long low(byte[] epc) {
+        return pack(epc, 8);
+    }
+
+    static long pack(byte[] epc, int from) {
+        long word = 0;
+        for (int i = 0; i < 8; i++) {
+            int at = from + i;
+            word = (word << 8) | (at < epc.length ? epc[at] & 0xFF : 0);
+        }
+        return word;
+    }
+
+    // MurmurHash3 finalizer over both halves, EPCs of one batch often differ in a few bits only
+    static int hash(long high, long low, int length) {
+        long h = high * 0x9E3779B97F4A7C15L + low + length;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int)h;
+    }
+}
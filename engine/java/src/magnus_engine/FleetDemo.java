@@ -0,0 +1,75 @@
+package magnus_engine;
+
+import java.util.Random;
+
+// runs a fleet of simulated readers with overlapping read zones in one process and
+// reports the aggregated throughput
+public class FleetDemo {
+
+    /**
+     * Simulation Settings
+     *
+     * Sensor Type: which sensor tag family makes up the population
+     *
+     * Reader Count: number of simulated readers
+     *
+     * Tags Per Reader: tags in each reader's zone, neighbouring zones share
+     * 'overlap' tags
+     *
+     * Run Time: how long to run the fleet, in seconds
+     *
+     * Time Scale: 1.0 waits for the simulated air time like a real reader blocks
+     */
+    static SensorType sensorType = SensorType.MAGNUS_S3;
+    static int readerCount = 50;
+    static int tagsPerReader = 200;
+    static int overlap = 50;
+    static int runTime = 10;
+    static double timeScale = 1.0;
+
+    public static void main(String[] args) {
+        final long[] valid = new long[1];
+        ReaderFleet fleet = new ReaderFleet(sensorType, new ReadingSink() {
+            public void accept(SensorReading reading) {
+                if (reading.moistureStatus == SensorReading.OK) {
+                    valid[0]++;
+                }
+            }
+        });
+        for (int i = 0; i < readerCount; i++) {
+            final int zone = i;
+            fleet.add("simulated-" + i, new ReaderFleet.ReaderFactory() {
+                public SensorReader open() {
+                    SimulatedSensorReader reader = new SimulatedSensorReader("simulated-" + zone, population(zone), zone);
+                    reader.timeScale = timeScale;
+                    return reader;
+                }
+            });
+        }
+        try {
+            long start = System.nanoTime();
+            fleet.start();
+            Thread.sleep(runTime * 1000L);
+            fleet.stop();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println("Readers: " + readerCount + ", rounds: " + fleet.rounds() + ", errors: " + fleet.errors());
+            System.out.println("Readings: " + fleet.accepted + " (" + valid[0] + " valid), duplicates: " + fleet.duplicates + ", dropped: " + fleet.dropped());
+            System.out.println("Throughput: " + String.format("%.0f readings/s", (fleet.accepted + fleet.duplicates) / seconds));
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    // the tags of one reader's zone, a tag in two zones is the same tag for both readers
+    static SimulatedTag[] population(int zone) {
+        SimulatedTag[] population = new SimulatedTag[tagsPerReader];
+        int first = zone * (tagsPerReader - overlap);
+        for (int i = 0; i < tagsPerReader; i++) {
+            population[i] = SimulatedTag.create(sensorType, new Random(first + i), first + i);
+        }
+        return population;
+    }
+}
@@ -0,0 +1,86 @@
+package magnus_engine;
+
+// one JSON object per reading and line, with the sensor values the tag type has;
+// temperature is null unless its status is "ok"
+public class JsonLinesFormat implements ReadingFormat {
+
+    public void format(SensorReading reading, OutputBuffer out) {
+        SensorType type = reading.type;
+        TagRead tag = reading.tag;
+        out.append("{\"timestamp\":");
+        out.append(tag.timestamp);
+        if (reading.reader != null) {
+            out.append(",\"reader\":");
+            appendString(reading.reader, out);
+        }
+        out.append(",\"epc\":\"");
+        out.appendHex(tag.epc);
+        out.append("\",\"antenna\":");
+        out.append(tag.antenna);
+        out.append(",\"frequency\":");
+        out.append(tag.frequency);
+        out.append(",\"rssi\":");
+        out.append(tag.rssi);
+        out.append(",\"type\":\"");
+        out.append(type.name());
+        out.append('"');
+        if (reading.ocrssiCode >= 0) {
+            out.append(",\"ocrssiCode\":");
+            out.append(reading.ocrssiCode);
+        }
+        if (type.moistureIndex >= 0) {
+            out.append(",\"moistureCode\":");
+            out.append(reading.moistureCode);
+            out.append(",\"moistureStatus\":\"");
+            out.append(SensorReading.statusText(reading.moistureStatus));
+            out.append('"');
+        }
+        if (type.hasTemperature()) {
+            out.append(",\"temperatureCode\":");
+            out.append(reading.temperatureCode);
+            out.append(",\"temperature\":");
+            if (reading.temperatureStatus == SensorReading.OK) {
+                out.appendFixed2(reading.temperature);
+            }
+            else {
+                out.append("null");
+            }
+            out.append(",\"temperatureStatus\":\"");
+            out.append(SensorReading.statusText(reading.temperatureStatus));
+            out.append('"');
+        }
+        if (type.backport1Index >= 0) {
+            out.append(",\"backport1Code\":");
+            out.append(reading.backport1Code);
+            out.append(",\"backport2Code\":");
+            out.append(reading.backport2Code);
+            out.append(",\"backportStatus\":\"");
+            out.append(SensorReading.statusText(reading.backportStatus));
+            out.append('"');
+        }
+        out.append('}');
+        out.append('\n');
+    }
+
+    // reader names are addresses and URIs, escape what JSON requires all the same
+    static void appendString(String text, OutputBuffer out) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\');
+                out.append(c);
+            }
+            else if (c < 0x20 || c > 0x7E) {
+                out.append("\\u");
+                for (int shift = 12; shift >= 0; shift -= 4) {
+                    out.append((char)OutputBuffer.HEX_DIGITS[(c >> shift) & 0x0F]);
+                }
+            }
+            else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
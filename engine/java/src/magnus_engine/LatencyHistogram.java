@@ -0,0 +1,94 @@
+package magnus_engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// latency histogram in nanoseconds with log-linear buckets: 16 buckets per power of two,
+// so percentiles are within about 6% of the recorded values
+//
+// Recording is one bucket computation and a few atomic adds, safe from any thread and
+// free of allocation. The buckets cover every positive long, nothing is clipped.
+public class LatencyHistogram {
+
+    static final int SUB_BUCKETS = 16;
+    static final int SUB_BITS = 4;
+    static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong sum = new AtomicLong();
+    final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long previous = max.get();
+        while (nanos > previous && !max.compareAndSet(previous, nanos)) {
+            previous = max.get();
+        }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    // nanoseconds, NaN if nothing was recorded
+    public double mean() {
+        long n = count.get();
+        return n == 0 ? Double.NaN : (double)sum.get() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    // nanoseconds below which 'quantile' of the recorded values are (the bucket's
+    // midpoint), NaN if nothing was recorded
+    public double percentile(double quantile) {
+        long n = count.get();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long)Math.ceil(quantile * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                double low = lowerBound(bucket);
+                double high = bucket + 1 < BUCKETS ? lowerBound(bucket + 1) : low;
+                return Math.min((low + high) / 2, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // values below 16 get a bucket each, above that 16 buckets per power of two
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int)((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+}
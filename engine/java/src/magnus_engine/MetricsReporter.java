@@ -0,0 +1,66 @@
+package magnus_engine;
+
+import java.io.PrintStream;
+
+// prints a snapshot of every reader's metrics at a fixed interval, and a last one on close
+public class MetricsReporter {
+
+    final long intervalMillis;
+    final PrintStream out;
+    final Thread thread;
+    volatile boolean running = true;
+
+    public MetricsReporter(long intervalMillis, PrintStream out) {
+        this.intervalMillis = intervalMillis;
+        this.out = out;
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                report();
+            }
+        }, "MetricsReporter");
+        this.thread.setDaemon(true);
+    }
+
+    // report to System.out every 'intervalSeconds', null if that is 0
+    public static MetricsReporter start(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return null;
+        }
+        MetricsReporter reporter = new MetricsReporter(intervalSeconds * 1000L, System.out);
+        reporter.thread.start();
+        return reporter;
+    }
+
+    void report() {
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            print();
+        }
+    }
+
+    public void print() {
+        StringBuilder text = new StringBuilder();
+        for (ReaderMetrics metrics: ReaderMetrics.all()) {
+            text.append(metrics.snapshot());
+        }
+        out.print(text);
+    }
+
+    // stop reporting and print the final snapshot
+    public void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        print();
+    }
+}
@@ -0,0 +1,208 @@
+package magnus_engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+// runs sensor reading rounds on a population mixing sensor families, with a single
+// inventory per round for all of them
+//
+// The round sends the sensor activation command of every family, the one with the
+// longest settle time first, and one TID Select on the model number bits the families
+// share. CW is then held for the longest settle time of them, and the inventory reads
+// the RESERVED bank window covering every family's sensor codes. Each tag read is then
+// decoded by the family its TID names, at its family's offset within the window, and
+// calibrated and output by that family's SensorEngine.
+//
+// The inventory can't also return the TIDs, so the family of each EPC is remembered. A
+// round with new tags first looks them up in the calibration store, and the rest are
+// found with one more inventory reading their TIDs. Tags it misses are left out of the
+// round and tried again in the next. Tags which aren't one of the families (or have an
+// EPC longer than 128 bits) are remembered as such and left out.
+//
+// Each family's On-Chip RSSI filters compare a different USER bank address, which on a
+// tag of another family is ordinary memory. They would deselect the other families' tags
+// at random, so the mixed round has no On-Chip RSSI filters. Readings outside of the
+// limits are still reported as "power too low" or "power too high" by the decoder.
+public class MixedSensorEngine {
+
+    // TID words holding the model number
+    static final int TID_WORDS = 2;
+
+    final SensorReader reader;
+    final SensorType[] types;
+    final SensorEngine[] engines;   // by SensorType ordinal, null for the families not read
+    final Select[] selects;
+    final int address;              // RESERVED bank window of all families' sensor codes
+    final int length;
+    final EpcTable<SensorType> families = new EpcTable<>();
+    final TagRead[][] byFamily;     // a round's tag reads by family, reused
+    final int[] counts;
+    final ArrayList<TagRead> unknown = new ArrayList<>();
+
+    // CW hold time after the selects, the longest of the families'
+    public int settleMicros;
+
+    // phase latencies and read counts of the reader, shared with the reader itself
+    public final ReaderMetrics metrics;
+
+    // totals since the engine was created
+    public long rounds;
+    public long tagReads;
+    public long tidReads;
+    public long unknownTags;
+
+    public MixedSensorEngine(SensorReader reader, SensorType[] types, ReadingSink sink) {
+        this.reader = reader;
+        this.types = types.clone();
+        this.engines = new SensorEngine[SensorType.values().length];
+        this.byFamily = new TagRead[engines.length][64];
+        this.counts = new int[engines.length];
+        this.metrics = ReaderMetrics.of(reader.name());
+        int first = Integer.MAX_VALUE;
+        int last = 0;
+        for (SensorType type: types) {
+            engines[type.ordinal()] = new SensorEngine(reader, type, sink);
+            first = Math.min(first, type.dataAddress);
+            last = Math.max(last, type.dataAddress + type.dataLength);
+            settleMicros = Math.max(settleMicros, type.settleMicros);
+        }
+        this.address = first;
+        this.length = last - first;
+        this.selects = selects(this.types);
+    }
+
+    // the engine calibrating and outputting one family's readings, for its settings and
+    // totals; null if the family isn't read
+    public SensorEngine engine(SensorType type) {
+        return engines[type.ordinal()];
+    }
+
+    // keep the calibration of every family in one store
+    public void setCalibrationStore(CalibrationStore store) {
+        for (SensorType type: types) {
+            engines[type.ordinal()].calibrationStore = store;
+        }
+    }
+
+    // run one round, returns the number of tags found
+    public int readRound() throws Exception {
+        reader.select(selects, settleMicros);
+        TagRead[] results = reader.inventory(Select.BANK_RESERVED, address, length);
+        Arrays.fill(counts, 0);
+        unknown.clear();
+        for (TagRead tag: results) {
+            int entry = families.find(tag.epc);
+            if (entry < 0) {
+                unknown.add(tag);
+            }
+            else {
+                add(families.calibration(entry), tag);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            identify();
+        }
+        for (SensorType type: types) {
+            int family = type.ordinal();
+            engines[family].process(byFamily[family], counts[family], type.dataAddress - address);
+            Arrays.fill(byFamily[family], 0, counts[family], null);
+        }
+        rounds++;
+        tagReads += results.length;
+        return results.length;
+    }
+
+    // sensor activation commands, the longest settle time first since some readers only
+    // hold CW after the first, then one TID Select for all families
+    static Select[] selects(SensorType[] types) {
+        SensorType[] sorted = types.clone();
+        Arrays.sort(sorted, new Comparator<SensorType>() {
+            public int compare(SensorType a, SensorType b) {
+                return Integer.compare(b.settleMicros, a.settleMicros);
+            }
+        });
+        ArrayList<Select> selects = new ArrayList<>();
+        for (SensorType type: sorted) {
+            // the Magnus S2's "activation" is a TID filter, covered by the one below
+            if (type.enableSelect.bank != Select.BANK_TID) {
+                selects.add(type.enableSelect);
+            }
+        }
+        selects.add(new Select(Select.TARGET_SL, 0, Select.BANK_TID, 0x00, commonTidBits(types), types[0].tidPrefix));
+        return selects.toArray(new Select[0]);
+    }
+
+    // number of leading TID bits all families share, out of their 28 bit prefixes
+    static int commonTidBits(SensorType[] types) {
+        int bits = 28;
+        for (SensorType type: types) {
+            for (int bit = 0; bit < bits; bit++) {
+                int mask = 0x80 >> (bit % 8);
+                if ((type.tidPrefix[bit / 8] & mask) != (types[0].tidPrefix[bit / 8] & mask)) {
+                    bits = bit;
+                    break;
+                }
+            }
+        }
+        return bits;
+    }
+
+    // find the family of the round's new tags, from the calibration store or their TIDs
+    void identify() throws Exception {
+        CalibrationStore store = engines[types[0].ordinal()].calibrationStore;
+        boolean missing = false;
+        for (TagRead tag: unknown) {
+            SensorType type = null;
+            if (store != null) {
+                byte[] tid = store.tidByEpc(tag.epc);
+                type = tid == null ? null : SensorType.fromTid(tid);
+            }
+            if (type == null) {
+                missing = true;
+            }
+            else {
+                remember(tag, type);
+            }
+        }
+        if (missing) {
+            long start = System.nanoTime();
+            reader.select(new Select[] { selects[selects.length - 1] }, 0);
+            for (TagRead tag: reader.inventory(Select.BANK_TID, 0, TID_WORDS)) {
+                if (tag.data != null && tag.data.length == 2 * TID_WORDS) {
+                    remember(tag, SensorType.fromTid(tag.data));
+                    tidReads++;
+                }
+            }
+            metrics.time(ReaderMetrics.CALIBRATION, start);
+        }
+        for (TagRead tag: unknown) {
+            int entry = families.find(tag.epc);
+            if (entry < 0) {
+                unknownTags++;
+            }
+            else {
+                add(families.calibration(entry), tag);
+            }
+        }
+    }
+
+    // the family of a tag, null if it isn't a sensor tag
+    void remember(TagRead tag, SensorType type) {
+        if (tag.epc.length <= EpcTable.MAX_EPC_LENGTH) {
+            families.put(tag.epc, type);
+        }
+    }
+
+    // a tag read to its family's engine, left out if the family isn't read
+    void add(SensorType type, TagRead tag) {
+        if (type == null || engines[type.ordinal()] == null) {
+            return;
+        }
+        int family = type.ordinal();
+        if (counts[family] == byFamily[family].length) {
+            byFamily[family] = Arrays.copyOf(byFamily[family], counts[family] * 2);
+        }
+        byFamily[family][counts[family]++] = tag;
+    }
+}
@@ -0,0 +1,136 @@
+package magnus_engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+// growable byte array the reading formats write text and binary fields into, so that
+// formatting a reading builds no strings
+public class OutputBuffer {
+
+    static final byte[] NEWLINE = System.lineSeparator().getBytes();
+    static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+
+    byte[] bytes;
+    int length;
+
+    public OutputBuffer(int capacity) {
+        bytes = new byte[Math.max(capacity, 64)];
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void clear() {
+        length = 0;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+    }
+
+    void ensure(int count) {
+        if (length + count > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+        }
+    }
+
+    // status texts, labels and names are ASCII
+    public void append(String text) {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            bytes[length++] = (byte)text.charAt(i);
+        }
+    }
+
+    public void append(char c) {
+        ensure(1);
+        bytes[length++] = (byte)c;
+    }
+
+    public void append(long value) {
+        ensure(20);
+        if (value < 0) {
+            bytes[length++] = '-';
+            value = -value;
+        }
+        int start = length;
+        do {
+            bytes[length++] = (byte)('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // digits were written least significant first
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte digit = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = digit;
+        }
+    }
+
+    // same as String.format("%.02f", value), which rounds half up the decimal the value
+    // prints as, so ties off by a rounding error in the last bit round up too
+    public void appendFixed2(double value) {
+        double scaled = Math.abs(value) * 100;
+        long hundredths = (long)scaled;
+        if (scaled - hundredths >= 0.5 - 1e-9) {
+            hundredths++;
+        }
+        if (value < 0) {
+            ensure(1);
+            bytes[length++] = '-';
+        }
+        append(hundredths / 100);
+        ensure(3);
+        bytes[length++] = '.';
+        bytes[length++] = (byte)('0' + hundredths / 10 % 10);
+        bytes[length++] = (byte)('0' + hundredths % 10);
+    }
+
+    public void appendHex(byte[] value) {
+        ensure(value.length * 2);
+        for (byte b: value) {
+            bytes[length++] = HEX_DIGITS[(b >> 4) & 0x0F];
+            bytes[length++] = HEX_DIGITS[b & 0x0F];
+        }
+    }
+
+    public void newLine() {
+        ensure(NEWLINE.length);
+        for (byte b: NEWLINE) {
+            bytes[length++] = b;
+        }
+    }
+
+    // binary fields, big-endian
+    public void writeByte(int value) {
+        ensure(1);
+        bytes[length++] = (byte)value;
+    }
+
+    public void writeShort(int value) {
+        ensure(2);
+        bytes[length++] = (byte)(value >> 8);
+        bytes[length++] = (byte)value;
+    }
+
+    public void writeInt(int value) {
+        ensure(4);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            bytes[length++] = (byte)(value >> shift);
+        }
+    }
+
+    public void writeLong(long value) {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[length++] = (byte)(value >> shift);
+        }
+    }
+
+    public void write(byte[] value) {
+        ensure(value.length);
+        System.arraycopy(value, 0, bytes, length, value.length);
+        length += value.length;
+    }
+}
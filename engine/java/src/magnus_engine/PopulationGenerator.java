@@ -0,0 +1,143 @@
+package magnus_engine;
+
+import java.util.Random;
+
+// synthetic populations of Magnus S2, Magnus S3 and Xerxes tags for load testing, from
+// ten tags to a million
+//
+// Every tag is a function of the seed and its index only, so the same index always gives
+// the same tag and a large population can be generated tag by tag instead of being held
+// in memory. EPCs are SGTIN-96 with the index as serial number. TIDs start with the
+// model numbers the sensor Selects filter on (E282402x, E282403x, E282405x). Calibration
+// words carry a correct CRC-16 (Magnus S3) or correct parity bits (Xerxes), except on
+// the corrupted tags, which have one bit of them flipped. Both checks catch any single
+// bit, so a corrupted tag's calibration always decodes invalid; its sensor still
+// measures as calibrated at the factory. The Magnus S2 has no calibration to corrupt.
+public class PopulationGenerator {
+
+    /**
+     * Population Settings
+     *
+     * Types: sensor types of the generated tags
+     *
+     * Mix: share of each of the types, relative to their sum
+     *
+     * Corruption Rate: share of the tags with a bit flipped in their calibration words
+     *
+     * Temperature Limits: range of the tags' temperatures in degC
+     *
+     * Company Prefix, Item Reference: SGTIN-96 fields of the EPCs, 7 and 6 digits
+     */
+    public SensorType[] types = { SensorType.MAGNUS_S2, SensorType.MAGNUS_S3, SensorType.XERXES };
+    public double[] mix = { 1, 1, 1 };
+    public double corruptionRate = 0.01;
+    public double minTemperature = -10;
+    public double maxTemperature = 40;
+    public int companyPrefix = 614141;
+    public int itemReference = 812345;
+
+    final long seed;
+    SimulatedSensorReader sensors;  // created by the first read(), it has reader metrics
+
+    public PopulationGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    // a population of 'count' tags, tag i of it is tag(i)
+    public SimulatedTag[] population(int count) {
+        SimulatedTag[] population = new SimulatedTag[count];
+        for (int i = 0; i < count; i++) {
+            population[i] = tag(i);
+        }
+        return population;
+    }
+
+    // tag 'index' of every population with this seed and these settings
+    public SimulatedTag tag(int index) {
+        Random random = random(index);
+        SensorType type = type(random.nextDouble());
+        SimulatedTag tag = SimulatedTag.create(type, random, index);
+        sgtin96(index, tag.epc);
+        tag.temperature = minTemperature + (maxTemperature - minTemperature) * random.nextDouble();
+        if (type.calibrationAddress >= 0 && random.nextDouble() < corruptionRate) {
+            int bit = random.nextInt(64);
+            tag.user[type.calibrationAddress + bit / 16] ^= (short)(1 << (bit % 16));
+        }
+        return tag;
+    }
+
+    // true if tag 'index' has corrupted calibration words
+    public boolean corrupted(int index) {
+        SimulatedTag tag = tag(index);
+        if (tag.type.calibrationAddress < 0) {
+            return false;
+        }
+        return !TemperatureCalibration.decode(tag.type, calibrationWords(tag)).valid;
+    }
+
+    // the tag's sensor codes as an inventory with its type's Selects reads them, at the
+    // reader power of a SimulatedSensorReader; the read's source is the tag
+    public TagRead read(SimulatedTag tag) {
+        SensorType type = tag.type;
+        if (sensors == null) {
+            sensors = new SimulatedSensorReader("generator", new SimulatedTag[0], seed);
+            sensors.timeScale = 0;
+        }
+        sensors.settleMicros = type.settleMicros;
+        sensors.powerUp(tag);
+        tag.armed = type.hasTemperature();
+        sensors.measure(tag);
+        short[] words = tag.readWords(Select.BANK_RESERVED, type.dataAddress, type.dataLength);
+        return new TagRead(tag.epc, tag.antenna, sensors.frequency(), -40 - (int)tag.attenuation,
+                           TagRead.wordsToBytes(words), System.currentTimeMillis(), tag);
+    }
+
+    // the calibration words as stored in the tag's USER bank, null for the Magnus S2
+    public static short[] calibrationWords(SimulatedTag tag) {
+        int address = tag.type.calibrationAddress;
+        if (address < 0) {
+            return null;
+        }
+        short[] words = new short[4];
+        System.arraycopy(tag.user, address, words, 0, 4);
+        return words;
+    }
+
+    // SGTIN-96: header 0x30, filter 1 (point of sale item), partition 5 (24 bit company
+    // prefix, 20 bit item reference) and a 38 bit serial number
+    void sgtin96(long serial, byte[] epc) {
+        long high = 0x30L << 56 | 1L << 53 | 5L << 50 | (long)(companyPrefix & 0xFFFFFF) << 26
+                    | (long)(itemReference & 0xFFFFF) << 6 | serial >>> 32 & 0x3F;
+        long low = serial & 0xFFFFFFFFL;
+        for (int i = 0; i < 8; i++) {
+            epc[i] = (byte)(high >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < 4; i++) {
+            epc[8 + i] = (byte)(low >>> (24 - 8 * i));
+        }
+    }
+
+    SensorType type(double draw) {
+        double total = 0;
+        for (double share: mix) {
+            total += share;
+        }
+        draw *= total;
+        for (int i = 0; i < types.length - 1; i++) {
+            draw -= mix[i];
+            if (draw < 0) {
+                return types[i];
+            }
+        }
+        return types[types.length - 1];
+    }
+
+    // seeds of neighbouring indexes spread over the whole range, java.util.Random's
+    // first values of close seeds are close
+    Random random(int index) {
+        long z = seed * 0x9E3779B97F4A7C15L + index;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Random(z ^ (z >>> 31));
+    }
+}
@@ -0,0 +1,184 @@
+package magnus_engine;
+
+import java.util.Arrays;
+
+// adjusts the transmit power of each antenna between rounds so that as many readings as
+// possible have on-chip RSSI codes within the limits where the sensor values are valid
+//
+// The on-chip RSSI code follows the power received by the tag at about one code per dB,
+// so the codes of a round predict the codes the same tags would report at another
+// power. For every step within maxStep the controller counts the sensor values that
+// would be valid (moisture up to ocrssiHighMoisture, temperature and backport up to
+// ocrssiHighTemperature) and moves to the best one, if it gains at least minGain of the
+// values. An antenna which read no tags at all steps up, it may be too weak to power any.
+//
+// Codes are collected over the rounds since the last change, older rounds counting half
+// each round, and dropped when the power changes.
+public class PowerController {
+
+    /**
+     * Power Control Settings
+     *
+     * Power Limits: range of the transmit power in dBm
+     *
+     * Step: largest change of an antenna's power per round, in dB
+     *
+     * Minimum Gain: share of the valid values that a change has to gain
+     *
+     * Codes Per dB: change of the on-chip RSSI code per dB of transmit power
+     */
+    public double minPower = 10;
+    public double maxPower = 30;
+    public int maxStep = 3;
+    public double minGain = 0.05;
+    public double codesPerDb = 1.0;
+
+    public static final int MAX_ANTENNAS = 32;
+    static final int CODES = 32;
+
+    final SensorType type;
+    final double[] power = new double[MAX_ANTENNAS + 1];
+    final double[][] codes = new double[MAX_ANTENNAS + 1][CODES];  // decayed tag counts by code
+    final boolean[] active = new boolean[MAX_ANTENNAS + 1];
+    final boolean[] seen = new boolean[MAX_ANTENNAS + 1];
+    final boolean[] changed = new boolean[MAX_ANTENNAS + 1];
+
+    // totals since the controller was created
+    public long changes;
+
+    public PowerController(SensorType type, double initialPower, int[] antennas) {
+        this.type = type;
+        Arrays.fill(power, initialPower);
+        for (int antenna: antennas) {
+            active[antenna] = true;
+        }
+    }
+
+    // on-chip RSSI code of one reading, ignored if not read
+    public void add(int antenna, int ocrssiCode) {
+        if (antenna < 1 || antenna > MAX_ANTENNAS || ocrssiCode < 0) {
+            return;
+        }
+        codes[antenna][Math.min(ocrssiCode, CODES - 1)]++;
+        seen[antenna] = true;
+        active[antenna] = true;
+    }
+
+    public void add(ReadingBuffer readings) {
+        for (int i = 0; i < readings.size; i++) {
+            add(readings.tags[i].antenna, readings.ocrssiCode[i]);
+        }
+    }
+
+    // decide the power of every antenna for the next round, returns true if any changed;
+    // the reader has to be set to power(antenna) of the antennas with changed(antenna)
+    public boolean adjust() {
+        boolean any = false;
+        for (int antenna = 1; antenna <= MAX_ANTENNAS; antenna++) {
+            changed[antenna] = false;
+            if (!active[antenna]) {
+                continue;
+            }
+            int step = seen[antenna] ? bestStep(codes[antenna], power[antenna]) : maxStep;
+            double next = Math.max(minPower, Math.min(maxPower, power[antenna] + step));
+            if (next != power[antenna]) {
+                power[antenna] = next;
+                changed[antenna] = true;
+                Arrays.fill(codes[antenna], 0);
+                changes++;
+                any = true;
+            }
+            else {
+                for (int code = 0; code < CODES; code++) {
+                    codes[antenna][code] *= 0.5;
+                }
+            }
+            seen[antenna] = false;
+        }
+        return any;
+    }
+
+    public double power(int antenna) {
+        return power[antenna];
+    }
+
+    public boolean changed(int antenna) {
+        return changed[antenna];
+    }
+
+    // set the antennas whose power changed in the last adjust()
+    public void apply(SensorReader reader) throws Exception {
+        for (int antenna = 1; antenna <= MAX_ANTENNAS; antenna++) {
+            if (changed[antenna]) {
+                reader.setPower(antenna, power[antenna]);
+            }
+        }
+    }
+
+    // share of the collected readings with every sensor value in range, at the current power
+    public double validShare(int antenna) {
+        double total = 0;
+        double valid = 0;
+        for (int code = 0; code < CODES; code++) {
+            total += codes[antenna][code] * values();
+            valid += codes[antenna][code] * validValues(code);
+        }
+        return total == 0 ? Double.NaN : valid / total;
+    }
+
+    // the power step with the most valid values predicted
+    int bestStep(double[] counts, double current) {
+        double now = predict(counts, 0);
+        double total = 0;
+        for (double count: counts) {
+            total += count * values();
+        }
+        int best = 0;
+        double bestValid = now;
+        for (int step = -maxStep; step <= maxStep; step++) {
+            if (current + step < minPower || current + step > maxPower) {
+                continue;
+            }
+            double valid = predict(counts, step);
+            if (valid > bestValid || (valid == bestValid && Math.abs(step) < Math.abs(best))) {
+                best = step;
+                bestValid = valid;
+            }
+        }
+        return bestValid - now >= minGain * total ? best : 0;
+    }
+
+    // valid values if the power were 'step' dB higher
+    double predict(double[] counts, int step) {
+        double valid = 0;
+        for (int code = 0; code < CODES; code++) {
+            if (counts[code] != 0) {
+                int shifted = (int)Math.round(code + step * codesPerDb);
+                valid += counts[code] * validValues(Math.max(0, Math.min(CODES - 1, shifted)));
+            }
+        }
+        return valid;
+    }
+
+    // sensor values of one reading which are valid at an on-chip RSSI code
+    int validValues(int code) {
+        int valid = 0;
+        if (code < SensorDecoder.ocrssiLow) {
+            return 0;
+        }
+        if (type.moistureIndex >= 0 && code <= SensorDecoder.ocrssiHighMoisture) {
+            valid++;
+        }
+        if (type.hasTemperature() && code <= SensorDecoder.ocrssiHighTemperature) {
+            valid++;
+        }
+        if (type.backport1Index >= 0 && code <= SensorDecoder.ocrssiHighTemperature) {
+            valid++;
+        }
+        return valid;
+    }
+
+    int values() {
+        return (type.moistureIndex >= 0 ? 1 : 0) + (type.hasTemperature() ? 1 : 0) + (type.backport1Index >= 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,152 @@
+package magnus_engine;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// decodes and calibrates tag reads streamed by a continuously reading reader on worker
+// threads, so that the reader never waits on decoding
+//
+// The reader's thread only calls offer(), which never blocks. Tags can't be singulated
+// while the reader streams, so a tag without a known calibration is reported as such
+// and remembered; the driver collects them with takeUncalibrated(), reads their
+// calibration in a pause of the stream and hands it back with addCalibration().
+public class ReadPipeline {
+
+    /**
+     * Pipeline Settings
+     *
+     * Idle Wait: how long a worker sleeps when the queue is empty, in microseconds
+     */
+    public int idleMicros = 200;
+
+    final SensorType type;
+    final ReadingSink sink;
+    final ReadQueue<TagRead> queue;
+    final CalibrationCache<TemperatureCalibration> lookupCalibration = new CalibrationCache<>(100000);
+    final Set<String> uncalibrated = ConcurrentHashMap.newKeySet();
+    final ArrayList<Thread> workers = new ArrayList<>();
+    volatile boolean running;
+
+    // calibration kept across restarts, null if none
+    public CalibrationStore calibrationStore;
+
+    // totals since the pipeline was created
+    final AtomicLong offered = new AtomicLong();
+    final AtomicLong processed = new AtomicLong();
+
+    public ReadPipeline(SensorType type, ReadingSink sink, int queueCapacity) {
+        this.type = type;
+        this.sink = sink;
+        this.queue = new ReadQueue<>(queueCapacity);
+    }
+
+    // start 'count' decoding threads
+    public synchronized void start(int count) {
+        running = true;
+        for (int i = 0; i < count; i++) {
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    work();
+                }
+            }, "ReadPipeline-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    // stop the decoding threads once the queue has been drained
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker: workers) {
+            worker.join();
+        }
+        workers.clear();
+    }
+
+    // hand over a tag read, called from the reader's thread; false if it was dropped
+    public boolean offer(TagRead tag) {
+        offered.incrementAndGet();
+        return queue.offer(tag);
+    }
+
+    // EPCs of tags reported without calibration since the last call
+    public Set<String> takeUncalibrated() {
+        Set<String> epcs = ConcurrentHashMap.newKeySet();
+        for (String epc: uncalibrated) {
+            if (uncalibrated.remove(epc)) {
+                epcs.add(epc);
+            }
+        }
+        return epcs;
+    }
+
+    // provide the calibration words of a tag read outside the stream
+    public void addCalibration(String epc, short[] calibrationWords) {
+        TemperatureCalibration cal = TemperatureCalibration.decode(type, calibrationWords);
+        lookupCalibration.put(epc, cal, cal.valid);
+    }
+
+    public long offered() {
+        return offered.get();
+    }
+
+    public long processed() {
+        return processed.get();
+    }
+
+    public long dropped() {
+        return queue.dropped();
+    }
+
+    public int queued() {
+        return queue.size();
+    }
+
+    void work() {
+        while (true) {
+            TagRead tag = queue.poll();
+            if (tag == null) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(idleMicros * 1000L);
+                continue;
+            }
+            process(tag);
+        }
+    }
+
+    void process(TagRead tag) {
+        SensorReading reading = SensorDecoder.decode(type, tag);
+        if (reading != null) {
+            if (reading.temperatureStatus == SensorReading.OK) {
+                SensorDecoder.applyCalibration(reading, calibration(tag));
+            }
+            synchronized (sink) {
+                sink.accept(reading);
+            }
+        }
+        processed.incrementAndGet();
+    }
+
+    // calibration from the cache or the store, null if it has yet to be read
+    TemperatureCalibration calibration(TagRead tag) {
+        String epc = tag.epcString();
+        TemperatureCalibration cal = lookupCalibration.get(epc);
+        if (cal == null && calibrationStore != null) {
+            short[] calibrationWords = calibrationStore.wordsByEpc(tag.epc);
+            if (calibrationWords != null) {
+                cal = TemperatureCalibration.decode(type, calibrationWords);
+                lookupCalibration.put(epc, cal, cal.valid);
+            }
+        }
+        if (cal == null) {
+            uncalibrated.add(epc);
+        }
+        return cal;
+    }
+}
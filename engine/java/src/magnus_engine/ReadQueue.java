@@ -0,0 +1,94 @@
+package magnus_engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// bounded lock-free queue between the reader's thread and the decoding threads
+//
+// Every slot carries a sequence number telling producers and consumers whose turn it
+// is, so offer() and poll() only ever compete on one compare-and-set. offer() never
+// waits: when the queue is full the item is dropped and counted, the reader's thread
+// keeps the radio busy and the drop count tells that the consumers fall behind.
+public class ReadQueue<T> {
+
+    final int mask;
+    final AtomicReferenceArray<T> items;
+    final AtomicLongArray sequences;
+    final AtomicLong head = new AtomicLong();  // next position to poll
+    final AtomicLong tail = new AtomicLong();  // next position to offer
+    final AtomicLong dropped = new AtomicLong();
+
+    // 'capacity' is rounded up to a power of two
+    public ReadQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.items = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // add an item, false if the queue is full and the item was dropped
+    public boolean offer(T item) {
+        long position = tail.get();
+        while (true) {
+            int index = (int)position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items.lazySet(index, item);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if (difference < 0) {
+                // the slot still holds an item from one lap ago
+                dropped.incrementAndGet();
+                return false;
+            }
+            else {
+                position = tail.get();
+            }
+        }
+    }
+
+    // take the oldest item, null if the queue is empty
+    public T poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int)position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T item = items.get(index);
+                    items.lazySet(index, null);
+                    sequences.lazySet(index, position + mask + 1);
+                    return item;
+                }
+                position = head.get();
+            }
+            else if (difference < 0) {
+                return null;
+            }
+            else {
+                position = head.get();
+            }
+        }
+    }
+
+    public int size() {
+        return (int)Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // number of items dropped because the queue was full
+    public long dropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,244 @@
+package magnus_engine;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+// runs many readers from one process, each with its own SensorEngine on its own thread,
+// and fans their readings into one aggregation stage which drops the duplicates of
+// overlapping readers
+//
+// Reader threads are virtual threads where the JVM has them (Java 21), so that a
+// reader blocked in a serial or TCP call doesn't hold a platform thread, and platform
+// threads otherwise. Reader threads never wait on the aggregation stage, readings go
+// through a ReadQueue and are dropped and counted if it falls behind.
+public class ReaderFleet {
+
+    /**
+     * Fleet Settings
+     *
+     * Dedup Window: a tag read again within this many milliseconds, by the same
+     * or another reader, is dropped as a duplicate
+     *
+     * Queue Capacity: readings buffered between the readers and the aggregation
+     *
+     * Reconnect Delay: wait before reopening a reader which failed, in milliseconds
+     *
+     * Virtual Threads: run readers on virtual threads when available
+     *
+     * Stale Targeting: have each reader inventory only a range of tags with stale
+     * readings in most rounds (see StaleTagTargeting)
+     */
+    public long dedupMillis = 1000;
+    public int queueCapacity = 65536;
+    public int reconnectMillis = 5000;
+    public boolean virtualThreads = true;
+    public boolean staleTargeting = false;
+
+    /**
+     * On-Chip RSSI Filters: sensor tags with on-chip RSSI codes outside
+     * of these limits won't respond
+     */
+    public byte ocrssiMin = 3;
+    public byte ocrssiMax = 31;
+
+    // opens the connection to one reader
+    public interface ReaderFactory {
+        SensorReader open() throws Exception;
+    }
+
+    static class Member {
+        final String name;
+        final ReaderFactory factory;
+        Thread thread;
+        volatile long rounds;
+        volatile long errors;
+
+        Member(String name, ReaderFactory factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+    }
+
+    final SensorType type;
+    final ReadingSink sink;
+    final ArrayList<Member> members = new ArrayList<>();
+    ReadQueue<SensorReading> readings;
+    Thread aggregator;
+    volatile boolean running;
+
+    // shared by all readers, a tag moving between readers is calibrated once
+    final CalibrationCache<TemperatureCalibration> lookupCalibration = new CalibrationCache<>(100000);
+
+    // calibration kept across restarts, null to always read it from the tags
+    public CalibrationStore calibrationStore;
+
+    // aggregation state, only used by the aggregation thread
+    final EpcTable<Void> seen = new EpcTable<>(16384);
+    long nextPrune;
+
+    // totals since the fleet was started
+    public volatile long accepted;
+    public volatile long duplicates;
+
+    public ReaderFleet(SensorType type, ReadingSink sink) {
+        this.type = type;
+        this.sink = sink;
+    }
+
+    public void add(String name, ReaderFactory factory) {
+        members.add(new Member(name, factory));
+    }
+
+    public synchronized void start() {
+        running = true;
+        readings = new ReadQueue<>(queueCapacity);
+        aggregator = new Thread(new Runnable() {
+            public void run() {
+                aggregate();
+            }
+        }, "ReaderFleet-aggregator");
+        aggregator.setDaemon(true);
+        aggregator.start();
+        for (final Member member: members) {
+            member.thread = startThread(new Runnable() {
+                public void run() {
+                    runReader(member);
+                }
+            }, "ReaderFleet-" + member.name);
+        }
+    }
+
+    // stop all readers after their current round, then drain the aggregation
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        for (Member member: members) {
+            member.thread.join();
+        }
+        aggregator.join();
+    }
+
+    public long rounds() {
+        long rounds = 0;
+        for (Member member: members) {
+            rounds += member.rounds;
+        }
+        return rounds;
+    }
+
+    public long errors() {
+        long errors = 0;
+        for (Member member: members) {
+            errors += member.errors;
+        }
+        return errors;
+    }
+
+    // readings dropped because the aggregation fell behind
+    public long dropped() {
+        return readings == null ? 0 : readings.dropped();
+    }
+
+    void runReader(Member member) {
+        ReadingSink fanIn = new ReadingSink() {
+            public void accept(SensorReading reading) {
+                readings.offer(reading);
+            }
+        };
+        while (running) {
+            SensorReader reader = null;
+            try {
+                reader = member.factory.open();
+                SensorEngine engine = new SensorEngine(reader, type, fanIn);
+                engine.ocrssiMin = ocrssiMin;
+                engine.ocrssiMax = ocrssiMax;
+                engine.lookupCalibration = lookupCalibration;
+                engine.calibrationStore = calibrationStore;
+                if (staleTargeting) {
+                    engine.targeting = new StaleTagTargeting(type);
+                }
+                while (running) {
+                    engine.readRound();
+                    member.rounds++;
+                }
+            }
+            catch (Exception e) {
+                System.out.println("Error: " + member.name + ": " + e.getMessage());
+                member.errors++;
+                LockSupport.parkNanos(reconnectMillis * 1000000L);
+            }
+            finally {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    void aggregate() {
+        while (true) {
+            SensorReading reading = readings.poll();
+            if (reading == null) {
+                if (!running && allStopped()) {
+                    return;
+                }
+                LockSupport.parkNanos(200000);
+                continue;
+            }
+            long now = reading.tag.timestamp;
+            byte[] epc = reading.tag.epc;
+            if (epc.length <= EpcTable.MAX_EPC_LENGTH) {
+                int entry = seen.add(epc);
+                if (seen.reads[entry] != 0 && now - seen.lastSeen[entry] < dedupMillis) {
+                    duplicates++;
+                    continue;
+                }
+                seen.record(entry, reading);
+            }
+            accepted++;
+            sink.accept(reading);
+            if (now > nextPrune) {
+                prune(now);
+            }
+        }
+    }
+
+    // forget tags not seen within the dedup window
+    void prune(long now) {
+        // from the end, removing an entry moves the last one into its place
+        for (int entry = seen.size() - 1; entry >= 0; entry--) {
+            if (now - seen.lastSeen[entry] >= dedupMillis) {
+                seen.remove(entry);
+            }
+        }
+        nextPrune = now + Math.max(dedupMillis, 10000);
+    }
+
+    boolean allStopped() {
+        for (Member member: members) {
+            if (member.thread.isAlive()) {
+                return false;
+            }
+        }
+        return readings.size() == 0;
+    }
+
+    // start a virtual thread if the JVM has them, a platform thread otherwise
+    Thread startThread(Runnable task, String name) {
+        if (virtualThreads) {
+            try {
+                Method startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+                Thread thread = (Thread)startVirtualThread.invoke(null, task);
+                thread.setName(name);
+                return thread;
+            }
+            catch (ReflectiveOperationException e) {
+                // no virtual threads before Java 21
+            }
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
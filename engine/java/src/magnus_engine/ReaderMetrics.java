@@ -0,0 +1,232 @@
+package magnus_engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.ObjectName;
+
+// latency of each phase of a reading round and read counts by antenna, for one reader
+//
+// Phases are timed where they happen, so every reader reports the same names:
+// - select: sending the Selects and holding CW while the sensors settle
+// - inventory: the inventory with embedded read, on the reader
+// - fetch: getting the tags off the reader and into TagReads
+// - decode: turning a round's tag reads into sensor codes
+// - calibration: one singulated calibration read, or one bulk calibration inventory
+// - output: handing a round's readings to the sink
+// The bulk calibration inventory is timed as a whole as calibration, and its select,
+// inventory and fetch count in those phases as well.
+//
+// A reading is valid if its temperature (or moisture, for tags without temperature) is.
+// Every reader's metrics are registered with JMX when first used.
+public class ReaderMetrics implements ReaderMetricsMXBean {
+
+    public static final int SELECT = 0;
+    public static final int INVENTORY = 1;
+    public static final int FETCH = 2;
+    public static final int DECODE = 3;
+    public static final int CALIBRATION = 4;
+    public static final int OUTPUT = 5;
+    public static final String[] PHASES = { "select", "inventory", "fetch", "decode", "calibration", "output" };
+
+    static final ConcurrentHashMap<String, ReaderMetrics> metrics = new ConcurrentHashMap<>();
+
+    final String reader;
+    final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+    final AtomicLongArray reads = new AtomicLongArray(PowerController.MAX_ANTENNAS + 1);
+    final AtomicLongArray validReads = new AtomicLongArray(PowerController.MAX_ANTENNAS + 1);
+    volatile long since = System.nanoTime();
+
+    ReaderMetrics(String reader) {
+        this.reader = reader;
+        for (int phase = 0; phase < phases.length; phase++) {
+            phases[phase] = new LatencyHistogram();
+        }
+    }
+
+    // the metrics of a reader, created and registered with JMX on first use
+    public static ReaderMetrics of(String reader) {
+        ReaderMetrics readerMetrics = metrics.get(reader);
+        if (readerMetrics == null) {
+            readerMetrics = new ReaderMetrics(reader);
+            ReaderMetrics existing = metrics.putIfAbsent(reader, readerMetrics);
+            if (existing != null) {
+                return existing;
+            }
+            readerMetrics.register();
+        }
+        return readerMetrics;
+    }
+
+    // the metrics of every reader so far
+    public static Collection<ReaderMetrics> all() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName(reader));
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not register metrics of " + reader + ": " + e.getMessage());
+        }
+    }
+
+    public static ObjectName objectName(String reader) throws Exception {
+        return new ObjectName("magnus_engine:type=ReaderMetrics,name=" + ObjectName.quote(reader));
+    }
+
+    // time a phase from 'startNanos', a System.nanoTime(), to now
+    public void time(int phase, long startNanos) {
+        phases[phase].record(System.nanoTime() - startNanos);
+    }
+
+    public void record(int phase, long nanos) {
+        phases[phase].record(nanos);
+    }
+
+    public LatencyHistogram phase(int phase) {
+        return phases[phase];
+    }
+
+    public void read(int antenna, boolean valid) {
+        if (antenna < 0 || antenna > PowerController.MAX_ANTENNAS) {
+            antenna = 0;
+        }
+        reads.incrementAndGet(antenna);
+        if (valid) {
+            validReads.incrementAndGet(antenna);
+        }
+    }
+
+    public void add(ReadingBuffer readings) {
+        for (int i = 0; i < readings.size; i++) {
+            int status = readings.type.hasTemperature() ? readings.temperatureStatus[i] : readings.moistureStatus[i];
+            read(readings.tags[i].antenna, status == SensorReading.OK);
+        }
+    }
+
+    public String getReader() {
+        return reader;
+    }
+
+    public long getReads() {
+        return sum(reads);
+    }
+
+    public long getValidReads() {
+        return sum(validReads);
+    }
+
+    public double getValidShare() {
+        long total = getReads();
+        return total == 0 ? Double.NaN : (double)getValidReads() / total;
+    }
+
+    // since the metrics were created or reset
+    public double getReadsPerSecond() {
+        return getReads() / ((System.nanoTime() - since) / 1e9);
+    }
+
+    public Map<String, Long> getPhaseCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int phase = 0; phase < phases.length; phase++) {
+            counts.put(PHASES[phase], phases[phase].count());
+        }
+        return counts;
+    }
+
+    public Map<String, Double> getPhaseMeanMicros() {
+        Map<String, Double> micros = new LinkedHashMap<>();
+        for (int phase = 0; phase < phases.length; phase++) {
+            micros.put(PHASES[phase], phases[phase].mean() / 1000);
+        }
+        return micros;
+    }
+
+    public Map<String, Double> getPhaseP50Micros() {
+        return percentileMicros(0.5);
+    }
+
+    public Map<String, Double> getPhaseP99Micros() {
+        return percentileMicros(0.99);
+    }
+
+    public Map<String, Double> getPhaseMaxMicros() {
+        Map<String, Double> micros = new LinkedHashMap<>();
+        for (int phase = 0; phase < phases.length; phase++) {
+            micros.put(PHASES[phase], phases[phase].max() / 1000.0);
+        }
+        return micros;
+    }
+
+    public Map<Integer, Long> getAntennaReads() {
+        return byAntenna(reads);
+    }
+
+    public Map<Integer, Long> getAntennaValidReads() {
+        return byAntenna(validReads);
+    }
+
+    public void reset() {
+        for (LatencyHistogram phase: phases) {
+            phase.reset();
+        }
+        for (int antenna = 0; antenna < reads.length(); antenna++) {
+            reads.set(antenna, 0);
+            validReads.set(antenna, 0);
+        }
+        since = System.nanoTime();
+    }
+
+    // text report of the phases which were timed and the antennas which read tags
+    public String snapshot() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Metrics of %s: %d reads, %.1f%% valid, %.0f reads/s%n", reader, getReads(), 100 * getValidShare(), getReadsPerSecond()));
+        for (int phase = 0; phase < phases.length; phase++) {
+            LatencyHistogram histogram = phases[phase];
+            if (histogram.count() != 0) {
+                text.append(String.format("  - %-11s %8d x, mean %9.3f ms, p50 %9.3f ms, p99 %9.3f ms, max %9.3f ms%n", PHASES[phase], histogram.count(),
+                    histogram.mean() / 1e6, histogram.percentile(0.5) / 1e6, histogram.percentile(0.99) / 1e6, histogram.max() / 1e6));
+            }
+        }
+        for (int antenna = 0; antenna < reads.length(); antenna++) {
+            long antennaReads = reads.get(antenna);
+            if (antennaReads != 0) {
+                text.append(String.format("  - antenna %d: %d reads, %.1f%% valid%n", antenna, antennaReads, 100.0 * validReads.get(antenna) / antennaReads));
+            }
+        }
+        return text.toString();
+    }
+
+    Map<String, Double> percentileMicros(double quantile) {
+        Map<String, Double> micros = new LinkedHashMap<>();
+        for (int phase = 0; phase < phases.length; phase++) {
+            micros.put(PHASES[phase], phases[phase].percentile(quantile) / 1000);
+        }
+        return micros;
+    }
+
+    static Map<Integer, Long> byAntenna(AtomicLongArray counts) {
+        Map<Integer, Long> byAntenna = new TreeMap<>();
+        for (int antenna = 0; antenna < counts.length(); antenna++) {
+            if (counts.get(antenna) != 0) {
+                byAntenna.put(antenna, counts.get(antenna));
+            }
+        }
+        return byAntenna;
+    }
+
+    static long sum(AtomicLongArray counts) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+}
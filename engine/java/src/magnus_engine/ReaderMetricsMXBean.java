@@ -0,0 +1,35 @@
+package magnus_engine;
+
+import java.util.Map;
+
+// JMX view of one reader's metrics, registered as magnus_engine:type=ReaderMetrics,name=<reader>
+//
+// Phase latencies are in microseconds by phase name, antenna counts by antenna port.
+public interface ReaderMetricsMXBean {
+
+    String getReader();
+
+    long getReads();
+
+    long getValidReads();
+
+    double getValidShare();
+
+    double getReadsPerSecond();
+
+    Map<String, Long> getPhaseCounts();
+
+    Map<String, Double> getPhaseMeanMicros();
+
+    Map<String, Double> getPhaseP50Micros();
+
+    Map<String, Double> getPhaseP99Micros();
+
+    Map<String, Double> getPhaseMaxMicros();
+
+    Map<Integer, Long> getAntennaReads();
+
+    Map<Integer, Long> getAntennaValidReads();
+
+    void reset();
+}
@@ -0,0 +1,100 @@
+package magnus_engine;
+
+import java.util.Arrays;
+
+// decoded sensor codes of a whole round in primitive arrays, reused round after round so
+// that decoding allocates nothing per tag
+//
+// Entry 'i' holds what a SensorReading holds, reading(i) builds one for sinks which
+// want objects. The arrays only grow when a round has more tags than any before.
+public class ReadingBuffer {
+
+    public final SensorType type;
+    public String reader;  // name of the reader the tags were read by, null if unknown
+    public int size;
+
+    public TagRead[] tags;
+    public int[] moistureCode;
+    public int[] ocrssiCode;
+    public int[] temperatureCode;
+    public int[] backport1Code;
+    public int[] backport2Code;
+    public byte[] moistureStatus;
+    public byte[] temperatureStatus;
+    public byte[] backportStatus;
+    public double[] temperature;  // degC
+
+    public ReadingBuffer(SensorType type, int capacity) {
+        this.type = type;
+        allocate(Math.max(capacity, 16));
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            tags[i] = null;
+        }
+        size = 0;
+    }
+
+    // add an entry for a tag with nothing decoded yet, returns its index
+    public int add(TagRead tag) {
+        if (size == tags.length) {
+            grow();
+        }
+        int index = size++;
+        tags[index] = tag;
+        moistureCode[index] = -1;
+        ocrssiCode[index] = -1;
+        temperatureCode[index] = -1;
+        backport1Code[index] = -1;
+        backport2Code[index] = -1;
+        moistureStatus[index] = SensorReading.NOT_READ;
+        temperatureStatus[index] = SensorReading.NOT_READ;
+        backportStatus[index] = SensorReading.NOT_READ;
+        temperature[index] = Double.NaN;
+        return index;
+    }
+
+    // entry 'index' as an object
+    public SensorReading reading(int index) {
+        SensorReading reading = new SensorReading(type, tags[index]);
+        reading.reader = reader;
+        reading.moistureCode = moistureCode[index];
+        reading.ocrssiCode = ocrssiCode[index];
+        reading.temperatureCode = temperatureCode[index];
+        reading.backport1Code = backport1Code[index];
+        reading.backport2Code = backport2Code[index];
+        reading.moistureStatus = moistureStatus[index];
+        reading.temperatureStatus = temperatureStatus[index];
+        reading.backportStatus = backportStatus[index];
+        reading.temperature = temperature[index];
+        return reading;
+    }
+
+    void allocate(int capacity) {
+        tags = new TagRead[capacity];
+        moistureCode = new int[capacity];
+        ocrssiCode = new int[capacity];
+        temperatureCode = new int[capacity];
+        backport1Code = new int[capacity];
+        backport2Code = new int[capacity];
+        moistureStatus = new byte[capacity];
+        temperatureStatus = new byte[capacity];
+        backportStatus = new byte[capacity];
+        temperature = new double[capacity];
+    }
+
+    void grow() {
+        int capacity = tags.length * 2;
+        tags = Arrays.copyOf(tags, capacity);
+        moistureCode = Arrays.copyOf(moistureCode, capacity);
+        ocrssiCode = Arrays.copyOf(ocrssiCode, capacity);
+        temperatureCode = Arrays.copyOf(temperatureCode, capacity);
+        backport1Code = Arrays.copyOf(backport1Code, capacity);
+        backport2Code = Arrays.copyOf(backport2Code, capacity);
+        moistureStatus = Arrays.copyOf(moistureStatus, capacity);
+        temperatureStatus = Arrays.copyOf(temperatureStatus, capacity);
+        backportStatus = Arrays.copyOf(backportStatus, capacity);
+        temperature = Arrays.copyOf(temperature, capacity);
+    }
+}
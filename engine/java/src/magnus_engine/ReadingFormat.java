@@ -0,0 +1,26 @@
+package magnus_engine;
+
+// encodes readings for a BatchingWriter, called on the writer's thread only
+public interface ReadingFormat {
+
+    // written once at the start of a new output, e.g. the column names
+    default void header(OutputBuffer out) {
+    }
+
+    void format(SensorReading reading, OutputBuffer out);
+
+    // format by file name extension: .jsonl, .csv or .bin, text otherwise
+    static ReadingFormat forFile(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return new JsonLinesFormat();
+        }
+        if (name.endsWith(".csv")) {
+            return new CsvFormat();
+        }
+        if (name.endsWith(".bin")) {
+            return new BinaryFormat();
+        }
+        return new TextFormat();
+    }
+}
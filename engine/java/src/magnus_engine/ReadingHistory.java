@@ -0,0 +1,143 @@
+package magnus_engine;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static magnus_engine.ReadingLog.*;
+
+// reads back the history of a tag from the segments of a ReadingLog, which may still be
+// written to
+//
+// Segments outside of the time range are skipped by their header, and a finished
+// segment is only scanned between the first and last record of the tag, or not at all
+// if its index doesn't have the tag. The segment being written has no index yet and
+// is scanned completely.
+public class ReadingHistory {
+
+    final Path directory;
+
+    public ReadingHistory(String directoryName) {
+        this(Paths.get(directoryName));
+    }
+
+    public ReadingHistory(Path directory) {
+        this.directory = directory;
+    }
+
+    // pass the readings of a tag from 'from' to 'to' (milliseconds, inclusive) to 'sink' in
+    // the order they were written, returns how many there were
+    public long read(byte[] epc, long from, long to, ReadingSink sink) throws IOException {
+        long found = 0;
+        for (int number: segments(directory)) {
+            try (FileChannel channel = FileChannel.open(segmentPath(directory, number), StandardOpenOption.READ)) {
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (segment.getInt(0) != MAGIC || segment.getInt(4) != VERSION || segment.getInt(8) != RECORD_SIZE) {
+                    throw new IOException(segmentPath(directory, number) + " is not a reading log segment");
+                }
+                int count = segment.getInt(COUNT);
+                if (count == 0 || segment.getLong(LAST_TIMESTAMP) < from || segment.getLong(FIRST_TIMESTAMP) > to) {
+                    continue;
+                }
+                int[] range = range(number, count, epc);
+                if (range == null) {
+                    continue;
+                }
+                for (int record = range[0]; record <= range[1]; record++) {
+                    int offset = HEADER_SIZE + record * RECORD_SIZE;
+                    long timestamp = segment.getLong(offset + TIMESTAMP);
+                    if (timestamp < from || timestamp > to || !sameKey(segment, offset, epc)) {
+                        continue;
+                    }
+                    sink.accept(reading(segment, offset, epc));
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    // records of a segment which may hold the tag, null if none do
+    int[] range(int number, int count, byte[] epc) throws IOException {
+        Path indexPath = indexPath(directory, number);
+        if (!Files.exists(indexPath)) {
+            return new int[] { 0, count - 1 };
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != VERSION || index.getInt(12) != count) {
+                // left from before the segment was continued
+                return new int[] { 0, count - 1 };
+            }
+            int entries = index.getInt(8);
+            for (int i = 0; i < entries; i++) {
+                int offset = INDEX_HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+                if (index.get(offset) != epc.length) {
+                    continue;
+                }
+                boolean same = true;
+                for (int j = 0; j < epc.length && same; j++) {
+                    same = index.get(offset + 1 + j) == epc[j];
+                }
+                if (same) {
+                    int entry = offset + 1 + MAX_KEY_LENGTH + 3;
+                    return new int[] { index.getInt(entry), index.getInt(entry + 4) };
+                }
+            }
+            return null;
+        }
+    }
+
+    static boolean sameKey(MappedByteBuffer segment, int offset, byte[] epc) {
+        if (segment.get(offset + KEY_LENGTH) != epc.length) {
+            return false;
+        }
+        for (int i = 0; i < epc.length; i++) {
+            if (segment.get(offset + KEY + i) != epc[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static SensorReading reading(MappedByteBuffer segment, int offset, byte[] epc) {
+        TagRead tag = new TagRead(epc, segment.get(offset + ANTENNA), segment.getInt(offset + FREQUENCY), segment.getShort(offset + RSSI),
+            new byte[0], segment.getLong(offset + TIMESTAMP), null);
+        SensorReading reading = new SensorReading(SensorType.values()[segment.get(offset + TYPE)], tag);
+        reading.moistureCode = segment.getInt(offset + MOISTURE_CODE);
+        reading.ocrssiCode = segment.getInt(offset + OCRSSI_CODE);
+        reading.temperatureCode = segment.getInt(offset + TEMPERATURE_CODE);
+        reading.backport1Code = segment.getInt(offset + BACKPORT1_CODE);
+        reading.backport2Code = segment.getInt(offset + BACKPORT2_CODE);
+        reading.temperature = segment.getDouble(offset + TEMPERATURE);
+        reading.moistureStatus = segment.get(offset + MOISTURE_STATUS);
+        reading.temperatureStatus = segment.get(offset + TEMPERATURE_STATUS);
+        reading.backportStatus = segment.get(offset + BACKPORT_STATUS);
+        return reading;
+    }
+
+    // print the history of a tag: <log directory> <EPC> [from] [to], times in milliseconds
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: ReadingHistory <log directory> <EPC> [from] [to]");
+            System.exit(-1);
+        }
+        long from = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        long to = args.length > 3 ? Long.parseLong(args[3]) : Long.MAX_VALUE;
+        try {
+            ConsoleSink console = new ConsoleSink();
+            long found = new ReadingHistory(args[0]).read(TagRead.fromHex(args[1]), from, to, console);
+            console.close();
+            System.out.println("Readings: " + found);
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package magnus_engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+// append-only history of every reading, in memory-mapped segment files of fixed-size
+// records
+//
+// accept() only copies the reading into a record and hands it to the writer thread
+// through a ReadQueue, so the read loop never waits on the disk. If the writer falls
+// behind the record is dropped and counted. A segment holds recordsPerSegment records,
+// then the next one is started. Each finished segment gets a sparse index with one
+// entry per tag (first and last record, count) which ReadingHistory uses to skip the
+// segments and records a tag isn't in.
+//
+// The record count in a segment's header is updated by the writer whenever it runs out
+// of work, so a crash loses at most the records written since. After a restart the log
+// continues the last segment if it isn't full.
+public class ReadingLog implements ReadingSink {
+
+    /**
+     * Log Settings
+     *
+     * Records Per Segment: segment size, 1M records are 64 MiB
+     *
+     * Queue Capacity: records buffered between the read loop and the writer
+     *
+     * Force Interval: how often written records are flushed to the disk, in
+     * milliseconds
+     */
+    public static int recordsPerSegment = 1 << 20;
+    public static int queueCapacity = 65536;
+    public static long forceMillis = 1000;
+
+    // segment layout
+    static final int MAGIC = 0x4D524C47;        // "MRLG"
+    static final int INDEX_MAGIC = 0x4D524958;  // "MRIX"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;          // magic, version, record size, count, first and last timestamp
+    static final int RECORD_SIZE = 64;
+    static final int COUNT = 12;
+    static final int FIRST_TIMESTAMP = 16;
+    static final int LAST_TIMESTAMP = 24;
+
+    // record layout
+    static final int TIMESTAMP = 0;
+    static final int FREQUENCY = 8;
+    static final int MOISTURE_CODE = 12;
+    static final int OCRSSI_CODE = 16;
+    static final int TEMPERATURE_CODE = 20;
+    static final int BACKPORT1_CODE = 24;
+    static final int BACKPORT2_CODE = 28;
+    static final int TEMPERATURE = 32;
+    static final int RSSI = 40;
+    static final int ANTENNA = 42;
+    static final int TYPE = 43;
+    static final int MOISTURE_STATUS = 44;
+    static final int TEMPERATURE_STATUS = 45;
+    static final int BACKPORT_STATUS = 46;
+    static final int KEY_LENGTH = 47;
+    static final int KEY = 48;                  // EPC, up to 128 bits
+    static final int MAX_KEY_LENGTH = 16;
+
+    // index entry layout
+    static final int INDEX_HEADER_SIZE = 16;    // magic, version, entry count, record count
+    static final int INDEX_ENTRY_SIZE = 32;     // key length, key, first, last, count
+
+    final Path directory;
+    final ReadQueue<byte[]> pending;
+    final ReadQueue<byte[]> free;
+    final Thread writer;
+    volatile boolean running = true;
+
+    // writer state, only used by the writer thread
+    int segment;
+    FileChannel channel;
+    MappedByteBuffer buffer;
+    int count;
+    long firstTimestamp;
+    long lastTimestamp;
+    final HashMap<Key, int[]> index = new HashMap<>();  // first record, last record, count
+    final Key probe = new Key(new byte[0], 0, 0);
+
+    // totals since the log was opened
+    public volatile long written;
+    public volatile long skipped;  // EPCs longer than 128 bits
+    public volatile long errors;
+
+    // EPC as a map key, compared by content; the probe points into a record
+    static class Key {
+        byte[] bytes;
+        int offset;
+        int length;
+        int hash;
+
+        Key(byte[] bytes, int offset, int length) {
+            set(bytes, offset, length);
+        }
+
+        void set(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + bytes[offset + i];
+            }
+            this.hash = hash;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key)other;
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key.bytes[key.offset + i] != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    ReadingLog(Path directory) {
+        this.directory = directory;
+        this.pending = new ReadQueue<>(queueCapacity);
+        this.free = new ReadQueue<>(queueCapacity);
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "ReadingLog-writer");
+        this.writer.setDaemon(true);
+    }
+
+    public static ReadingLog open(String directoryName) throws IOException {
+        return open(Paths.get(directoryName));
+    }
+
+    // open the log in 'directory', continuing its last segment
+    public static ReadingLog open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        ReadingLog log = new ReadingLog(directory);
+        int[] segments = segments(directory);
+        if (segments.length == 0) {
+            log.openSegment(0);
+        }
+        else {
+            log.openSegment(segments[segments.length - 1]);
+            if (log.count == recordsPerSegment) {
+                log.finishSegment();
+                log.openSegment(log.segment + 1);
+            }
+        }
+        log.writer.start();
+        return log;
+    }
+
+    public void accept(SensorReading reading) {
+        TagRead tag = reading.tag;
+        byte[] record = record(tag);
+        if (record == null) {
+            return;
+        }
+        putLong(record, TIMESTAMP, tag.timestamp);
+        putInt(record, FREQUENCY, tag.frequency);
+        putInt(record, MOISTURE_CODE, reading.moistureCode);
+        putInt(record, OCRSSI_CODE, reading.ocrssiCode);
+        putInt(record, TEMPERATURE_CODE, reading.temperatureCode);
+        putInt(record, BACKPORT1_CODE, reading.backport1Code);
+        putInt(record, BACKPORT2_CODE, reading.backport2Code);
+        putLong(record, TEMPERATURE, Double.doubleToRawLongBits(reading.temperature));
+        putShort(record, RSSI, tag.rssi);
+        record[ANTENNA] = (byte)tag.antenna;
+        record[TYPE] = (byte)reading.type.ordinal();
+        record[MOISTURE_STATUS] = (byte)reading.moistureStatus;
+        record[TEMPERATURE_STATUS] = (byte)reading.temperatureStatus;
+        record[BACKPORT_STATUS] = (byte)reading.backportStatus;
+        submit(record);
+    }
+
+    public void accept(ReadingBuffer readings, int index) {
+        TagRead tag = readings.tags[index];
+        byte[] record = record(tag);
+        if (record == null) {
+            return;
+        }
+        putLong(record, TIMESTAMP, tag.timestamp);
+        putInt(record, FREQUENCY, tag.frequency);
+        putInt(record, MOISTURE_CODE, readings.moistureCode[index]);
+        putInt(record, OCRSSI_CODE, readings.ocrssiCode[index]);
+        putInt(record, TEMPERATURE_CODE, readings.temperatureCode[index]);
+        putInt(record, BACKPORT1_CODE, readings.backport1Code[index]);
+        putInt(record, BACKPORT2_CODE, readings.backport2Code[index]);
+        putLong(record, TEMPERATURE, Double.doubleToRawLongBits(readings.temperature[index]));
+        putShort(record, RSSI, tag.rssi);
+        record[ANTENNA] = (byte)tag.antenna;
+        record[TYPE] = (byte)readings.type.ordinal();
+        record[MOISTURE_STATUS] = readings.moistureStatus[index];
+        record[TEMPERATURE_STATUS] = readings.temperatureStatus[index];
+        record[BACKPORT_STATUS] = readings.backportStatus[index];
+        submit(record);
+    }
+
+    // records dropped because the writer fell behind
+    public long dropped() {
+        return pending.dropped();
+    }
+
+    // write what is queued, finish the current segment and stop the writer
+    public void close() throws InterruptedException {
+        running = false;
+        writer.join();
+    }
+
+    // a free record holding the tag's EPC, null if the EPC can't be logged
+    byte[] record(TagRead tag) {
+        if (tag.epc.length > MAX_KEY_LENGTH) {
+            skipped++;
+            return null;
+        }
+        byte[] record = free.poll();
+        if (record == null) {
+            record = new byte[RECORD_SIZE];
+        }
+        record[KEY_LENGTH] = (byte)tag.epc.length;
+        System.arraycopy(tag.epc, 0, record, KEY, tag.epc.length);
+        return record;
+    }
+
+    void submit(byte[] record) {
+        if (!pending.offer(record)) {
+            free.offer(record);
+        }
+    }
+
+    void write() {
+        long nextForce = System.currentTimeMillis() + forceMillis;
+        boolean dirty = false;
+        while (true) {
+            byte[] record = pending.poll();
+            if (record == null) {
+                if (dirty) {
+                    updateHeader();
+                    dirty = false;
+                }
+                if (!running && pending.size() == 0) {
+                    break;
+                }
+                if (System.currentTimeMillis() >= nextForce) {
+                    buffer.force();
+                    nextForce = System.currentTimeMillis() + forceMillis;
+                }
+                LockSupport.parkNanos(1000000);
+                continue;
+            }
+            try {
+                append(record);
+                dirty = true;
+            }
+            catch (IOException e) {
+                System.out.println("Error: reading log: " + e.getMessage());
+                errors++;
+            }
+            free.offer(record);
+        }
+        try {
+            finishSegment();
+        }
+        catch (IOException e) {
+            System.out.println("Error: reading log: " + e.getMessage());
+            errors++;
+        }
+    }
+
+    void append(byte[] record) throws IOException {
+        if (count == recordsPerSegment) {
+            finishSegment();
+            openSegment(segment + 1);
+        }
+        long timestamp = getLong(record, TIMESTAMP);
+        buffer.position(HEADER_SIZE + count * RECORD_SIZE);
+        buffer.put(record);
+        if (count == 0) {
+            firstTimestamp = timestamp;
+        }
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        indexRecord(record, count);
+        count++;
+        written++;
+    }
+
+    void indexRecord(byte[] record, int position) {
+        probe.set(record, KEY, record[KEY_LENGTH]);
+        int[] entry = index.get(probe);
+        probe.bytes = null;
+        if (entry == null) {
+            byte[] epc = Arrays.copyOfRange(record, KEY, KEY + record[KEY_LENGTH]);
+            index.put(new Key(epc, 0, epc.length), new int[] { position, position, 1 });
+        }
+        else {
+            entry[1] = position;
+            entry[2]++;
+        }
+    }
+
+    // map segment 'number', rebuilding its index if it already has records
+    void openSegment(int number) throws IOException {
+        segment = number;
+        channel = FileChannel.open(segmentPath(directory, number), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = channel.size() == 0;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)recordsPerSegment * RECORD_SIZE);
+        index.clear();
+        if (created) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            count = 0;
+            firstTimestamp = 0;
+            lastTimestamp = 0;
+            updateHeader();
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE) {
+            channel.close();
+            throw new IOException(segmentPath(directory, number) + " is not a reading log segment");
+        }
+        count = Math.min(buffer.getInt(COUNT), recordsPerSegment);
+        firstTimestamp = buffer.getLong(FIRST_TIMESTAMP);
+        lastTimestamp = buffer.getLong(LAST_TIMESTAMP);
+        byte[] record = new byte[RECORD_SIZE];
+        for (int i = 0; i < count; i++) {
+            buffer.position(HEADER_SIZE + i * RECORD_SIZE);
+            buffer.get(record);
+            indexRecord(record, i);
+        }
+    }
+
+    // flush the segment and write its index
+    void finishSegment() throws IOException {
+        updateHeader();
+        buffer.force();
+        ByteBuffer entries = ByteBuffer.allocate(INDEX_HEADER_SIZE + index.size() * INDEX_ENTRY_SIZE);
+        entries.putInt(INDEX_MAGIC);
+        entries.putInt(VERSION);
+        entries.putInt(index.size());
+        entries.putInt(count);
+        for (Map.Entry<Key, int[]> entry: index.entrySet()) {
+            Key key = entry.getKey();
+            int position = entries.position();
+            entries.put((byte)key.length);
+            entries.put(key.bytes, key.offset, key.length);
+            entries.position(position + 1 + MAX_KEY_LENGTH + 3);
+            entries.putInt(entry.getValue()[0]);
+            entries.putInt(entry.getValue()[1]);
+            entries.putInt(entry.getValue()[2]);
+        }
+        entries.flip();
+        try (FileChannel indexChannel = FileChannel.open(indexPath(directory, segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (entries.hasRemaining()) {
+                indexChannel.write(entries);
+            }
+        }
+        channel.close();
+    }
+
+    void updateHeader() {
+        buffer.putLong(FIRST_TIMESTAMP, firstTimestamp);
+        buffer.putLong(LAST_TIMESTAMP, lastTimestamp);
+        // the count last, so that a reader never sees a record before it is complete
+        buffer.putInt(COUNT, count);
+    }
+
+    // numbers of the segments in 'directory', in order
+    static int[] segments(Path directory) {
+        String[] names = directory.toFile().list();
+        if (names == null) {
+            return new int[0];
+        }
+        int[] numbers = new int[names.length];
+        int found = 0;
+        for (String name: names) {
+            if (name.startsWith("readings-") && name.endsWith(".log")) {
+                numbers[found++] = Integer.parseInt(name.substring(9, name.length() - 4));
+            }
+        }
+        numbers = Arrays.copyOf(numbers, found);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    static Path segmentPath(Path directory, int number) {
+        return directory.resolve(String.format("readings-%08d.log", number));
+    }
+
+    static Path indexPath(Path directory, int number) {
+        return directory.resolve(String.format("readings-%08d.idx", number));
+    }
+
+    // big-endian like the segment buffers
+    static void putLong(byte[] bytes, int offset, long value) {
+        putInt(bytes, offset, (int)(value >> 32));
+        putInt(bytes, offset + 4, (int)value);
+    }
+
+    static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte)(value >> 24);
+        bytes[offset + 1] = (byte)(value >> 16);
+        bytes[offset + 2] = (byte)(value >> 8);
+        bytes[offset + 3] = (byte)value;
+    }
+
+    static void putShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte)(value >> 8);
+        bytes[offset + 1] = (byte)value;
+    }
+
+    static long getLong(byte[] bytes, int offset) {
+        return ((long)getInt(bytes, offset) << 32) | (getInt(bytes, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    static int getInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,36 @@
+package magnus_engine;
+
+// receives the decoded readings of every round
+public interface ReadingSink {
+    void accept(SensorReading reading);
+
+    // entry 'index' of a round's readings, override to take it without allocating;
+    // 'readings' is reused for the next round, keep nothing from it
+    default void accept(ReadingBuffer readings, int index) {
+        accept(readings.reading(index));
+    }
+
+    // write out what the sink still holds and release it
+    default void close() throws Exception {
+    }
+
+    // pass every reading to both sinks, e.g. to print readings and keep their history
+    static ReadingSink tee(final ReadingSink first, final ReadingSink second) {
+        return new ReadingSink() {
+            public void accept(SensorReading reading) {
+                first.accept(reading);
+                second.accept(reading);
+            }
+
+            public void accept(ReadingBuffer readings, int index) {
+                first.accept(readings, index);
+                second.accept(readings, index);
+            }
+
+            public void close() throws Exception {
+                first.close();
+                second.close();
+            }
+        };
+    }
+}
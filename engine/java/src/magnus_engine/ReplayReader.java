@@ -0,0 +1,249 @@
+package magnus_engine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
+
+// replays a capture file written by CaptureReader, so that the decode, calibration and
+// output pipeline sees the same tag reads as it did in the field
+//
+// The capture is loaded into memory first, so that an unthrottled replay measures the
+// pipeline and not the disk. Each inventory returns the next captured inventory of the
+// same bank, address and length, and memory reads are answered by EPC from the captured
+// ones. Selects and power changes are accepted and ignored, the captured reads already
+// reflect them. Tag timestamps are the captured ones.
+public class ReplayReader implements SensorReader {
+
+    /**
+     * Replay Settings
+     *
+     * Speed: 1.0 replays inventories as far apart as they were captured, 10.0 ten
+     * times faster, 0.0 as fast as possible
+     *
+     * Loop: start over at the end of the capture instead of returning no tags
+     */
+    public double speed = 1.0;
+    public boolean loop = false;
+
+    static class Inventory {
+        long captured;
+        TagRead[] tags;
+    }
+
+    final String name;
+    public final SensorType type;  // null if the capture didn't record one
+    final HashMap<String, ArrayList<Inventory>> inventories = new HashMap<>();
+    final HashMap<String, int[]> positions = new HashMap<>();
+    final HashMap<String, short[]> memory = new HashMap<>();
+    long lastCaptured;
+    long lastReplayed;  // System.nanoTime()
+    boolean finished;
+
+    ReplayReader(String name, SensorType type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    public static ReplayReader open(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 65536))) {
+            if (in.readInt() != CaptureReader.MAGIC || in.readUnsignedByte() != CaptureReader.VERSION) {
+                throw new IOException(fileName + " is not a capture file");
+            }
+            int type = in.readUnsignedByte();
+            ReplayReader replay = new ReplayReader(in.readUTF(), type == 255 ? null : SensorType.values()[type]);
+            while (true) {
+                int record;
+                try {
+                    record = in.readUnsignedByte();
+                }
+                catch (EOFException e) {
+                    break;
+                }
+                if (record == CaptureReader.INVENTORY) {
+                    replay.readInventory(in);
+                }
+                else if (record == CaptureReader.MEMORY_READ) {
+                    replay.readMemoryRead(in);
+                }
+                else {
+                    throw new IOException(fileName + ": unknown record " + record);
+                }
+            }
+            return replay;
+        }
+    }
+
+    void readInventory(DataInputStream in) throws IOException {
+        Inventory inventory = new Inventory();
+        inventory.captured = in.readLong();
+        String key = key(in.readUnsignedByte(), in.readUnsignedShort(), in.readUnsignedByte());
+        inventory.tags = new TagRead[in.readInt()];
+        for (int i = 0; i < inventory.tags.length; i++) {
+            byte[] epc = readEpc(in);
+            int antenna = in.readUnsignedByte();
+            int frequency = in.readInt();
+            int rssi = in.readShort();
+            int dataLength = in.readShort();
+            byte[] data = null;
+            if (dataLength >= 0) {
+                data = new byte[dataLength];
+                in.readFully(data);
+            }
+            inventory.tags[i] = new TagRead(epc, antenna, frequency, rssi, data, in.readLong(), null);
+        }
+        ArrayList<Inventory> list = inventories.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            inventories.put(key, list);
+            positions.put(key, new int[1]);
+        }
+        list.add(inventory);
+    }
+
+    void readMemoryRead(DataInputStream in) throws IOException {
+        in.readLong();
+        byte[] epc = readEpc(in);
+        String key = TagRead.toHex(epc) + "/" + key(in.readUnsignedByte(), in.readUnsignedShort(), in.readUnsignedByte());
+        int count = in.readShort();
+        if (count < 0) {
+            return;
+        }
+        short[] words = new short[count];
+        for (int i = 0; i < count; i++) {
+            words[i] = in.readShort();
+        }
+        memory.put(key, words);
+    }
+
+    static byte[] readEpc(DataInputStream in) throws IOException {
+        byte[] epc = new byte[in.readUnsignedByte()];
+        in.readFully(epc);
+        return epc;
+    }
+
+    static String key(int bank, int address, int length) {
+        return bank + "/" + address + "/" + length;
+    }
+
+    // true once an inventory ran past the end of the capture (never when looping)
+    public boolean finished() {
+        return finished;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void select(Select[] selects, int settleMicros) {
+    }
+
+    public TagRead[] inventory(int bank, int address, int length) {
+        String key = key(bank, address, length);
+        ArrayList<Inventory> list = inventories.get(key);
+        if (list == null) {
+            finished = !loop;
+            return new TagRead[0];
+        }
+        int[] position = positions.get(key);
+        if (position[0] == list.size()) {
+            if (!loop) {
+                finished = true;
+                return new TagRead[0];
+            }
+            position[0] = 0;
+            lastCaptured = 0;
+        }
+        Inventory inventory = list.get(position[0]++);
+        pace(inventory.captured);
+        return inventory.tags.clone();
+    }
+
+    public short[] readMemBlock(TagRead tag, int bank, int address, int length) {
+        short[] words = memory.get(TagRead.toHex(tag.epc) + "/" + key(bank, address, length));
+        if (words == null) {
+            throw new RuntimeException("Tag not found");
+        }
+        return words.clone();
+    }
+
+    public void setPower(int antenna, double dBm) {
+    }
+
+    public void close() {
+    }
+
+    // wait until the inventory is as far from the last one as it was when captured
+    void pace(long captured) {
+        long now = System.nanoTime();
+        if (speed > 0 && lastCaptured != 0 && captured > lastCaptured) {
+            long due = lastReplayed + (long)((captured - lastCaptured) * 1000000 / speed);
+            while (now < due) {
+                LockSupport.parkNanos(due - now);
+                now = System.nanoTime();
+            }
+        }
+        lastCaptured = captured;
+        lastReplayed = now;
+    }
+
+    // replay a capture through the engine and report the throughput, printing every
+    // reading at speed 1 or less: <capture file> [speed] [sensor type] [calibration file]
+    // - the calibration file is needed if the capture was taken with one, its tags'
+    //   calibration was never read from them
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: ReplayReader <capture file> [speed] [sensor type] [calibration file]");
+            System.exit(-1);
+        }
+        try {
+            ReplayReader reader = open(args[0]);
+            reader.speed = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+            SensorType type = args.length > 2 ? SensorType.valueOf(args[2]) : reader.type;
+            if (type == null) {
+                System.out.println("Error: the capture has no sensor type, name one");
+                System.exit(-1);
+            }
+            final long[] valid = new long[1];
+            ReadingSink counter = new ReadingSink() {
+                public void accept(SensorReading reading) {
+                    if (reading.temperatureStatus == SensorReading.OK || reading.moistureStatus == SensorReading.OK) {
+                        valid[0]++;
+                    }
+                }
+
+                public void accept(ReadingBuffer readings, int index) {
+                    if (readings.temperatureStatus[index] == SensorReading.OK || readings.moistureStatus[index] == SensorReading.OK) {
+                        valid[0]++;
+                    }
+                }
+            };
+            boolean print = reader.speed > 0 && reader.speed <= 1;
+            ReadingSink sink = print ? ReadingSink.tee(counter, new ConsoleSink()) : counter;
+            SensorEngine engine = new SensorEngine(reader, type, sink);
+            if (args.length > 3) {
+                engine.calibrationStore = CalibrationStore.open(args[3]);
+            }
+            long start = System.nanoTime();
+            while (!reader.finished()) {
+                engine.readRound();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            sink.close();
+            if (engine.calibrationStore != null) {
+                engine.calibrationStore.close();
+            }
+            System.out.println("Replayed " + reader.name() + ": " + engine.rounds + " rounds, " + engine.tagReads + " tag reads (" + valid[0] + " valid), calibration reads: " + engine.calibrationReads);
+            System.out.println("Wall clock: " + String.format("%.3f s, %.0f tags/s", seconds, engine.tagReads / seconds));
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package magnus_engine;
+
+import java.util.Arrays;
+
+// vendor-neutral RFID Gen2 Select Command, using the same parameters as
+// Common.createGen2Select (ThingMagic) and Common.createInventoryExtendedSelect (Nordic ID)
+public class Select {
+
+    // memory banks
+    public static final int BANK_RESERVED = 0;
+    public static final int BANK_EPC = 1;
+    public static final int BANK_TID = 2;
+    public static final int BANK_USER = 3;
+
+    // targets
+    public static final int TARGET_S0 = 0;
+    public static final int TARGET_S1 = 1;
+    public static final int TARGET_S2 = 2;
+    public static final int TARGET_S3 = 3;
+    public static final int TARGET_SL = 4;
+
+    public final int target;
+    public final int action;
+    public final int bank;
+    public final int pointer;  // bit address
+    public final int length;   // mask length in bits
+    public final byte[] mask;
+
+    public Select(int target, int action, int bank, int pointer, int length, byte[] mask) {
+        if (target < 0 || target > 4) {
+            throw new IllegalArgumentException("invalid target value");
+        }
+        if (action < 0 || action > 7) {
+            throw new IllegalArgumentException("invalid action value");
+        }
+        this.target = target;
+        this.action = action;
+        this.bank = bank;
+        this.pointer = pointer;
+        this.length = length;
+        this.mask = mask;
+    }
+
+    // equal Selects send the same command, so that SelectCompiler can reuse its encoding
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Select)) {
+            return false;
+        }
+        Select select = (Select)other;
+        return target == select.target && action == select.action && bank == select.bank && pointer == select.pointer
+            && length == select.length && Arrays.equals(mask, select.mask);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((((target * 8 + action) * 4 + bank) * 31 + pointer) * 31 + length) * 31 + Arrays.hashCode(mask);
+    }
+}
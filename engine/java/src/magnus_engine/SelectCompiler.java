@@ -0,0 +1,54 @@
+package magnus_engine;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// encodes Select commands into a reader API's own command objects once, and hands out
+// the same object for every equal Select afterwards, across rounds and readers
+//
+// A sensor type's Select sequence only changes with its On-Chip RSSI limits, so the
+// encoding (the bit-packed custom exchange of the Nordic ID readers, for example) is
+// done once per type and limits. The compiled objects are shared and must not be
+// changed; per-tag filters, such as a singulation by EPC, don't belong in here.
+public class SelectCompiler<T> {
+
+    // the reader API's encoding of one Select
+    public interface Encoder<T> {
+        T encode(Select select);
+    }
+
+    final Encoder<T> encoder;
+    final ConcurrentHashMap<Select, T> compiled = new ConcurrentHashMap<>();
+
+    // totals since the compiler was created
+    public volatile long encoded;
+
+    public SelectCompiler(Encoder<T> encoder) {
+        this.encoder = encoder;
+    }
+
+    // the encoding of a Select, made on first use
+    public T compile(Select select) {
+        T command = compiled.get(select);
+        if (command == null) {
+            command = encoder.encode(select);
+            T previous = compiled.putIfAbsent(select, command);
+            if (previous != null) {
+                return previous;
+            }
+            encoded++;
+        }
+        return command;
+    }
+
+    // the encodings of selects[from] to the end into 'commands'
+    public T[] compile(Select[] selects, int from, T[] commands) {
+        for (int i = from; i < selects.length && i - from < commands.length; i++) {
+            commands[i - from] = compile(selects[i]);
+        }
+        return commands;
+    }
+
+    public int size() {
+        return compiled.size();
+    }
+}
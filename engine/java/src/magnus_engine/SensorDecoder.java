@@ -0,0 +1,150 @@
+package magnus_engine;
+
+// converts embedded read results into sensor codes and applies the On-Chip RSSI
+// validity limits of the samples' printSensorResults
+public class SensorDecoder {
+
+    /**
+     * Validity Limits
+     *
+     * On-Chip RSSI: codes below ocrssiLow mean the tag had too little power,
+     * codes above the sensor's limit mean it had too much
+     *
+     * Temperature Code: codes outside of this range are bad reads
+     * (the Nordic ID samples' range, ThingMagicSensorReader lowers the maximum to
+     * the ThingMagic samples' 3500)
+     */
+    public static int ocrssiLow = 5;
+    public static int ocrssiHighMoisture = 21;
+    public static int ocrssiHighTemperature = 18;
+    public static int temperatureCodeMin = 1000;
+    public static int temperatureCodeMax = 4000;
+
+    // decode one tag read, null if it carries no sensor data
+    public static SensorReading decode(SensorType type, TagRead tag) {
+        byte[] data = tag.data;
+        if (data == null || data.length < type.dataLength * 2) {
+            return null;
+        }
+        SensorReading reading = new SensorReading(type, tag);
+        if (type.moistureIndex >= 0) {
+            reading.moistureCode = word(data, type.moistureIndex);
+        }
+        if (type.ocrssiIndex >= 0) {
+            reading.ocrssiCode = word(data, type.ocrssiIndex);
+        }
+        if (type.temperatureIndex >= 0) {
+            reading.temperatureCode = word(data, type.temperatureIndex);
+        }
+        if (type.backport1Index >= 0) {
+            reading.backport1Code = word(data, type.backport1Index);
+            reading.backport2Code = word(data, type.backport2Index);
+        }
+        reading.moistureStatus = moistureStatus(reading.ocrssiCode);
+        if (type.hasTemperature()) {
+            reading.temperatureStatus = temperatureStatus(reading.ocrssiCode, reading.temperatureCode);
+        }
+        if (type.backport1Index >= 0) {
+            reading.backportStatus = powerStatus(reading.ocrssiCode, ocrssiHighTemperature);
+        }
+        return reading;
+    }
+
+    // decode one tag read straight into the next entry of 'readings' without allocating,
+    // returns the entry's index or -1 if it carries no sensor data
+    public static int decode(SensorType type, TagRead tag, ReadingBuffer readings) {
+        return decode(type, tag, 0, readings);
+    }
+
+    // same for sensor codes starting at word 'offset' of the read, as in the wider
+    // window a mixed population is read with
+    public static int decode(SensorType type, TagRead tag, int offset, ReadingBuffer readings) {
+        byte[] data = tag.data;
+        if (data == null || data.length < (offset + type.dataLength) * 2) {
+            return -1;
+        }
+        int index = readings.add(tag);
+        int ocrssiCode = type.ocrssiIndex >= 0 ? word(data, offset + type.ocrssiIndex) : -1;
+        readings.ocrssiCode[index] = ocrssiCode;
+        if (type.moistureIndex >= 0) {
+            readings.moistureCode[index] = word(data, offset + type.moistureIndex);
+        }
+        readings.moistureStatus[index] = (byte)moistureStatus(ocrssiCode);
+        if (type.hasTemperature()) {
+            int temperatureCode = word(data, offset + type.temperatureIndex);
+            readings.temperatureCode[index] = temperatureCode;
+            readings.temperatureStatus[index] = (byte)temperatureStatus(ocrssiCode, temperatureCode);
+        }
+        if (type.backport1Index >= 0) {
+            readings.backport1Code[index] = word(data, offset + type.backport1Index);
+            readings.backport2Code[index] = word(data, offset + type.backport2Index);
+            readings.backportStatus[index] = (byte)powerStatus(ocrssiCode, ocrssiHighTemperature);
+        }
+        return index;
+    }
+
+    // apply calibration to entry 'index' of 'readings', 'cal' is null if the calibration could not be read
+    public static void applyCalibration(ReadingBuffer readings, int index, TemperatureCalibration cal) {
+        int status = readings.temperatureStatus[index];
+        if (status != SensorReading.OK && status != SensorReading.NO_CALIBRATION) {
+            return;
+        }
+        if (cal == null) {
+            readings.temperatureStatus[index] = SensorReading.NO_CALIBRATION;
+        }
+        else if (!cal.valid) {
+            readings.temperatureStatus[index] = SensorReading.INVALID_CALIBRATION;
+        }
+        else {
+            readings.temperature[index] = cal.temperature(readings.temperatureCode[index]);
+            readings.temperatureStatus[index] = SensorReading.OK;
+        }
+    }
+
+    // apply calibration to a decoded reading, 'cal' is null if the calibration could not be read
+    public static void applyCalibration(SensorReading reading, TemperatureCalibration cal) {
+        if (reading.temperatureStatus != SensorReading.OK && reading.temperatureStatus != SensorReading.NO_CALIBRATION) {
+            return;
+        }
+        if (cal == null) {
+            reading.temperatureStatus = SensorReading.NO_CALIBRATION;
+        }
+        else if (!cal.valid) {
+            reading.temperatureStatus = SensorReading.INVALID_CALIBRATION;
+        }
+        else {
+            reading.temperature = cal.temperature(reading.temperatureCode);
+            reading.temperatureStatus = SensorReading.OK;
+        }
+    }
+
+    static int moistureStatus(int ocrssiCode) {
+        if (ocrssiCode < 0) {
+            // no On-Chip RSSI code to qualify the moisture code with
+            return SensorReading.OK;
+        }
+        return powerStatus(ocrssiCode, ocrssiHighMoisture);
+    }
+
+    static int temperatureStatus(int ocrssiCode, int temperatureCode) {
+        int status = powerStatus(ocrssiCode, ocrssiHighTemperature);
+        if (status == SensorReading.OK && (temperatureCode < temperatureCodeMin || temperatureCodeMax < temperatureCode)) {
+            status = SensorReading.BAD_READ;
+        }
+        return status;
+    }
+
+    static int powerStatus(int ocrssiCode, int ocrssiHigh) {
+        if (ocrssiCode < ocrssiLow) {
+            return SensorReading.POWER_TOO_LOW;
+        }
+        if (ocrssiCode > ocrssiHigh) {
+            return SensorReading.POWER_TOO_HIGH;
+        }
+        return SensorReading.OK;
+    }
+
+    static int word(byte[] data, int index) {
+        return (short)(((data[2 * index] & 0xFF) << 8) | (data[2 * index + 1] & 0xFF));
+    }
+}
@@ -0,0 +1,207 @@
+package magnus_engine;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+// runs sensor reading rounds on any SensorReader: select, inventory with embedded read,
+// decode, calibrate and hand the readings to a sink
+public class SensorEngine {
+
+    /**
+     * Tag Settings
+     *
+     * On-Chip RSSI Filters: sensor tags with on-chip RSSI codes outside
+     * of these limits won't respond
+     *
+     * Bulk Calibration: read the calibration of all new tags in one inventory
+     * instead of singulating them one at a time, once at least this share of
+     * a round's tags is new (the inventory covers every tag of the family)
+     */
+    public byte ocrssiMin = 3;
+    public byte ocrssiMax = 31;
+    public boolean bulkCalibration = true;
+    public double bulkCalibrationShare = 0.25;
+
+    // TID words holding the model number and serial number
+    static final int TID_WORDS = 6;
+
+    final SensorReader reader;
+    final SensorType type;
+    final ReadingSink sink;
+    CalibrationCache<TemperatureCalibration> lookupCalibration = new CalibrationCache<>(100000);
+    final ReadingBuffer readings;
+
+    // calibration kept across restarts, null to always read it from the tags
+    public CalibrationStore calibrationStore;
+
+    // CW hold time after the selects for the sensors to measure, tuned by SettleTimeTuner
+    public int settleMicros;
+
+    // adjusts the antennas' power between rounds, null to keep it fixed
+    public PowerController powerControl;
+
+    // inventories only a range of tags with stale readings, null for all tags every round
+    public StaleTagTargeting targeting;
+
+    // phase latencies and read counts of the reader, shared with the reader itself
+    public final ReaderMetrics metrics;
+
+    // totals since the engine was created
+    public long rounds;
+    public long tagReads;
+    public long calibrationReads;
+
+    public SensorEngine(SensorReader reader, SensorType type, ReadingSink sink) {
+        this.reader = reader;
+        this.type = type;
+        this.sink = sink;
+        this.settleMicros = type.settleMicros;
+        this.metrics = ReaderMetrics.of(reader.name());
+        this.readings = new ReadingBuffer(type, 256);
+    }
+
+    // run one round, returns the number of tags found
+    public int readRound() throws Exception {
+        Select[] selects = type.selects(ocrssiMin, ocrssiMax);
+        if (targeting != null) {
+            selects = targeting.selects(selects, reader.maxSelects());
+        }
+        reader.select(selects, settleMicros);
+        TagRead[] results = reader.inventory(Select.BANK_RESERVED, type.dataAddress, type.dataLength);
+        process(results, results.length, 0);
+        rounds++;
+        return results.length;
+    }
+
+    // decode, calibrate and output the first 'count' of 'results', tags of this family
+    // whose sensor codes start at word 'offset' of their embedded read
+    void process(TagRead[] results, int count, int offset) throws Exception {
+        readings.clear();
+        readings.reader = reader.name();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            SensorDecoder.decode(type, results[i], offset, readings);
+        }
+        metrics.time(ReaderMetrics.DECODE, start);
+        if (powerControl != null) {
+            powerControl.add(readings);
+            if (powerControl.adjust()) {
+                powerControl.apply(reader);
+            }
+        }
+        if (bulkCalibration && type.hasTemperature()) {
+            readNewCalibrations();
+        }
+        for (int i = 0; i < readings.size; i++) {
+            if (readings.temperatureStatus[i] == SensorReading.OK) {
+                SensorDecoder.applyCalibration(readings, i, calibration(readings.tags[i]));
+            }
+        }
+        if (targeting != null) {
+            targeting.add(readings);
+        }
+        metrics.add(readings);
+        start = System.nanoTime();
+        for (int i = 0; i < readings.size; i++) {
+            sink.accept(readings, i);
+        }
+        metrics.time(ReaderMetrics.OUTPUT, start);
+        tagReads += count;
+    }
+
+    // read the calibration of all tags in need of one with a single inventory, tags
+    // missed here are singulated one at a time by calibration()
+    void readNewCalibrations() throws Exception {
+        HashSet<String> uncalibrated = null;
+        for (int i = 0; i < readings.size; i++) {
+            if (readings.temperatureStatus[i] != SensorReading.OK) {
+                continue;
+            }
+            TagRead tag = readings.tags[i];
+            if (lookupCalibration.get(tag.epc) != null) {
+                continue;
+            }
+            short[] calibrationWords = calibrationStore == null ? null : calibrationStore.wordsByEpc(tag.epc);
+            if (calibrationWords != null) {
+                TemperatureCalibration cal = TemperatureCalibration.decode(type, calibrationWords);
+                lookupCalibration.put(tag.epc, cal, cal.valid);
+            }
+            else {
+                if (uncalibrated == null) {
+                    uncalibrated = new HashSet<>();
+                }
+                uncalibrated.add(tag.epcString());
+            }
+        }
+        if (uncalibrated == null || uncalibrated.size() < bulkCalibrationShare * readings.size) {
+            return;
+        }
+        long start = System.nanoTime();
+        // only sensor tags of this family respond, no need to enable the sensors
+        Select[] tidFilter = { new Select(Select.TARGET_SL, 0, Select.BANK_TID, 0x00, 28, type.tidPrefix) };
+        reader.select(tidFilter, 0);
+        HashMap<String, short[]> calibrations = new HashMap<>();
+        for (TagRead tag: reader.inventory(Select.BANK_USER, type.calibrationAddress, 4)) {
+            String epc = tag.epcString();
+            if (tag.data != null && tag.data.length == 8 && uncalibrated.contains(epc)) {
+                calibrations.put(epc, TagRead.bytesToWords(tag.data));
+            }
+        }
+        calibrationReads += calibrations.size();
+        for (Map.Entry<String, short[]> entry: calibrations.entrySet()) {
+            TemperatureCalibration cal = TemperatureCalibration.decode(type, entry.getValue());
+            lookupCalibration.put(entry.getKey(), cal, cal.valid);
+        }
+        if (calibrationStore != null && !calibrations.isEmpty()) {
+            // one more inventory collects the TIDs to key the stored calibration by
+            for (TagRead tag: reader.inventory(Select.BANK_TID, 0, TID_WORDS)) {
+                short[] calibrationWords = calibrations.get(tag.epcString());
+                if (calibrationWords != null && tag.data != null && tag.data.length == 2 * TID_WORDS) {
+                    calibrationStore.put(tag.data, tag.epc, type, calibrationWords);
+                }
+            }
+        }
+        metrics.time(ReaderMetrics.CALIBRATION, start);
+    }
+
+    // calibration of a tag, read once and then kept; null if it could not be read
+    TemperatureCalibration calibration(TagRead tag) {
+        TemperatureCalibration cal = lookupCalibration.get(tag.epc);
+        if (cal == null) {
+            try {
+                short[] calibrationWords = storedCalibration(tag);
+                cal = TemperatureCalibration.decode(type, calibrationWords);
+                lookupCalibration.put(tag.epc, cal, cal.valid);
+            }
+            catch (RuntimeException e) {
+                return null;
+            }
+            catch (Exception e) {
+                System.out.println("Error: " + e.getMessage());
+                return null;
+            }
+        }
+        return cal;
+    }
+
+    // calibration words from the store, or from the tag if it hasn't been seen before
+    short[] storedCalibration(TagRead tag) throws Exception {
+        if (calibrationStore == null) {
+            calibrationReads++;
+            return reader.readMemBlock(tag, Select.BANK_USER, type.calibrationAddress, 4);
+        }
+        short[] calibrationWords = calibrationStore.wordsByEpc(tag.epc);
+        if (calibrationWords == null) {
+            // the TID identifies the tag even if its EPC has been rewritten
+            byte[] tid = TagRead.wordsToBytes(reader.readMemBlock(tag, Select.BANK_TID, 0, TID_WORDS));
+            calibrationWords = calibrationStore.words(tid);
+            if (calibrationWords == null) {
+                calibrationReads++;
+                calibrationWords = reader.readMemBlock(tag, Select.BANK_USER, type.calibrationAddress, 4);
+            }
+            calibrationStore.put(tid, tag.epc, type, calibrationWords);
+        }
+        return calibrationWords;
+    }
+}
@@ -0,0 +1,38 @@
+package magnus_engine;
+
+// vendor-neutral access to a reader measuring Axzon sensor tags
+//
+// Implementations:
+// - thingmagic_samples.ThingMagicSensorReader: wraps Common.establishReader()
+// - nordicid_samples.NordicSensorReader: wraps Common.connectReader() and Common.initializeReader()
+// - SimulatedSensorReader: in-process tag population with air interface timing
+public interface SensorReader {
+
+    // name used in reports, for example the reader's address
+    String name();
+
+    // Select commands sent ahead of every following inventory, with CW held
+    // for settleMicros after them so that the sensors can take their measurements
+    void select(Select[] selects, int settleMicros) throws Exception;
+
+    // most Select commands the reader sends ahead of an inventory, select() leaves out
+    // the ones after them
+    default int maxSelects() {
+        return Integer.MAX_VALUE;
+    }
+
+    // inventory the tags matching the current selects with an embedded read
+    // of 'length' words from 'bank' starting at word 'address'
+    TagRead[] inventory(int bank, int address, int length) throws Exception;
+
+    // read multiple registers from one tag singulated by its EPC
+    // - throws RuntimeException("Tag not found") if the tag does not respond
+    short[] readMemBlock(TagRead tag, int bank, int address, int length) throws Exception;
+
+    // transmit power of one antenna in dBm, from the next inventory on
+    default void setPower(int antenna, double dBm) throws Exception {
+        throw new UnsupportedOperationException(name() + " can't set the power of an antenna");
+    }
+
+    void close();
+}
@@ -0,0 +1,51 @@
+package magnus_engine;
+
+// decoded sensor codes of one tag read
+public class SensorReading {
+
+    // status of each sensor value
+    public static final int OK = 0;
+    public static final int POWER_TOO_LOW = 1;
+    public static final int POWER_TOO_HIGH = 2;
+    public static final int BAD_READ = 3;
+    public static final int NO_CALIBRATION = 4;
+    public static final int INVALID_CALIBRATION = 5;
+    public static final int NOT_READ = 6;
+
+    public SensorType type;
+    public TagRead tag;
+    public String reader;  // name of the reader the tag was read by, null if unknown
+    public int moistureCode = -1;
+    public int ocrssiCode = -1;
+    public int temperatureCode = -1;
+    public int backport1Code = -1;
+    public int backport2Code = -1;
+    public int moistureStatus = NOT_READ;
+    public int temperatureStatus = NOT_READ;
+    public int backportStatus = NOT_READ;
+    public double temperature = Double.NaN;  // degC
+
+    public SensorReading(SensorType type, TagRead tag) {
+        this.type = type;
+        this.tag = tag;
+    }
+
+    public static String statusText(int status) {
+        switch (status) {
+            case POWER_TOO_LOW:
+                return "power too low";
+            case POWER_TOO_HIGH:
+                return "power too high";
+            case BAD_READ:
+                return "bad read";
+            case NO_CALIBRATION:
+                return "failed to read calibration";
+            case INVALID_CALIBRATION:
+                return "invalid calibration";
+            case NOT_READ:
+                return "not read";
+            default:
+                return "ok";
+        }
+    }
+}
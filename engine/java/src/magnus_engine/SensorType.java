@@ -0,0 +1,93 @@
+package magnus_engine;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// memory map and select sequence of each Axzon sensor tag family, as used by the
+// MagnusS2, MagnusS3 and Xerxes samples
+public enum SensorType {
+
+    // reads the moisture code (0xB) through the On-Chip RSSI code (0xD) in one read
+    // (MagnusS2.mode = COMBINED), so the moisture code is qualified like the Magnus S3's
+    MAGNUS_S2(new byte[] { (byte)0xE2, (byte)0x82, (byte)0x40, (byte)0x20 }, 0xA0,
+            new Select(Select.TARGET_SL, 5, Select.BANK_TID, 0x00, 24, new byte[] { (byte)0xE2, (byte)0x82, (byte)0x40 }), 0,
+            0xB, 3, -1, -1, 0, 2, -1, -1),
+
+    MAGNUS_S3(new byte[] { (byte)0xE2, (byte)0x82, (byte)0x40, (byte)0x30 }, 0xD0,
+            new Select(Select.TARGET_SL, 5, Select.BANK_USER, 0xE0, 0, new byte[] { }), 3000,
+            0xC, 3, -1, -1, 0, 1, 2, 8),
+
+    XERXES(new byte[] { (byte)0xE2, (byte)0x82, (byte)0x40, (byte)0x50 }, 0x3D0,
+            new Select(Select.TARGET_SL, 2, Select.BANK_USER, 0x3B0, 8, new byte[] { 0x00 }), 9000,
+            0xA, 5, 0, 1, 2, 3, 4, 0x12);
+
+    public final byte[] tidPrefix;        // first 28 bits of the TID
+    public final int ocrssiPointer;       // USER bank bit address of the On-Chip RSSI filter
+    public final Select enableSelect;     // sensor activation command, sent first
+    public final int settleMicros;        // CW delay after the activation command
+    public final int dataAddress;         // RESERVED bank word address of the sensor codes
+    public final int dataLength;          // number of sensor code words
+    public final int backport1Index;      // word offsets within the sensor codes, -1 if absent
+    public final int backport2Index;
+    public final int moistureIndex;
+    public final int ocrssiIndex;
+    public final int temperatureIndex;
+    public final int calibrationAddress;  // USER bank word address of the 4 calibration words, -1 if absent
+    final ConcurrentHashMap<Integer, Select[]> selects = new ConcurrentHashMap<>();  // by On-Chip RSSI limits
+
+    SensorType(byte[] tidPrefix, int ocrssiPointer, Select enableSelect, int settleMicros,
+               int dataAddress, int dataLength, int backport1Index, int backport2Index,
+               int moistureIndex, int ocrssiIndex, int temperatureIndex, int calibrationAddress) {
+        this.tidPrefix = tidPrefix;
+        this.ocrssiPointer = ocrssiPointer;
+        this.enableSelect = enableSelect;
+        this.settleMicros = settleMicros;
+        this.dataAddress = dataAddress;
+        this.dataLength = dataLength;
+        this.backport1Index = backport1Index;
+        this.backport2Index = backport2Index;
+        this.moistureIndex = moistureIndex;
+        this.ocrssiIndex = ocrssiIndex;
+        this.temperatureIndex = temperatureIndex;
+        this.calibrationAddress = calibrationAddress;
+    }
+
+    public boolean hasTemperature() {
+        return temperatureIndex >= 0;
+    }
+
+    // setup sensor activation commands and filters ensuring On-Chip RSSI Min Filter is applied;
+    // built once for each pair of limits and shared, don't change the array
+    public Select[] selects(byte ocrssiMin, byte ocrssiMax) {
+        Integer limits = (ocrssiMin & 0xFF) << 8 | (ocrssiMax & 0xFF);
+        Select[] sequence = selects.get(limits);
+        if (sequence == null) {
+            sequence = buildSelects(ocrssiMin, ocrssiMax);
+            Select[] previous = selects.putIfAbsent(limits, sequence);
+            if (previous != null) {
+                sequence = previous;
+            }
+        }
+        return sequence;
+    }
+
+    Select[] buildSelects(byte ocrssiMin, byte ocrssiMax) {
+        Select ocrssiMinFilter = new Select(Select.TARGET_SL, 0, Select.BANK_USER, ocrssiPointer, 8, new byte[] { (byte)(0x20 | (ocrssiMin - 1)) });
+        Select ocrssiMaxFilter = new Select(Select.TARGET_SL, 2, Select.BANK_USER, ocrssiPointer, 8, new byte[] { ocrssiMax });
+        Select tidFilter = new Select(Select.TARGET_SL, 2, Select.BANK_TID, 0x00, 28, tidPrefix);
+        return new Select[] { enableSelect, ocrssiMinFilter, ocrssiMaxFilter, tidFilter };
+    }
+
+    // determine the sensor family from the first TID word pair, null if not an Axzon sensor tag
+    public static SensorType fromTid(byte[] tid) {
+        if (tid == null || tid.length < 4) {
+            return null;
+        }
+        for (SensorType type: values()) {
+            if (tid[0] == type.tidPrefix[0] && tid[1] == type.tidPrefix[1] && tid[2] == type.tidPrefix[2]
+                    && (tid[3] & 0xF0) == (type.tidPrefix[3] & 0xF0)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
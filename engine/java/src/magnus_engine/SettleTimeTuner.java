@@ -0,0 +1,133 @@
+package magnus_engine;
+
+// finds the shortest CW settle time after the sensor activation at which a reader still
+// reads valid, consistent temperature codes from the tags in front of it
+//
+// The population is first read with the sensor type's default settle time as the
+// reference. The settle time is then lowered step by step, reading the same tags again,
+// until the share of in-range temperature codes drops below inRangeShare of the
+// reference, or the tags' codes deviate from their reference codes by more than
+// maxDeviation on average. The shortest settle time which passed, plus margin, is the
+// result. Sensors which haven't settled report codes of 0 or out of range, or codes
+// which are off by more than the measurement noise.
+public class SettleTimeTuner {
+
+    /**
+     * Tuning Settings
+     *
+     * Shortest Settle Time: lowest settle time tried, in microseconds
+     *
+     * Step: decrease of the settle time per step, in microseconds
+     *
+     * Rounds: inventories per settle time
+     *
+     * In-Range Share: share of the reference's in-range temperature codes a settle
+     * time has to keep
+     *
+     * Maximum Deviation: mean difference of the tags' temperature codes from their
+     * reference codes, in codes
+     *
+     * Margin: added to the shortest settle time which passed, as a share of it
+     */
+    public int minMicros = 300;
+    public int stepMicros = 250;
+    public int rounds = 3;
+    public double inRangeShare = 0.98;
+    public double maxDeviation = 3.0;
+    public double margin = 0.1;
+
+    /**
+     * On-Chip RSSI Filters: sensor tags with on-chip RSSI codes outside
+     * of these limits won't respond
+     */
+    public byte ocrssiMin = 3;
+    public byte ocrssiMax = 31;
+
+    final SensorReader reader;
+    final SensorType type;
+
+    // result of one settle time
+    static class Sweep {
+        int inRange;
+        int powered;  // readings with enough, but not too much power for temperature
+        double deviation;
+    }
+
+    public SettleTimeTuner(SensorReader reader, SensorType type) {
+        this.reader = reader;
+        this.type = type;
+    }
+
+    // the shortest reliable settle time in microseconds, 0 if no tag reported a valid
+    // temperature code at the default settle time
+    public int tune() throws Exception {
+        if (!type.hasTemperature()) {
+            return type.settleMicros;
+        }
+        EpcTable<double[]> reference = new EpcTable<>();
+        Sweep base = sweep(type.settleMicros, reference, null);
+        report(type.settleMicros, base);
+        if (base.inRange == 0) {
+            return 0;
+        }
+        int best = type.settleMicros;
+        for (int micros = type.settleMicros - stepMicros; micros >= minMicros; micros -= stepMicros) {
+            Sweep sweep = sweep(micros, new EpcTable<double[]>(), reference);
+            report(micros, sweep);
+            if (share(sweep) < inRangeShare * share(base) || sweep.deviation > maxDeviation) {
+                break;
+            }
+            best = micros;
+        }
+        return Math.min(type.settleMicros, (int)Math.round(best * (1 + margin)));
+    }
+
+    // read the population 'rounds' times with one settle time, collecting each tag's mean
+    // temperature code into 'codes' and comparing it with 'reference' if given
+    Sweep sweep(int micros, EpcTable<double[]> codes, EpcTable<double[]> reference) throws Exception {
+        Sweep sweep = new Sweep();
+        reader.select(type.selects(ocrssiMin, ocrssiMax), micros);
+        for (int round = 0; round < rounds; round++) {
+            for (TagRead tag: reader.inventory(Select.BANK_RESERVED, type.dataAddress, type.dataLength)) {
+                SensorReading reading = SensorDecoder.decode(type, tag);
+                if (reading == null || reading.temperatureStatus != SensorReading.OK && reading.temperatureStatus != SensorReading.BAD_READ) {
+                    continue;
+                }
+                sweep.powered++;
+                if (reading.temperatureStatus != SensorReading.OK) {
+                    continue;
+                }
+                sweep.inRange++;
+                double[] code = codes.get(tag.epc);
+                if (code == null) {
+                    code = new double[2];
+                    codes.put(tag.epc, code);
+                }
+                code[0] += reading.temperatureCode;
+                code[1]++;
+            }
+        }
+        if (reference != null) {
+            double deviation = 0;
+            int compared = 0;
+            for (int entry = 0; entry < codes.size(); entry++) {
+                double[] code = codes.calibration(entry);
+                double[] referenceCode = reference.get(codes.epc(entry));
+                if (referenceCode != null) {
+                    deviation += Math.abs(code[0] / code[1] - referenceCode[0] / referenceCode[1]);
+                    compared++;
+                }
+            }
+            sweep.deviation = compared == 0 ? Double.POSITIVE_INFINITY : deviation / compared;
+        }
+        return sweep;
+    }
+
+    static double share(Sweep sweep) {
+        return sweep.powered == 0 ? 0 : (double)sweep.inRange / sweep.powered;
+    }
+
+    static void report(int micros, Sweep sweep) {
+        System.out.println("Settle time " + micros + " us: " + String.format("%.1f%% in range, deviation %.1f codes", 100 * share(sweep), sweep.deviation));
+    }
+}
@@ -0,0 +1,54 @@
+package magnus_engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+// CW settle times found by SettleTimeTuner, kept by reader and sensor type in a
+// properties file
+public class SettleTimes {
+
+    final Path path;
+    final Properties times = new Properties();
+
+    SettleTimes(Path path) {
+        this.path = path;
+    }
+
+    // load the settle times, an empty set if the file doesn't exist yet
+    public static SettleTimes load(String fileName) throws IOException {
+        SettleTimes settleTimes = new SettleTimes(Paths.get(fileName));
+        if (Files.exists(settleTimes.path)) {
+            try (InputStream in = Files.newInputStream(settleTimes.path)) {
+                settleTimes.times.load(in);
+            }
+        }
+        return settleTimes;
+    }
+
+    public synchronized boolean has(String reader, SensorType type) {
+        return times.containsKey(key(reader, type));
+    }
+
+    // settle time of a reader in microseconds, the sensor type's default if not tuned
+    public synchronized int get(String reader, SensorType type) {
+        String micros = times.getProperty(key(reader, type));
+        return micros == null ? type.settleMicros : Integer.parseInt(micros);
+    }
+
+    // keep a settle time and save the file
+    public synchronized void put(String reader, SensorType type, int micros) throws IOException {
+        times.setProperty(key(reader, type), Integer.toString(micros));
+        try (OutputStream out = Files.newOutputStream(path)) {
+            times.store(out, "CW settle time in microseconds by reader and sensor type");
+        }
+    }
+
+    static String key(String reader, SensorType type) {
+        return reader + "." + type.name();
+    }
+}
@@ -0,0 +1,223 @@
+package magnus_engine;
+
+import java.util.Arrays;
+
+// runs the sensing pipeline against a simulated reader and reports its throughput
+public class SimulatedDemo {
+
+    /**
+     * Simulation Settings
+     *
+     * Sensor Type: which sensor tag family makes up the population
+     *
+     * Mixed Types: make up the population of these families in equal shares instead
+     * and read them all in one inventory per round, e.g. { SensorType.MAGNUS_S2,
+     * SensorType.MAGNUS_S3, SensorType.XERXES } (set to 'null' for Sensor Type only)
+     *
+     * Tag Count: size of the simulated tag population
+     *
+     * Corruption Rate: share of the tags whose calibration words fail their CRC or parity
+     *
+     * Read Attempts: number of rounds to run
+     *
+     * Convergence: instead of Read Attempts, run rounds until every tag's sensor
+     * codes are consistent, 3 to 30 of them (see ConvergenceScheduler)
+     *
+     * Time Scale: 1.0 waits for the simulated air time, 0.0 runs as fast as possible
+     *
+     * Verbose: print every reading like the samples do
+     *
+     * Power: initial transmit power in dBm
+     *
+     * Power Control: adjust the power between rounds for the most valid readings
+     *
+     * Stale Targeting: inventory only a range of tags with stale readings in most
+     * rounds (see StaleTagTargeting)
+     *
+     * Statistics: keep each tag's streaming summaries across the rounds and print
+     * those of the first tags at the end (see TagStatistics)
+     *
+     * Settle Time Tuning: find the shortest CW settle time before the rounds
+     *
+     * Metrics Interval: print each reader's phase latencies and read counts this
+     * often, in seconds, and once more at the end (0 for none, JMX has them anyway)
+     */
+    static SensorType sensorType = SensorType.MAGNUS_S3;
+    static SensorType[] mixedTypes = null;
+    static int tagCount = 2000;
+    static double corruptionRate = 0.01;
+    static int readAttempts = 10;
+    static boolean convergence = false;
+    static double timeScale = 0.0;
+    static boolean verbose = false;
+    static double power = 20;
+    static boolean powerControl = true;
+    static boolean staleTargeting = false;
+    static boolean statistics = true;
+    static boolean settleTimeTuning = true;
+    static int metricsInterval = 10;
+
+    public static void main(String[] args) {
+        PopulationGenerator generator = new PopulationGenerator(1);
+        generator.types = mixedTypes != null ? mixedTypes : new SensorType[] { sensorType };
+        generator.mix = new double[generator.types.length];
+        Arrays.fill(generator.mix, 1);
+        generator.corruptionRate = corruptionRate;
+        SimulatedTag[] population = generator.population(tagCount);
+        SimulatedSensorReader reader = new SimulatedSensorReader("simulated", population, 2);
+        reader.timeScale = timeScale;
+        reader.power = power;
+        final long[] valid = new long[1];
+        final ConsoleSink console = verbose ? new ConsoleSink() : null;
+        ReadingSink sink = new ReadingSink() {
+            public void accept(SensorReading reading) {
+                if (reading.moistureStatus == SensorReading.OK) {
+                    valid[0]++;
+                }
+                if (console != null) {
+                    console.accept(reading);
+                }
+            }
+
+            public void accept(ReadingBuffer readings, int index) {
+                if (readings.moistureStatus[index] == SensorReading.OK) {
+                    valid[0]++;
+                }
+                if (console != null) {
+                    console.accept(readings, index);
+                }
+            }
+        };
+        if (mixedTypes != null) {
+            readMixed(reader, sink, console, valid);
+            return;
+        }
+        ConvergenceScheduler schedule = convergence ? new ConvergenceScheduler(sensorType) : null;
+        if (schedule != null) {
+            sink = ReadingSink.tee(sink, schedule);
+        }
+        TagStatistics summaries = statistics ? new TagStatistics(sensorType, tagCount) : null;
+        if (summaries != null) {
+            sink = ReadingSink.tee(sink, summaries);
+        }
+        SensorEngine engine = new SensorEngine(reader, sensorType, sink);
+        if (powerControl) {
+            engine.powerControl = new PowerController(sensorType, power, new int[] { 1 });
+        }
+        if (staleTargeting) {
+            engine.targeting = new StaleTagTargeting(sensorType);
+        }
+        MetricsReporter metrics = MetricsReporter.start(metricsInterval);
+        try {
+            if (settleTimeTuning) {
+                int settleMicros = new SettleTimeTuner(reader, sensorType).tune();
+                if (settleMicros != 0) {
+                    engine.settleMicros = settleMicros;
+                }
+                System.out.println("Settle time: " + engine.settleMicros + " us (default " + sensorType.settleMicros + " us)\n");
+                reader.airMicros = 0;
+                engine.metrics.reset();
+            }
+            long start = System.nanoTime();
+            for (int i = 1; schedule == null ? i <= readAttempts : schedule.next(); i++) {
+                int found = engine.readRound();
+                String line = "Read Attempt #" + i + ": " + found + " tag(s)";
+                if (console != null) {
+                    console.println(line);
+                }
+                else {
+                    System.out.println(line);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double airSeconds = reader.airMicros / 1e6;
+            if (console != null) {
+                console.close();
+            }
+            System.out.println();
+            if (schedule != null) {
+                System.out.println("Reading cycle: " + schedule.attempts + " read attempt(s), " + schedule.roundPending + " tag(s) not converged, "
+                    + schedule.roundUnreadable + " without valid readings");
+            }
+            System.out.println("Tag reads: " + engine.tagReads + " (" + valid[0] + " valid), calibration reads: " + engine.calibrationReads);
+            System.out.println("Wall clock: " + String.format("%.3f s, %.0f tags/s", seconds, engine.tagReads / seconds));
+            System.out.println("Air time: " + String.format("%.3f s, %.0f tags/s", airSeconds, engine.tagReads / airSeconds));
+            if (engine.targeting != null) {
+                System.out.println("Targeted rounds: " + engine.targeting.targetedRounds + " of " + engine.targeting.rounds
+                    + ", last one on an EPC range of " + engine.targeting.rangeBits + " bits");
+            }
+            if (engine.powerControl != null) {
+                System.out.println("Power: " + engine.powerControl.power(1) + " dBm after " + engine.powerControl.changes + " change(s)");
+            }
+            if (summaries != null) {
+                printStatistics(summaries);
+            }
+            reader.close();
+            if (metrics != null) {
+                metrics.close();
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    // summaries of the first tags read
+    static void printStatistics(TagStatistics summaries) {
+        System.out.println("Statistics: " + summaries.size() + " tag(s)");
+        for (int entry = 0; entry < Math.min(summaries.size(), 3); entry++) {
+            System.out.println("  " + TagRead.toHex(summaries.epc(entry)));
+            if (sensorType.moistureIndex >= 0) {
+                System.out.println("    Moisture Code: " + summaries.toString(entry, TagStatistics.MOISTURE));
+            }
+            System.out.println("    On-Chip RSSI Code: " + summaries.toString(entry, TagStatistics.OCRSSI));
+            if (sensorType.hasTemperature()) {
+                System.out.println("    Temperature (degC): " + summaries.toString(entry, TagStatistics.TEMPERATURE));
+            }
+        }
+    }
+
+    // the rounds with a MixedSensorEngine, without power control or settle time tuning
+    static void readMixed(SimulatedSensorReader reader, ReadingSink sink, ConsoleSink console, long[] valid) {
+        MixedSensorEngine engine = new MixedSensorEngine(reader, mixedTypes, sink);
+        MetricsReporter metrics = MetricsReporter.start(metricsInterval);
+        try {
+            long start = System.nanoTime();
+            for (int i = 1; i <= readAttempts; i++) {
+                int found = engine.readRound();
+                String line = "Read Attempt #" + i + ": " + found + " tag(s)";
+                if (console != null) {
+                    console.println(line);
+                }
+                else {
+                    System.out.println(line);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double airSeconds = reader.airMicros / 1e6;
+            if (console != null) {
+                console.close();
+            }
+            System.out.println();
+            System.out.println("Tag reads: " + engine.tagReads + " (" + valid[0] + " valid), TID reads: " + engine.tidReads
+                + ", other tags: " + engine.unknownTags);
+            for (SensorType type: mixedTypes) {
+                SensorEngine family = engine.engine(type);
+                System.out.println("  " + type + ": " + family.tagReads + " tag reads, " + family.calibrationReads + " calibration reads");
+            }
+            System.out.println("Wall clock: " + String.format("%.3f s, %.0f tags/s", seconds, engine.tagReads / seconds));
+            System.out.println("Air time: " + String.format("%.3f s, %.0f tags/s", airSeconds, engine.tagReads / airSeconds));
+            reader.close();
+            if (metrics != null) {
+                metrics.close();
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package magnus_engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+// in-process reader serving a simulated tag population, charging every command
+// with its air interface time so that rounds take as long as on a real reader
+//
+// The select, inventory and calibration latencies in its ReaderMetrics are the
+// simulated air time, whatever the time scale.
+public class SimulatedSensorReader implements SensorReader {
+
+    /**
+     * Simulation Settings
+     *
+     * Power: reader transmit power in dBm
+     *
+     * Time Scale: how much of the air interface time is actually waited
+     * - 1.0: real time
+     * - 0.0: as fast as possible (air time is still accounted)
+     *
+     * Read Probability: chance that a powered and selected tag is singulated in a round
+     *
+     * Command Latency: host to reader round trip in microseconds, charged once per
+     * inventory or tag operation on top of the air interface time
+     */
+    public double power = 20;
+    public double timeScale = 1.0;
+    public double readProbability = 0.98;
+    public int commandMicros = 10000;
+    public AirTiming timing = new AirTiming();
+
+    final double[] antennaPower = new double[PowerController.MAX_ANTENNAS + 1];
+    final String name;
+    final SimulatedTag[] population;
+    final Random random;
+    final ReaderMetrics metrics;
+    Select[] selects = { };
+    int settleMicros;
+
+    // simulated air interface time (and command latency) spent so far
+    public long airMicros;
+
+    public SimulatedSensorReader(String name, SimulatedTag[] population, long seed) {
+        this.name = name;
+        this.population = population;
+        this.random = new Random(seed);
+        this.metrics = ReaderMetrics.of(name);
+        Arrays.fill(this.antennaPower, Double.NaN);
+    }
+
+    // a population of 'count' tags of one sensor family
+    public static SimulatedTag[] createPopulation(SensorType type, int count, long seed) {
+        Random random = new Random(seed);
+        SimulatedTag[] population = new SimulatedTag[count];
+        for (int i = 0; i < count; i++) {
+            population[i] = SimulatedTag.create(type, random, i);
+        }
+        return population;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void select(Select[] selects, int settleMicros) {
+        this.selects = selects;
+        this.settleMicros = settleMicros;
+    }
+
+    public TagRead[] inventory(int bank, int address, int length) {
+        long micros = commandMicros + settleMicros;
+        for (Select select: selects) {
+            micros += timing.selectMicros(select);
+        }
+        metrics.record(ReaderMetrics.SELECT, micros * 1000);
+        long now = System.currentTimeMillis();
+        ArrayList<TagRead> results = new ArrayList<>();
+        for (SimulatedTag tag: population) {
+            tag.armed = false;
+            powerUp(tag);
+            for (Select select: selects) {
+                tag.applySelect(select);
+            }
+            measure(tag);
+            if (!tag.selected || tag.ocrssiCode <= 0 || random.nextDouble() >= readProbability) {
+                continue;
+            }
+            short[] words = tag.readWords(bank, address, length);
+            byte[] data = words == null ? new byte[0] : TagRead.wordsToBytes(words);
+            results.add(new TagRead(tag.epc, tag.antenna, frequency(), -40 - (int)tag.attenuation, data, now, tag));
+        }
+        int epcBytes = population.length == 0 ? 12 : population[0].epc.length;
+        long roundMicros = timing.roundMicros(results.size(), epcBytes, length);
+        metrics.record(ReaderMetrics.INVENTORY, roundMicros * 1000);
+        pass(micros + roundMicros);
+        return results.toArray(new TagRead[0]);
+    }
+
+    public short[] readMemBlock(TagRead tagRead, int bank, int address, int length) {
+        SimulatedTag tag = (SimulatedTag)tagRead.source;
+        long micros = commandMicros + timing.selectMicros(new Select(Select.TARGET_SL, 0, Select.BANK_EPC, 0x20, tag.epc.length * 8, tag.epc));
+        micros += timing.roundMicros(1, tag.epc.length, length);
+        metrics.record(ReaderMetrics.CALIBRATION, micros * 1000);
+        pass(micros);
+        powerUp(tag);
+        short[] words = tag.readWords(bank, address, length);
+        if (tag.ocrssiCode <= 0 || words == null || random.nextDouble() >= readProbability) {
+            throw new RuntimeException("Tag not found");
+        }
+        return words;
+    }
+
+    public void setPower(int antenna, double dBm) {
+        antennaPower[antenna] = dBm;
+    }
+
+    public void close() {
+    }
+
+    // the On-Chip RSSI code follows the power received by the tag, about one code per dB
+    void powerUp(SimulatedTag tag) {
+        double transmitted = Double.isNaN(antennaPower[tag.antenna]) ? power : antennaPower[tag.antenna];
+        double received = transmitted - tag.attenuation + random.nextGaussian() * 0.5;
+        tag.ocrssiCode = Math.max(0, Math.min(31, (int)Math.round(received + 12)));
+    }
+
+    // update the tag's sensor codes after the round's Select commands
+    void measure(SimulatedTag tag) {
+        SensorType type = tag.type;
+        short[] codes = tag.reserved;
+        codes[type.dataAddress + type.ocrssiIndex] = (short)tag.ocrssiCode;
+        if (type.moistureIndex >= 0) {
+            codes[type.dataAddress + type.moistureIndex] = (short)Math.max(0, tag.moisture + (int)Math.round(random.nextGaussian()));
+        }
+        if (type.hasTemperature()) {
+            codes[type.dataAddress + type.temperatureIndex] = (short)temperatureCode(tag);
+        }
+        if (type.backport1Index >= 0) {
+            codes[type.dataAddress + type.backport1Index] = (short)tag.backport1;
+            codes[type.dataAddress + type.backport2Index] = (short)tag.backport2;
+        }
+    }
+
+    // the temperature sensor needs CW for a while after being activated, with
+    // too short a delay its codes get noisy and eventually out of range
+    int temperatureCode(SimulatedTag tag) {
+        int required = tag.type.settleMicros * 2 / 5;
+        if (!tag.armed || settleMicros < required) {
+            return 0;
+        }
+        double noise = 2 + 20.0 * Math.max(0, required * 1.5 - settleMicros) / required;
+        return tag.temperatureCode() + (int)Math.round(random.nextGaussian() * noise);
+    }
+
+    // FCC hop table, 50 channels
+    int frequency() {
+        return 902750 + 500 * random.nextInt(50);
+    }
+
+    // wait for (scaled) air interface time
+    void pass(long micros) {
+        airMicros += micros;
+        if (timeScale > 0) {
+            LockSupport.parkNanos((long)(micros * 1000 * timeScale));
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package magnus_engine;
+
+import java.util.Random;
+
+// one simulated Axzon sensor tag: its memory banks, where it sits in the field
+// and the values its sensors measure
+public class SimulatedTag {
+    public final SensorType type;
+    public final byte[] epc;
+    public final byte[] tid;
+    public final short[] reserved = new short[16];
+    public final short[] user = new short[64];
+
+    public int antenna = 1;
+    public double attenuation;   // path loss from the antenna in dB
+    public double temperature;   // degC
+    public int moisture;         // moisture code
+    public int backport1;
+    public int backport2;
+    TemperatureCalibration calibration;  // as programmed at the factory
+
+    // state during a round
+    boolean selected;            // SL flag
+    boolean armed;               // sensor activation command received
+    int ocrssiCode;
+
+    public SimulatedTag(SensorType type, byte[] epc, byte[] tid) {
+        this.type = type;
+        this.epc = epc;
+        this.tid = tid;
+    }
+
+    // a tag with a random EPC, valid calibration and values typical for a warehouse
+    public static SimulatedTag create(SensorType type, Random random, int serial) {
+        byte[] epc = new byte[12];
+        random.nextBytes(epc);
+        epc[8] = (byte)(serial >> 24);
+        epc[9] = (byte)(serial >> 16);
+        epc[10] = (byte)(serial >> 8);
+        epc[11] = (byte)serial;
+        byte[] tid = new byte[12];
+        System.arraycopy(type.tidPrefix, 0, tid, 0, 4);
+        tid[3] = (byte)((type.tidPrefix[3] & 0xF0) | random.nextInt(16));
+        for (int i = 4; i < tid.length; i++) {
+            tid[i] = (byte)random.nextInt(256);
+        }
+        SimulatedTag tag = new SimulatedTag(type, epc, tid);
+        tag.attenuation = 12 + 18 * random.nextDouble();
+        tag.temperature = -10 + 50 * random.nextDouble();
+        tag.moisture = random.nextInt(32);
+        tag.backport1 = random.nextInt(4096);
+        tag.backport2 = random.nextInt(4096);
+        if (type.calibrationAddress >= 0) {
+            short[] calWords = calibrationWords(type, 20 + random.nextInt(50) / 10.0, 2200 + random.nextInt(200) - 100,
+                                                60 + random.nextInt(50) / 10.0, 3000 + random.nextInt(200) - 100);
+            System.arraycopy(calWords, 0, tag.user, type.calibrationAddress, 4);
+            tag.calibration = TemperatureCalibration.decode(type, calWords);
+        }
+        return tag;
+    }
+
+    // encode two calibration points (temperature in degC and its temperature code)
+    // as stored in the tag's USER bank
+    public static short[] calibrationWords(SensorType type, double temp1, int code1, double temp2, int code2) {
+        if (type == SensorType.MAGNUS_S3) {
+            int t1 = (int)Math.round((temp1 + 80) * 10) & 0x07FF;
+            int t2 = (int)Math.round((temp2 + 80) * 10) & 0x07FF;
+            int c1 = code1 & 0x0FFF;
+            int c2 = code2 & 0x0FFF;
+            short reg9 = (short)((c1 << 4) | (t1 >> 7));
+            short regA = (short)(((t1 & 0x7F) << 9) | (c2 >> 3));
+            short regB = (short)(((c2 & 0x07) << 13) | (t2 << 2));
+            short[] words = new short[] { 0, reg9, regA, regB };
+            words[0] = (short)TemperatureCalibration.crc16(words, 1, 3);
+            return words;
+        }
+        if (type == SensorType.XERXES) {
+            // Xerxes stores codes with 4 extra fraction bits
+            int t1 = (int)Math.round(temp1 * 10 + 600) & 0x07FF;
+            int t2 = (int)Math.round(temp2 * 10 + 600) & 0x07FF;
+            int c1 = (code1 * 16) & 0xFFFF;
+            int c2 = (code2 * 16) & 0xFFFF;
+            int par1 = TemperatureCalibration.xerxesParity(0, t1, c1);
+            int par2 = TemperatureCalibration.xerxesParity(0, t2, c2);
+            short reg15 = (short)((par1 << 11) | t1);
+            short reg13 = (short)((par2 << 11) | t2);
+            return new short[] { (short)c2, reg13, (short)c1, reg15 };
+        }
+        throw new IllegalArgumentException(type + " has no temperature calibration");
+    }
+
+    // temperature code this tag would report for its current temperature
+    int temperatureCode() {
+        if (calibration == null || !calibration.valid) {
+            return (int)((temperature + 40) * 20) + 1000;
+        }
+        return (int)Math.round((temperature - calibration.offset) / calibration.slope);
+    }
+
+    // contents of 'length' words starting at word 'address', null if outside of the bank
+    short[] readWords(int bank, int address, int length) {
+        short[] memory;
+        switch (bank) {
+            case Select.BANK_RESERVED:
+                memory = reserved;
+                break;
+            case Select.BANK_EPC:
+                memory = epcBank();
+                break;
+            case Select.BANK_TID:
+                memory = TagRead.bytesToWords(tid);
+                break;
+            default:
+                memory = user;
+                break;
+        }
+        if (address < 0 || address + length > memory.length) {
+            return null;
+        }
+        short[] words = new short[length];
+        System.arraycopy(memory, address, words, 0, length);
+        return words;
+    }
+
+    // CRC, PC and EPC words
+    short[] epcBank() {
+        short[] words = new short[2 + epc.length / 2];
+        words[1] = (short)((epc.length / 2) << 11);
+        short[] epcWords = TagRead.bytesToWords(epc);
+        System.arraycopy(epcWords, 0, words, 2, epcWords.length);
+        return words;
+    }
+
+    // evaluate the Select command's mask against this tag's memory
+    boolean matches(Select select) {
+        if (select.bank == Select.BANK_USER && select.pointer == type.ocrssiPointer && select.length == 8) {
+            // On-Chip RSSI filter: bit 5 of the mask selects 'greater than' instead of 'less than or equal'
+            int threshold = select.mask[0] & 0x1F;
+            if ((select.mask[0] & 0x20) != 0) {
+                return ocrssiCode > threshold;
+            }
+            return ocrssiCode <= threshold;
+        }
+        if (select.length == 0) {
+            return true;
+        }
+        int firstWord = select.pointer / 16;
+        int lastWord = (select.pointer + select.length - 1) / 16;
+        short[] words = readWords(select.bank, firstWord, lastWord - firstWord + 1);
+        if (words == null) {
+            return false;
+        }
+        for (int i = 0; i < select.length; i++) {
+            int bitAddress = select.pointer + i - firstWord * 16;
+            int memoryBit = (words[bitAddress / 16] >> (15 - bitAddress % 16)) & 1;
+            int maskBit = (select.mask[i / 8] >> (7 - i % 8)) & 1;
+            if (memoryBit != maskBit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // apply a Select command's action to the SL flag
+    void applySelect(Select select) {
+        boolean match = matches(select);
+        if (match && select.bank == type.enableSelect.bank && select.pointer == type.enableSelect.pointer) {
+            armed = true;
+        }
+        if (select.target != Select.TARGET_SL) {
+            return;
+        }
+        switch (select.action) {
+            case 0:
+                selected = match;
+                break;
+            case 1:
+                selected = match || selected;
+                break;
+            case 2:
+                selected = match && selected;
+                break;
+            case 3:
+                selected = match ? !selected : selected;
+                break;
+            case 4:
+                selected = !match;
+                break;
+            case 5:
+                selected = !match && selected;
+                break;
+            case 6:
+                selected = !match || selected;
+                break;
+            default:
+                selected = match ? selected : !selected;
+                break;
+        }
+    }
+
+}
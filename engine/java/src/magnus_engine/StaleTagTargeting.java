@@ -0,0 +1,135 @@
+package magnus_engine;
+
+import java.util.Arrays;
+
+// shrinks the rounds of a SensorEngine to the tags whose readings are stale, with a
+// Select on a range of EPCs
+//
+// The tags are split into 2^k ranges by the last k bits of their EPC, the serial
+// number's low bits, with k chosen for about targetTags tags per range. Each round
+// adds a Select keeping only the range with the most stale tags, those without a
+// valid reading for maxAgeMillis, so fewer tags contend for the slots and the stale
+// ones are refreshed sooner. Every discoveryInterval-th round, and while there are too
+// few tags to split, the round covers all tags to find new ones. Tags are grouped by
+// their EPC length as well, as the range's mask ends at the last bit of the EPC.
+//
+// The range Select follows the sensor Selects. On a reader without room for all of
+// them it takes the place of the TID filter, which only narrows down the population;
+// the enable Select and the On-Chip RSSI filters are always kept, so a reader taking
+// only three Selects (ThingMagic) isn't targeted. Session flags with S2/S3 persistence
+// would keep recently read tags quiet without any Selects, but how long a tag keeps
+// its flag depends on the tag and its temperature, so they can't tell a reading's
+// age.
+public class StaleTagTargeting {
+
+    // the enable Select and the On-Chip RSSI filters, sent ahead of the range in any case
+    static final int KEPT_SELECTS = 3;
+
+    /**
+     * Targeting Settings
+     *
+     * Max Age: a tag's reading is stale once it is older than this, in milliseconds
+     *
+     * Target Tags: about how many tags an EPC range should hold
+     *
+     * Discovery Interval: every this many rounds all tags are inventoried, to find
+     * tags not seen before
+     */
+    public long maxAgeMillis = 5000;
+    public int targetTags = 64;
+    public int discoveryInterval = 10;
+
+    final SensorType type;
+    final EpcTable<Object> tags = new EpcTable<>();
+    int[] tails = new int[0];     // last 32 bits of the EPC by entry
+    byte[] lengths = new byte[0];  // EPC length in bytes by entry
+
+    // totals since the targeting was created
+    public long rounds;
+    public long targetedRounds;
+
+    // the last round's EPC range, 'rangeBits' low bits equal to 'range'; no bits for all
+    public int rangeBits;
+    public int range;
+
+    public StaleTagTargeting(SensorType type) {
+        this.type = type;
+    }
+
+    // refresh the tags with a valid reading in a round
+    public void add(ReadingBuffer readings) {
+        for (int i = 0; i < readings.size; i++) {
+            int status = type.hasTemperature() ? readings.temperatureStatus[i] : readings.moistureStatus[i];
+            byte[] epc = readings.tags[i].epc;
+            if (!ConvergenceScheduler.valid(status) || epc.length > EpcTable.MAX_EPC_LENGTH || epc.length < 4) {
+                continue;
+            }
+            int entry = tags.add(epc);
+            if (entry >= tails.length) {
+                tails = Arrays.copyOf(tails, Math.max(1024, tails.length * 2));
+                lengths = Arrays.copyOf(lengths, tails.length);
+            }
+            tails[entry] = (epc[epc.length - 4] & 0xFF) << 24 | (epc[epc.length - 3] & 0xFF) << 16
+                | (epc[epc.length - 2] & 0xFF) << 8 | (epc[epc.length - 1] & 0xFF);
+            lengths[entry] = (byte)epc.length;
+            tags.lastSeen[entry] = readings.tags[i].timestamp;
+        }
+    }
+
+    // the sensor Selects of SensorType.selects() for the next round, with the EPC range
+    // of the stalest tags added for a reader taking 'maxSelects' Selects
+    public Select[] selects(Select[] sensorSelects, int maxSelects) {
+        rounds++;
+        rangeBits = 0;
+        int kept = Math.min(sensorSelects.length, maxSelects - 1);  // sensor Selects sent with the range
+        int bits = 31 - Integer.numberOfLeadingZeros(Math.max(1, tags.size() / Math.max(1, targetTags)));
+        if (kept < KEPT_SELECTS || bits == 0 || rounds % discoveryInterval == 1 || discoveryInterval == 1) {
+            return sensorSelects;
+        }
+        bits = Math.min(bits, 16);
+        // buckets by EPC length, then by the range within it
+        int[] slots = new int[EpcTable.MAX_EPC_LENGTH + 1];
+        int[] slotLengths = new int[slots.length];
+        Arrays.fill(slots, -1);
+        int slotCount = 0;
+        for (int entry = 0; entry < tags.size(); entry++) {
+            if (slots[lengths[entry]] < 0) {
+                slotLengths[slotCount] = lengths[entry];
+                slots[lengths[entry]] = slotCount++;
+            }
+        }
+        int[] stale = new int[slotCount << bits];
+        long[] oldest = new long[slotCount << bits];
+        Arrays.fill(oldest, Long.MAX_VALUE);
+        long staleBefore = System.currentTimeMillis() - maxAgeMillis;
+        for (int entry = 0; entry < tags.size(); entry++) {
+            int bucket = slots[lengths[entry]] << bits | (tails[entry] & ((1 << bits) - 1));
+            long lastSeen = tags.lastSeen[entry];
+            if (lastSeen < staleBefore) {
+                stale[bucket]++;
+            }
+            oldest[bucket] = Math.min(oldest[bucket], lastSeen);
+        }
+        int best = 0;
+        for (int bucket = 1; bucket < stale.length; bucket++) {
+            if (stale[bucket] > stale[best] || (stale[bucket] == stale[best] && oldest[bucket] < oldest[best])) {
+                best = bucket;
+            }
+        }
+        int epcLength = slotLengths[best >>> bits];
+        best &= (1 << bits) - 1;
+        rangeBits = bits;
+        range = best;
+        targetedRounds++;
+        // the last 'bits' bits of the EPC, which starts at bit 0x20 of the EPC bank
+        byte[] mask = new byte[(bits + 7) / 8];
+        int value = best << (mask.length * 8 - bits);
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = (byte)(value >>> (8 * (mask.length - 1 - i)));
+        }
+        Select epcRange = new Select(Select.TARGET_SL, 2, Select.BANK_EPC, 0x20 + epcLength * 8 - bits, bits, mask);
+        Select[] selects = Arrays.copyOf(sensorSelects, kept + 1);
+        selects[kept] = epcRange;
+        return selects;
+    }
+}
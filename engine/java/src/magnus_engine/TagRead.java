@@ -0,0 +1,64 @@
+package magnus_engine;
+
+// one tag response from an inventory with an embedded read
+public class TagRead {
+    public byte[] epc;
+    public int antenna;
+    public int frequency;  // kHz
+    public int rssi;       // dBm
+    public byte[] data;    // embedded read result, big-endian words
+    public long timestamp; // milliseconds
+
+    // vendor object backing this read (TagReadData, NurTag, ...), used to singulate the tag again
+    public Object source;
+
+    public TagRead(byte[] epc, int antenna, int frequency, int rssi, byte[] data, long timestamp, Object source) {
+        this.epc = epc;
+        this.antenna = antenna;
+        this.frequency = frequency;
+        this.rssi = rssi;
+        this.data = data;
+        this.timestamp = timestamp;
+        this.source = source;
+    }
+
+    public String epcString() {
+        return toHex(epc);
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    public static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    public static byte[] wordsToBytes(short[] words) {
+        byte[] bytes = new byte[words.length * 2];
+        for (int i = 0; i < words.length; i++) {
+            bytes[2 * i] = (byte)(words[i] >> 8);
+            bytes[2 * i + 1] = (byte)words[i];
+        }
+        return bytes;
+    }
+
+    public static short[] bytesToWords(byte[] bytes) {
+        short[] words = new short[bytes.length / 2];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = (short)(((bytes[2 * i] & 0xFF) << 8) | (bytes[2 * i + 1] & 0xFF));
+        }
+        return words;
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+}
@@ -0,0 +1,292 @@
+package magnus_engine;
+
+import java.util.Arrays;
+
+// streaming summaries of every tag's readings across rounds, in a fixed amount of
+// memory per tag: count, mean, exponentially weighted moving average, min/max and the
+// median and 90th percentile
+//
+// The moisture code, the On-Chip RSSI code and the calibrated temperature each get a
+// summary. Only valid values count: moisture codes read with the right power, On-Chip
+// RSSI codes whenever read, and temperatures once calibrated. The quantiles are
+// estimated with the extended P-Square algorithm (Raatikainen), seven markers at the
+// 0, 25, 50, 70, 90, 95 and 100% quantiles moved towards their place as values come
+// in; the first and last are the min and max, exact. Until a tag has seven values the
+// quantiles are exact as well.
+//
+// A summary is one block of 16 ints, 64 bytes, so that adding a value touches one or two
+// cache lines rather than one per field: the count, the mean (a double in two ints),
+// the moving average and marker values (floats) and the marker positions. With the
+// EpcTable's own state a tag takes about 350 bytes, a few hundred thousand tags some
+// 100 MB.
+//
+// Like the aggregation state of ReaderFleet it has one writer and no locks: add it as
+// a sink of a SensorEngine, or of the aggregation of a ReaderFleet. A ReadPipeline
+// with several workers calls its sink under the pipeline's lock, use one worker there
+// to keep it uncontended. Other threads may read the summaries while it is updated, a
+// summary may then mix two readings.
+public class TagStatistics implements ReadingSink {
+
+    // summaries of a tag
+    public static final int MOISTURE = 0;
+    public static final int OCRSSI = 1;
+    public static final int TEMPERATURE = 2;
+    static final int SUMMARIES = 3;
+
+    // P-Square markers, by their quantile
+    static final double[] QUANTILES = { 0, 0.25, 0.5, 0.7, 0.9, 0.95, 1 };
+    static final int MARKERS = QUANTILES.length;
+    static final int MEDIAN = 2;
+    static final int P90 = 4;
+
+    // block of a summary
+    static final int COUNT = 0;
+    static final int MEAN = 1;       // and 2
+    static final int EWMA = 3;
+    static final int HEIGHTS = 4;    // marker values, sorted
+    static final int POSITIONS = 11; // positions of the inner markers, 1-based; the outer ones are at 1 and the count
+    static final int BLOCK = 16;
+
+    /**
+     * Statistics Settings
+     *
+     * EWMA Weight: weight of a new value in the moving average, from 0 (never
+     * changes) to 1 (the last value)
+     */
+    public double ewmaWeight = 0.2;
+
+    final SensorType type;
+    final EpcTable<Object> tags;
+    int[] blocks = new int[0];  // SUMMARIES blocks per entry
+
+    public TagStatistics(SensorType type) {
+        this(type, 1024);
+    }
+
+    // 'capacity' tags before the arrays grow
+    public TagStatistics(SensorType type, int capacity) {
+        this.type = type;
+        this.tags = new EpcTable<>(capacity);
+        this.blocks = new int[Math.max(capacity, 16) * SUMMARIES * BLOCK];
+    }
+
+    public void accept(SensorReading reading) {
+        add(reading.tag.epc, reading.moistureStatus == SensorReading.OK ? reading.moistureCode : -1, reading.ocrssiCode,
+            reading.temperatureStatus == SensorReading.OK ? reading.temperature : Double.NaN);
+    }
+
+    public void accept(ReadingBuffer readings, int index) {
+        add(readings.tags[index].epc, readings.moistureStatus[index] == SensorReading.OK ? readings.moistureCode[index] : -1,
+            readings.ocrssiCode[index], readings.temperatureStatus[index] == SensorReading.OK ? readings.temperature[index] : Double.NaN);
+    }
+
+    // number of tags with a summary
+    public int size() {
+        return tags.size();
+    }
+
+    // entry of a tag, -1 if it hasn't been read
+    public int find(byte[] epc) {
+        return tags.find(epc);
+    }
+
+    // EPC of an entry, allocates
+    public byte[] epc(int entry) {
+        return tags.epc(entry);
+    }
+
+    // number of valid values of a summary, MOISTURE, OCRSSI or TEMPERATURE
+    public int count(int entry, int summary) {
+        return blocks[block(entry, summary) + COUNT];
+    }
+
+    // the following are NaN if there are no values
+    public double mean(int entry, int summary) {
+        int b = block(entry, summary);
+        return blocks[b + COUNT] == 0 ? Double.NaN : getDouble(b + MEAN);
+    }
+
+    public double ewma(int entry, int summary) {
+        int b = block(entry, summary);
+        return blocks[b + COUNT] == 0 ? Double.NaN : getFloat(b + EWMA);
+    }
+
+    public double min(int entry, int summary) {
+        return quantile(block(entry, summary), 0, 0);
+    }
+
+    public double max(int entry, int summary) {
+        return quantile(block(entry, summary), 1, MARKERS - 1);
+    }
+
+    public double median(int entry, int summary) {
+        return quantile(block(entry, summary), 0.5, MEDIAN);
+    }
+
+    public double p90(int entry, int summary) {
+        return quantile(block(entry, summary), 0.9, P90);
+    }
+
+    // forget all tags
+    public void clear() {
+        tags.clear();
+    }
+
+    // a summary in the samples' text style, e.g. for printing after a reading cycle
+    public String toString(int entry, int summary) {
+        if (count(entry, summary) == 0) {
+            return "no values";
+        }
+        String format = summary == TEMPERATURE ? "%.2f" : "%.1f";
+        return String.format("n " + count(entry, summary) + ", mean " + format + ", ewma " + format + ", min " + format
+            + ", median " + format + ", p90 " + format + ", max " + format, mean(entry, summary), ewma(entry, summary),
+            min(entry, summary), median(entry, summary), p90(entry, summary), max(entry, summary));
+    }
+
+    static int block(int entry, int summary) {
+        return (entry * SUMMARIES + summary) * BLOCK;
+    }
+
+    void add(byte[] epc, int moistureCode, int ocrssiCode, double temperature) {
+        if (epc.length > EpcTable.MAX_EPC_LENGTH) {
+            return;
+        }
+        int size = tags.size();
+        int entry = tags.add(epc);
+        if (block(entry + 1, 0) > blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(block(1024, 0), blocks.length * 2));
+        }
+        if (tags.size() > size) {
+            for (int summary = 0; summary < SUMMARIES; summary++) {
+                blocks[block(entry, summary) + COUNT] = 0;
+            }
+        }
+        if (type.moistureIndex >= 0 && moistureCode >= 0) {
+            add(block(entry, MOISTURE), moistureCode);
+        }
+        if (ocrssiCode >= 0) {
+            add(block(entry, OCRSSI), ocrssiCode);
+        }
+        if (!Double.isNaN(temperature)) {
+            add(block(entry, TEMPERATURE), temperature);
+        }
+    }
+
+    // add a value to the summary at block 'b'
+    void add(int b, double value) {
+        int n = blocks[b + COUNT];
+        if (n == 0) {
+            putDouble(b + MEAN, value);
+            putFloat(b + EWMA, value);
+        }
+        else {
+            double mean = getDouble(b + MEAN);
+            putDouble(b + MEAN, mean + (value - mean) / (n + 1));
+            double ewma = getFloat(b + EWMA);
+            putFloat(b + EWMA, ewma + ewmaWeight * (value - ewma));
+        }
+        int h = b + HEIGHTS;
+        float x = (float)value;
+        if (n < MARKERS) {
+            // the first values are kept sorted as they are
+            int i = n;
+            for (; i > 0 && getFloat(h + i - 1) > x; i--) {
+                blocks[h + i] = blocks[h + i - 1];
+            }
+            putFloat(h + i, x);
+            blocks[b + COUNT] = n + 1;
+            if (n + 1 == MARKERS) {
+                for (int marker = 1; marker < MARKERS - 1; marker++) {
+                    blocks[b + POSITIONS + marker - 1] = marker + 1;
+                }
+            }
+            return;
+        }
+        // the cell of the value, moving the outer markers if it is beyond them
+        int cell;
+        if (x < getFloat(h)) {
+            putFloat(h, x);
+            cell = 0;
+        }
+        else if (x >= getFloat(h + MARKERS - 1)) {
+            putFloat(h + MARKERS - 1, x);
+            cell = MARKERS - 2;
+        }
+        else {
+            cell = 0;
+            while (x >= getFloat(h + cell + 1)) {
+                cell++;
+            }
+        }
+        int p = b + POSITIONS - 1;  // blocks[p + marker] for the inner markers
+        for (int marker = cell + 1; marker < MARKERS - 1; marker++) {
+            blocks[p + marker]++;
+        }
+        n++;
+        blocks[b + COUNT] = n;
+        // move the inner markers off their place by a position or more, by a parabolic
+        // prediction or a linear one if that would overtake a neighbour
+        for (int marker = 1; marker < MARKERS - 1; marker++) {
+            int position = blocks[p + marker];
+            int previous = marker == 1 ? 1 : blocks[p + marker - 1];
+            int next = marker == MARKERS - 2 ? n : blocks[p + marker + 1];
+            double offset = 1 + (n - 1) * QUANTILES[marker] - position;
+            int step;
+            if (offset >= 1 && next - position > 1) {
+                step = 1;
+            }
+            else if (offset <= -1 && previous - position < -1) {
+                step = -1;
+            }
+            else {
+                continue;
+            }
+            double height = getFloat(h + marker);
+            double below = getFloat(h + marker - 1);
+            double above = getFloat(h + marker + 1);
+            double parabolic = height + (double)step / (next - previous)
+                * ((position - previous + step) * (above - height) / (next - position)
+                + (next - position - step) * (height - below) / (position - previous));
+            if (below < parabolic && parabolic < above) {
+                putFloat(h + marker, parabolic);
+            }
+            else if (step > 0) {
+                putFloat(h + marker, height + (above - height) / (next - position));
+            }
+            else {
+                putFloat(h + marker, height - (below - height) / (previous - position));
+            }
+            blocks[p + marker] = position + step;
+        }
+    }
+
+    // quantile 'q' of the summary at block 'b', from marker 'marker' once all markers are placed
+    double quantile(int b, double q, int marker) {
+        int n = blocks[b + COUNT];
+        if (n == 0) {
+            return Double.NaN;
+        }
+        if (n < MARKERS) {
+            return getFloat(b + HEIGHTS + (int)Math.round((n - 1) * q));
+        }
+        return getFloat(b + HEIGHTS + marker);
+    }
+
+    float getFloat(int at) {
+        return Float.intBitsToFloat(blocks[at]);
+    }
+
+    void putFloat(int at, double value) {
+        blocks[at] = Float.floatToRawIntBits((float)value);
+    }
+
+    double getDouble(int at) {
+        return Double.longBitsToDouble((long)blocks[at] << 32 | (blocks[at + 1] & 0xFFFFFFFFL));
+    }
+
+    void putDouble(int at, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        blocks[at] = (int)(bits >>> 32);
+        blocks[at + 1] = (int)bits;
+    }
+}
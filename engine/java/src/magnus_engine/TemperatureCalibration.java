@@ -0,0 +1,129 @@
+package magnus_engine;
+
+// temperature calibration stored in the USER bank of Magnus S3 and Xerxes tags
+// - Magnus S3: USER 8..11, protected by a CRC-16
+// - Xerxes: USER 0x12..0x15, protected by parity bits
+public class TemperatureCalibration {
+    public final SensorType type;
+    public final short[] words;
+    public final boolean valid;
+    public final double slope;
+    public final double offset;
+
+    private TemperatureCalibration(SensorType type, short[] words, boolean valid, double slope, double offset) {
+        this.type = type;
+        this.words = words;
+        this.valid = valid;
+        this.slope = slope;
+        this.offset = offset;
+    }
+
+    public static TemperatureCalibration decode(SensorType type, short[] calWords) {
+        switch (type) {
+            case MAGNUS_S3:
+                return decodeMagnusS3(calWords);
+            case XERXES:
+                return decodeXerxes(calWords);
+            default:
+                throw new IllegalArgumentException(type + " has no temperature calibration");
+        }
+    }
+
+    // apply calibration to a temperature code, result in degC
+    public double temperature(int temperatureCode) {
+        return slope * temperatureCode + offset;
+    }
+
+    static TemperatureCalibration decodeMagnusS3(short[] calWords) {
+        // convert register contents to variables
+        short reg8 = calWords[0];
+        short reg9 = calWords[1];
+        short regA = calWords[2];
+        short regB = calWords[3];
+        int ver = regB & 0x0003;
+        double temp2 = .1 * ((regB >> 2) & 0x07FF) - 80;
+        int code2 = ((regA << 3) & 0x0FF8) | ((regB >> 13) & 0x0007);
+        double temp1 = .1 * (((reg9 << 7) & 0x0780) | ((regA >> 9) & 0x007F)) - 80;
+        int code1 = (reg9 >> 4) & 0x0FFF;
+        int crc = reg8 & 0xFFFF;
+
+        // calculate CRC-16 over non-CRC bytes to compare with stored CRC-16
+        int crcCalc = crc16(calWords, 1, 3);
+
+        // determine if calibration is valid
+        if ((ver == 0) && (crc == crcCalc) && ((code2 - code1) != 0)) {
+            double slope = (temp2 - temp1) / (double)(code2 - code1);
+            double offset = temp1 - (slope * (double)code1);
+            return new TemperatureCalibration(SensorType.MAGNUS_S3, calWords, true, slope, offset);
+        }
+        return new TemperatureCalibration(SensorType.MAGNUS_S3, calWords, false, 0, 0);
+    }
+
+    static TemperatureCalibration decodeXerxes(short[] calWords) {
+        // convert register contents to variables
+        short reg12 = calWords[0];
+        short reg13 = calWords[1];
+        short reg14 = calWords[2];
+        short reg15 = calWords[3];
+        int fmt = (reg15 >> 13) & 0x0007;
+        int par1 = (reg15 >> 11) & 0x0003;
+        int temp1 = reg15 & 0x07FF;
+        int code1 = reg14 & 0xFFFF;
+        int rfu = (reg13 >> 13) & 0x0007;
+        int par2 = (reg13 >> 11) & 0x0003;
+        int temp2 = reg13 & 0x07FF;
+        int code2 = reg12 & 0xFFFF;
+
+        // calculate parity
+        int par1Calc = xerxesParity(fmt, temp1, code1);
+        int par2Calc = xerxesParity(rfu, temp2, code2);
+
+        // determine if calibration is valid
+        if ((fmt == 0) && (par1 == par1Calc) && (par2 == par2Calc) && ((code2 - code1) != 0)) {
+            double slope = .1 * (temp2 - temp1) / ((double)(code2 - code1) * 0.0625);
+            double offset = .1 * (temp1 - 600) - (slope * (double)code1 * 0.0625);
+            return new TemperatureCalibration(SensorType.XERXES, calWords, true, slope, offset);
+        }
+        return new TemperatureCalibration(SensorType.XERXES, calWords, false, 0, 0);
+    }
+
+    // parity bits protecting one Xerxes calibration point
+    public static int xerxesParity(int fmt, int temp, int code) {
+        int bit2 = (Integer.bitCount(fmt) + Integer.bitCount(temp)) % 2;
+        int bit1 = Integer.bitCount(code) % 2;
+        return (bit2 << 1) | bit1;
+    }
+
+    // EPC Gen2 CRC-16 Algorithm
+    // Poly = 0x1021; Initial Value = 0xFFFF; XOR Output;
+    public static int crc16(byte[] inputBytes) {
+        int crcVal = 0xFFFF;
+        for (byte inputByte: inputBytes) {
+            crcVal = crc16Update(crcVal, inputByte);
+        }
+        return crcVal ^ 0xFFFF;
+    }
+
+    // CRC-16 over 'count' big-endian words starting at words[from]
+    public static int crc16(short[] words, int from, int count) {
+        int crcVal = 0xFFFF;
+        for (int i = from; i < from + count; i++) {
+            crcVal = crc16Update(crcVal, (byte)(words[i] >> 8));
+            crcVal = crc16Update(crcVal, (byte)words[i]);
+        }
+        return crcVal ^ 0xFFFF;
+    }
+
+    private static int crc16Update(int crcVal, byte inputByte) {
+        crcVal = (crcVal ^ (inputByte << 8));
+        for (int i = 0; i < 8; i++) {
+            if ((crcVal & 0x8000) == 0x8000) {
+                crcVal = (crcVal << 1) ^ 0x1021;
+            }
+            else {
+                crcVal = (crcVal << 1);
+            }
+        }
+        return crcVal & 0xFFFF;
+    }
+}
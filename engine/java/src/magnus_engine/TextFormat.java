@@ -0,0 +1,53 @@
+package magnus_engine;
+
+// readings in the same format as the samples' printSensorResults
+public class TextFormat implements ReadingFormat {
+
+    public void format(SensorReading reading, OutputBuffer out) {
+        SensorType type = reading.type;
+        out.append("* EPC: ");
+        out.appendHex(reading.tag.epc);
+        out.newLine();
+        if (reading.ocrssiCode >= 0) {
+            out.append("  - On-Chip RSSI: ");
+            out.append(reading.ocrssiCode);
+            out.newLine();
+        }
+        if (type.moistureIndex >= 0) {
+            out.append("  - Moisture: ");
+            if (reading.moistureStatus == SensorReading.OK) {
+                out.append(reading.moistureCode);
+                out.append(" at ");
+                out.append(reading.tag.frequency);
+                out.append(" kHz");
+            }
+            else {
+                out.append(SensorReading.statusText(reading.moistureStatus));
+            }
+            out.newLine();
+        }
+        if (type.hasTemperature()) {
+            out.append("  - Temperature: ");
+            if (reading.temperatureStatus == SensorReading.OK) {
+                out.appendFixed2(reading.temperature);
+                out.append(" degC");
+            }
+            else {
+                out.append(SensorReading.statusText(reading.temperatureStatus));
+            }
+            out.newLine();
+        }
+        if (type.backport1Index >= 0) {
+            for (int port = 1; port <= 2; port++) {
+                out.append(port == 1 ? "  - Backport 1: " : "  - Backport 2: ");
+                if (reading.backportStatus == SensorReading.OK) {
+                    out.append(port == 1 ? reading.backport1Code : reading.backport2Code);
+                }
+                else {
+                    out.append(SensorReading.statusText(reading.backportStatus));
+                }
+                out.newLine();
+            }
+        }
+    }
+}
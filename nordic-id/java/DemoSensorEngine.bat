@@ -0,0 +1,8 @@
+echo off
+cls
+if not exist ".\build" mkdir .\build
+javac -cp .;./lib/* -d ./build ../../engine/java/src/magnus_engine/*.java src/nordicid_samples/Common.java src/nordicid_samples/ReaderShadow.java src/nordicid_samples/NordicSensorReader.java
+if %ERRORLEVEL% EQU 0 (
+    java -cp ./lib/*;./build nordicid_samples.NordicSensorReader
+)
+pause
@@ -0,0 +1,8 @@
+#!/bin/bash
+clear
+mkdir -p ./build
+javac -cp .:./lib/* -d ./build ../../engine/java/src/magnus_engine/*.java src/nordicid_samples/Common.java src/nordicid_samples/ReaderShadow.java src/nordicid_samples/SensorStream.java
+if [ $? -eq 0 ]; then
+    java -cp ./lib/*:./build nordicid_samples.SensorStream
+fi
+read -p "Press any key to continue . . ."
@@ -4,7 +4,7 @@ clear
 if [ -d "./build" ]; then
     mkdir -p ./build
 fi
-javac -cp .:./lib/* -d ./build src/nordicid_samples/Common.java src/nordicid_samples/Xerxes.java
+javac -cp .:./lib/* -d ./build ../../engine/java/src/magnus_engine/*.java src/nordicid_samples/Common.java src/nordicid_samples/ReaderShadow.java src/nordicid_samples/Xerxes.java
 if [ $? -eq 0 ]; then
     java -cp ./lib/*:./build nordicid_samples.Xerxes
 fi
@@ -1,6 +1,23 @@
 package nordicid_samples;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import com.nordicid.nurapi.*;
+import magnus_engine.BatchingWriter;
+import magnus_engine.CalibrationStore;
+import magnus_engine.CaptureReader;
+import magnus_engine.ConsoleSink;
+import magnus_engine.ReaderMetrics;
+import magnus_engine.ReadingLog;
+import magnus_engine.ReadingSink;
+import magnus_engine.SelectCompiler;
+import magnus_engine.SensorReader;
+import magnus_engine.SensorType;
+import magnus_engine.SettleTimeTuner;
+import magnus_engine.SettleTimes;
+import magnus_engine.TagRead;
 
 public class Common{
 
@@ -13,7 +30,7 @@ public class Common{
      * - Serial: "COM1"
      * - Network: "192.168.1.100"
      *
-     * Power: reader transmit power in dBm
+     * Power: reader transmit power in dBm, from 8 to 27
      *
      * Antennas: list of active antenna ports
      *
@@ -22,12 +39,32 @@ public class Common{
      * Session: specify which RFID Session Flag to use
      * - S0: smaller tag populations
      * - S1: larger tag populations (along with filtering by OCRSSI)
+     *
+     * Calibration File: keeps the temperature calibration of every tag
+     * across restarts (set to 'null' to read it from the tags every run)
+     *
+     * History Directory: keeps every reading of the engine based samples in an
+     * append-only log (set to 'null' to keep no history)
+     *
+     * Settle Time File: keeps the CW settle time tuned for each reader and sensor
+     * type (set to 'null' to use the sensor types' defaults)
+     *
+     * Output File: also write every reading of the engine based samples to this file,
+     * as JSON Lines (.jsonl), CSV (.csv) or compact binary (.bin) (set to 'null' for none)
+     *
+     * Capture File: record the raw tag reads of the engine based samples for
+     * ReplayReader (set to 'null' for none)
      */
     static String address = "172.16.1.117";
     static int power = 20;
     public static int[] antennas = { 1 };
     static int region = NurApi.REGIONID_FCC;
     public static int session = NurApi.SESSION_S0;
+    public static String calibrationFile = "calibration.dat";
+    public static String historyDirectory = "history";
+    public static String settleTimeFile = "settle-times.properties";
+    public static String outputFile = null;
+    public static String captureFile = null;
 
     /**
      * Reader Performance Settings
@@ -40,8 +77,69 @@ public class Common{
     static int q = 0;  // auto
     static int rounds = 10;
 
+    // metrics of the reader connections, for the memory reads which only get the connection
+    static final WeakHashMap<NurApi, ReaderMetrics> metrics = new WeakHashMap<>();
+
+    // custom exchanges and inventory filters of the engine's Select sequences, encoded
+    // once for all readers
+    public static final SelectCompiler<CustomExchangeParams> customExchangeSelects = new SelectCompiler<>(new SelectCompiler.Encoder<CustomExchangeParams>() {
+        public CustomExchangeParams encode(magnus_engine.Select select) {
+            return createCustomExchangeSelect(select.target, select.action, select.bank, select.pointer, select.length, select.mask);
+        }
+    });
+    public static final SelectCompiler<NurInventoryExtendedFilter> inventorySelects = new SelectCompiler<>(new SelectCompiler.Encoder<NurInventoryExtendedFilter>() {
+        public NurInventoryExtendedFilter encode(magnus_engine.Select select) {
+            return createInventoryExtendedSelect(select.target, select.action, select.bank, select.pointer, select.length, select.mask);
+        }
+    });
+
+    // the EPC filter and inventory parameters of readMemBlockByEpc, one set per reader
+    // connection reused for every tag, used while holding it
+    static class Singulation {
+        final NurInventoryExtendedFilter epcFilter = createInventoryExtendedSelect(4, 0, NurApi.BANK_EPC, 0x20, 0, new byte[0]);
+        final NurInventoryExtended invEx = new NurInventoryExtended();
+        final HashMap<Integer, NurIRConfig> configs = new HashMap<>();  // never changed once created, the shadow keeps them
+
+        Singulation() {
+            invEx.inventorySelState = NurApi.INVSELSTATE_SL;
+            invEx.session = NurApi.SESSION_S0;
+            invEx.inventoryTarget = NurApi.INVTARGET_A;
+            invEx.Q = 1;
+        }
+
+        // read command parameters of a memory block
+        NurIRConfig config(int bank, int address, int length) {
+            Integer key = bank << 24 | (address & 0xFFFF) << 8 | (length & 0xFF);
+            NurIRConfig config = configs.get(key);
+            if (config == null) {
+                config = new NurIRConfig();
+                config.irType = NurApi.IRTYPE_EPCDATA;
+                config.irBank = bank;
+                config.irAddr = address;
+                config.irWordCount = length;
+                config.IsRunning = true;
+                configs.put(key, config);
+            }
+            return config;
+        }
+    }
+
+    static final WeakHashMap<NurApi, Singulation> singulations = new WeakHashMap<>();
+
     // connect to reader
     public static void connectReader(NurApi reader) {
+        try {
+            connectReader(reader, address);
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not connect to reader at " + address);
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    // connect to the reader at 'address', which may be one of many readers of a fleet
+    public static void connectReader(NurApi reader, String address) throws Exception {
         NurApiTransport transport;
         if (address.contains(".")){
             int port = 4333;
@@ -51,36 +149,25 @@ public class Common{
             int baudRate = 11520;
             transport = new NurApiSerialTransport(address, baudRate);
         }
-        try {
-            reader.setTransport(transport);
-            reader.connect();
-            reader.ping();
+        reader.setTransport(transport);
+        reader.connect();
+        reader.ping();
+        synchronized (metrics) {
+            metrics.put(reader, ReaderMetrics.of(address));
         }
-        catch (Exception e) {
-            System.out.println("Error: could not connect to reader at " + address);
-            e.printStackTrace(System.out);
-            System.exit(-1);
+    }
+
+    // metrics of a reader connection, by the address it was connected with
+    public static ReaderMetrics metrics(NurApi reader) {
+        synchronized (metrics) {
+            ReaderMetrics readerMetrics = metrics.get(reader);
+            return readerMetrics == null ? ReaderMetrics.of(address) : readerMetrics;
         }
     }
     
     public static void initializeReader(NurApi reader) {
         try {
-            reader.setExtendedCarrier(false);
-            reader.setIRState(false);
-            reader.setSetupRegionId(region);
-            reader.setSetupTxLevel(30 - power);
-            configureAntennas(reader, antennas);
-            reader.setSetupSelectedAntenna(-1);
-            reader.setSetupLinkFreq(blf);
-            reader.setSetupRxDecoding(encoding);
-            reader.setSetupTxModulation(modulation);
-            reader.setSetupInventorySession(session);
-            reader.setSetupInventoryTarget(NurApi.INVTARGET_A);
-            reader.setSetupInventoryRounds(rounds);
-            AutotuneSetup atSetup = new AutotuneSetup();
-            atSetup.mode = AutotuneSetup.ATMODE_OFF;
-            reader.setSetupAutotune(atSetup);
-            reader.setSetupAutoPeriod(0);
+            configureReader(reader);
         }
         catch (Exception e) {
             System.out.println("Error: could not initialize reader");
@@ -88,15 +175,37 @@ public class Common{
             System.exit(-1);
         }
     }
+
+    // initialize one reader of a fleet, unlike initializeReader(reader) failures are thrown
+    public static void configureReader(NurApi reader) throws Exception {
+        ReaderShadow shadow = ReaderShadow.of(reader);
+        shadow.setExtendedCarrier(false);
+        shadow.setIRState(false);
+        reader.setSetupRegionId(region);
+        reader.setSetupTxLevel(txLevel(power));
+        setAntennas(reader, antennas);
+        reader.setSetupSelectedAntenna(-1);
+        reader.setSetupLinkFreq(blf);
+        reader.setSetupRxDecoding(encoding);
+        reader.setSetupTxModulation(modulation);
+        reader.setSetupInventorySession(session);
+        reader.setSetupInventoryTarget(NurApi.INVTARGET_A);
+        reader.setSetupInventoryRounds(rounds);
+        AutotuneSetup atSetup = new AutotuneSetup();
+        atSetup.mode = AutotuneSetup.ATMODE_OFF;
+        reader.setSetupAutotune(atSetup);
+        reader.setSetupAutoPeriod(0);
+    }
     
+    // TX level of a transmit power in dBm: attenuation in 1 dB steps from 27 dBm
+    // (TXLEVEL_27) down to 8 dBm (TXLEVEL_8), powers outside of that are clamped
+    public static int txLevel(double dBm) {
+        return Math.max(NurApi.MAX_TXLEVEL, Math.min(NurApi.MIN_TXLEVEL, 27 - (int)Math.round(dBm)));
+    }
+
     public static void configureAntennas(NurApi reader, int[] antennas) {
-        int antennaMask = 0;
-        for (int antenna: antennas) {
-            antennaMask += 1 << (antenna - 1);
-        }
         try {
-            reader.setSetupAntennaMask(antennaMask);
-            reader.setSetupAntennaMaskEx(antennaMask);
+            setAntennas(reader, antennas);
         }
         catch (Exception e) {
             System.out.println("Error: could not configure antennas");
@@ -105,6 +214,16 @@ public class Common{
         }
     }
 
+    // like configureAntennas(), but failures are thrown
+    public static void setAntennas(NurApi reader, int[] antennas) throws Exception {
+        int antennaMask = 0;
+        for (int antenna: antennas) {
+            antennaMask += 1 << (antenna - 1);
+        }
+        // only sent if the antennas differ from the current ones
+        ReaderShadow.of(reader).setAntennaMask(antennaMask);
+    }
+
     public static CustomExchangeParams createCustomExchangeSelect(int target, int action, int bank, int pointer, int length, byte[] mask){
         CustomExchangeParams select = new CustomExchangeParams();
         try {
@@ -156,27 +275,52 @@ public class Common{
 
     // read multiple registers from one tag singulated by its EPC
     public static short[] readMemBlockByEpc(NurTag tag, int bank, int address, int length, int attempts){
+        try {
+            return readTagMemory(tag, bank, address, length, attempts);
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    // like readMemBlockByEpc(), but reader failures are thrown rather than ending the
+    // program, for one reader of a fleet
+    public static short[] readTagMemory(NurTag tag, int bank, int address, int length, int attempts) throws Exception {
         NurApi reader = tag.getAPI();
+        Singulation singulation;
+        synchronized (singulations) {
+            singulation = singulations.get(reader);
+            if (singulation == null) {
+                singulation = new Singulation();
+                singulations.put(reader, singulation);
+            }
+        }
+        synchronized (singulation) {
+            return readTagMemory(singulation, reader, tag, bank, address, length, attempts);
+        }
+    }
+
+    static short[] readTagMemory(Singulation singulation, NurApi reader, NurTag tag, int bank, int address, int length, int attempts) throws Exception {
         byte[] epcBytes = tag.getEpc();
-        NurInventoryExtendedFilter epcFilter = createInventoryExtendedSelect(4, 0, NurApi.BANK_EPC, 0x20, epcBytes.length * 8, epcBytes);
+        NurInventoryExtendedFilter epcFilter = singulation.epcFilter;
+        epcFilter.maskBitLength = epcBytes.length * 8;
+        epcFilter.maskdata = epcBytes;
         // Inventory parameters
-        NurInventoryExtended invEx = new NurInventoryExtended();
-        invEx.inventorySelState = NurApi.INVSELSTATE_SL;
-        invEx.session = NurApi.SESSION_S0;
-        invEx.inventoryTarget = NurApi.INVTARGET_A;
-        invEx.Q = 1;
+        NurInventoryExtended invEx = singulation.invEx;
         invEx.rounds = Common.rounds;
         // Read command parameters
-        NurIRConfig config = new NurIRConfig();
-        config.irType = NurApi.IRTYPE_EPCDATA;
-        config.irBank = bank;
-        config.irAddr = address;
-        config.irWordCount = length;
-        config.IsRunning = true;
+        NurIRConfig config = singulation.config(bank, address, length);
         short[] values = null;
+        long start = System.nanoTime();
         try {
-            configureAntennas(reader, new int[] { tag.getAntennaId() + 1 });
-            reader.setIRConfig(config);
+            setAntennas(reader, new int[] { tag.getAntennaId() + 1 });
+            ReaderShadow.of(reader).setIRConfig(config);
             for (int i = 0; i < attempts; i++) {
                 if (values != null) {
                     break;
@@ -199,12 +343,10 @@ public class Common{
                     }
                 }
             }
-            reader.setIRState(false);
+            ReaderShadow.of(reader).setIRState(false);
         }
-        catch (Exception e) {
-            System.out.println("Error: " + e.getMessage());
-            e.printStackTrace(System.out);
-            System.exit(-1);
+        finally {
+            metrics(reader).time(ReaderMetrics.CALIBRATION, start);
         }
         if (values == null) {
             throw new RuntimeException("Tag not found");
@@ -218,6 +360,216 @@ public class Common{
         return values;
     }
 
+    // open the calibration store, null if disabled or it can't be opened
+    public static CalibrationStore openCalibrationStore() {
+        if (calibrationFile == null) {
+            return null;
+        }
+        try {
+            return CalibrationStore.open(calibrationFile);
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not open calibration file " + calibrationFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // open the reading history, null if disabled or it can't be opened
+    public static ReadingLog openReadingLog() {
+        if (historyDirectory == null) {
+            return null;
+        }
+        try {
+            return ReadingLog.open(historyDirectory);
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not open history directory " + historyDirectory + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // open the tuned settle times, null if disabled or they can't be read
+    public static SettleTimes openSettleTimes() {
+        if (settleTimeFile == null) {
+            return null;
+        }
+        try {
+            return SettleTimes.load(settleTimeFile);
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not read settle time file " + settleTimeFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // CW settle time of a reader for a sensor type, the sensor type's default if not tuned
+    public static int settleMicros(String reader, SensorType type) {
+        SettleTimes settleTimes = openSettleTimes();
+        return settleTimes == null ? type.settleMicros : settleTimes.get(reader, type);
+    }
+
+    // CW settle time of a reader for a sensor type, tuned on the tags in front of the
+    // reader and kept in the settle time file the first time
+    public static int tuneSettleTime(SensorReader reader, SensorType type) {
+        SettleTimes settleTimes = openSettleTimes();
+        if (settleTimes == null) {
+            return type.settleMicros;
+        }
+        if (settleTimes.has(reader.name(), type)) {
+            return settleTimes.get(reader.name(), type);
+        }
+        try {
+            int settleMicros = new SettleTimeTuner(reader, type).tune();
+            if (settleMicros == 0) {
+                System.out.println("No temperature readings to tune the settle time with");
+                return type.settleMicros;
+            }
+            settleTimes.put(reader.name(), type, settleMicros);
+            System.out.println("Settle time for " + type + " on " + reader.name() + ": " + settleMicros + " us\n");
+            return settleMicros;
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            return type.settleMicros;
+        }
+    }
+
+    // the reader, recording its raw tag reads to the capture file if one is set
+    public static SensorReader capture(SensorReader reader, SensorType type) {
+        if (captureFile == null) {
+            return reader;
+        }
+        try {
+            return new CaptureReader(reader, type, captureFile);
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not open capture file " + captureFile + ": " + e.getMessage());
+            return reader;
+        }
+    }
+
+    // the console of the last readingSink()
+    static ConsoleSink console;
+
+    // print every reading, also write it to the output file and keep it in 'history'
+    // unless those are null; close() the sink at the end to write out what is queued
+    public static ReadingSink readingSink(ReadingLog history) {
+        console = new ConsoleSink();
+        ReadingSink sink = console;
+        if (outputFile != null) {
+            try {
+                sink = ReadingSink.tee(sink, BatchingWriter.open(outputFile));
+            }
+            catch (Exception e) {
+                System.out.println("Error: could not open output file " + outputFile + ": " + e.getMessage());
+            }
+        }
+        return history == null ? sink : ReadingSink.tee(sink, history);
+    }
+
+    // print a line in order with the readings printed by readingSink()'s console, until
+    // the sink is closed
+    public static void println(String line) {
+        if (console == null) {
+            System.out.println(line);
+        }
+        else {
+            console.println(line);
+        }
+    }
+
+    // read calibration words from the store, or from the tag if it hasn't been seen before
+    public static short[] readCalibration(CalibrationStore store, NurTag tag, SensorType type) {
+        if (store == null) {
+            return readMemBlockByEpc(tag, NurApi.BANK_USER, type.calibrationAddress, 4);
+        }
+        short[] calibrationWords = store.wordsByEpc(tag.getEpc());
+        if (calibrationWords == null) {
+            // the TID identifies the tag even if its EPC has been rewritten
+            byte[] tid = convertShortArrayToByteArray(readMemBlockByEpc(tag, NurApi.BANK_TID, 0, 6));
+            calibrationWords = store.words(tid);
+            if (calibrationWords == null) {
+                calibrationWords = readMemBlockByEpc(tag, NurApi.BANK_USER, type.calibrationAddress, 4);
+            }
+            try {
+                store.put(tid, tag.getEpc(), type, calibrationWords);
+            }
+            catch (Exception e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+        }
+        return calibrationWords;
+    }
+
+    // read the calibration of many tags in one inventory with an embedded read of their
+    // calibration block, returns calibration words by EPC for every tag that responded
+    public static HashMap<String, short[]> readCalibrationBulk(NurApi reader, CalibrationStore store, SensorType type, Set<String> epcs) {
+        NurInventoryExtendedFilter tidFilter = createInventoryExtendedSelect(NurApi.SESSION_SL, 0, NurApi.BANK_TID, 0x00, 28, type.tidPrefix);
+        HashMap<String, short[]> calibrations = new HashMap<>();
+        try {
+            calibrations = readMemBlocks(reader, tidFilter, NurApi.BANK_USER, type.calibrationAddress, 4, epcs, 3);
+            if (store != null && !calibrations.isEmpty()) {
+                // one more inventory collects the TIDs to key the stored calibration by
+                HashMap<String, short[]> tids = readMemBlocks(reader, tidFilter, NurApi.BANK_TID, 0, 6, calibrations.keySet(), 3);
+                for (Map.Entry<String, short[]> entry: tids.entrySet()) {
+                    try {
+                        store.put(convertShortArrayToByteArray(entry.getValue()), TagRead.fromHex(entry.getKey()), type, calibrations.get(entry.getKey()));
+                    }
+                    catch (Exception e) {
+                        System.out.println("Error: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        catch (Exception e) {
+            // the tags left out are read one at a time instead
+            System.out.println("Error: " + e.getMessage());
+        }
+        return calibrations;
+    }
+
+    // read multiple registers from every tag matching the filter with an embedded read,
+    // repeating the inventory until all of 'epcs' responded or the attempts are used up
+    public static HashMap<String, short[]> readMemBlocks(NurApi reader, NurInventoryExtendedFilter filter, int bank, int address, int length, Set<String> epcs, int attempts) throws Exception {
+        // Inventory parameters
+        NurInventoryExtended invEx = new NurInventoryExtended();
+        invEx.inventorySelState = NurApi.INVSELSTATE_SL;
+        invEx.session = session;
+        invEx.inventoryTarget = NurApi.INVTARGET_A;
+        invEx.Q = q;  // auto
+        invEx.rounds = rounds;
+        // Read command parameters
+        NurIRConfig config = new NurIRConfig();
+        config.irType = NurApi.IRTYPE_EPCDATA;
+        config.irBank = bank;
+        config.irAddr = address;
+        config.irWordCount = length;
+        config.IsRunning = true;
+        HashMap<String, short[]> values = new HashMap<>();
+        setAntennas(reader, antennas);
+        ReaderShadow.of(reader).setIRConfig(config);
+        for (int i = 0; i < attempts; i++) {
+            reader.clearIdBuffer();
+            NurRespInventory response = reader.inventoryExtended(invEx, filter);
+            if (response.numTagsFound != 0) {
+                reader.fetchTags();
+                NurTagStorage tagStorage = reader.getStorage();
+                for (int k = 0; k < tagStorage.size(); k++) {
+                    NurTag foundTag = tagStorage.get(k);
+                    byte[] dataBytes = foundTag.getIrData();
+                    if (dataBytes != null && dataBytes.length == length * 2) {
+                        values.put(foundTag.getEpcString(), convertByteArrayToShortArray(dataBytes));
+                    }
+                }
+            }
+            if (values.keySet().containsAll(epcs)) {
+                break;
+            }
+        }
+        ReaderShadow.of(reader).setIRState(false);
+        return values;
+    }
+
     // read one register from one tag singulated by its EPC
     public static short readMemByEpc(NurTag tag, int bank, int address, int attempts){
         short[] values = readMemBlockByEpc(tag, bank, address, 1, attempts);
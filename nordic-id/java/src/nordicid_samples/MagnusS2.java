@@ -1,6 +1,8 @@
 package nordicid_samples;
 
 import com.nordicid.nurapi.*;
+import magnus_engine.AirTiming;
+import magnus_engine.SensorType;
 
 public class MagnusS2 {
 
@@ -12,26 +14,37 @@ public class MagnusS2 {
      * On-Chip RSSI Filters: sensor tags with on-chip RSSI codes outside
      * of these limits won't respond
      * 
-     * moistureMode: toggle between reading Moisture or On-Chip RSSI
+     * Mode: select which sensor to use
+     * - Moisture and On-Chip RSSI in one read: COMBINED
+     * - Moisture: MOISTURE
+     * - On-Chip RSSI: OCRSSI
      * 
      */
+    static final int COMBINED = 0;
+    static final int MOISTURE = 1;
+    static final int OCRSSI = 2;
     int readAttempts = 10;
     byte ocrssiMin = 3;
     byte ocrssiMax = 31;
-    boolean moistureMode = true;
+    int mode = COMBINED;
     
     /**
      * Shared class objects
      */
     NurApi reader;
+    ReaderShadow shadow;
     NurIRConfig config;
     CustomExchangeParams params;
     NurInventoryExtended invEx;
     NurInventoryExtendedFilter[] filters;
+    AirTiming timing = new AirTiming();
+    long combinedMicros;     // estimated air time of the rounds
+    long alternatingMicros;  // same for reading both codes by alternating modes
 
     public static void main(String[] args) {
         MagnusS2 m2 = new MagnusS2();
         m2.reader = new NurApi();
+        m2.shadow = ReaderShadow.of(m2.reader);
         Common.connectReader(m2.reader);
         Common.initializeReader(m2.reader);
         try {
@@ -47,6 +60,11 @@ public class MagnusS2 {
                 }
                 System.out.println();
             }
+            if (m2.mode == COMBINED) {
+                System.out.println(String.format("Air time (estimated): %.1f ms, %.1f ms alternating Moisture and On-Chip RSSI modes, %.0f%% saved",
+                    m2.combinedMicros / 1000.0, m2.alternatingMicros / 1000.0, 100.0 * (m2.alternatingMicros - m2.combinedMicros) / Math.max(1, m2.alternatingMicros)));
+            }
+            System.out.println("Reader settings sent: " + m2.shadow.sent + ", round trips saved: " + m2.shadow.saved);
             m2.reader.disconnect();
             m2.reader.dispose();
         }
@@ -80,13 +98,14 @@ public class MagnusS2 {
         this.config = new NurIRConfig();
         this.config.irType = NurApi.IRTYPE_EPCDATA;
         this.config.irBank = NurApi.BANK_PASSWD;
-        if (moistureMode) {
-            this.config.irAddr = 0xB;
+        if (mode == OCRSSI) {
+            this.config.irAddr = 0xD;
         }
         else {
-            this.config.irAddr = 0xD;
+            this.config.irAddr = 0xB;
         }
-        this.config.irWordCount = 1;
+        // moisture code (0xB) through on-chip RSSI code (0xD) in combined mode
+        this.config.irWordCount = mode == COMBINED ? 3 : 1;
         this.config.IsRunning = true;
     }
     
@@ -94,7 +113,7 @@ public class MagnusS2 {
         NurTag[] results = { };
         try {
             this.reader.clearIdBuffer();
-            this.reader.setIRConfig(this.config);
+            this.shadow.setIRConfig(this.config);
             NurRespInventory response = this.reader.inventoryExtended(this.invEx, this.filters, this.filters.length);
             if (response.numTagsFound != 0) {
                 this.reader.fetchTags();
@@ -104,7 +123,11 @@ public class MagnusS2 {
                     results[i] = tagStorage.get(i);
                 }
             }
-            this.reader.setIRState(false);
+            this.shadow.setIRState(false);
+            magnus_engine.Select[] selects = SensorType.MAGNUS_S2.selects(ocrssiMin, ocrssiMax);
+            int epcBytes = results.length == 0 ? 12 : results[0].getEpc().length;
+            this.combinedMicros += this.timing.roundMicros(selects, results.length, epcBytes, 3);
+            this.alternatingMicros += 2 * this.timing.roundMicros(selects, results.length, epcBytes, 1);
         }
         catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
@@ -119,7 +142,23 @@ public class MagnusS2 {
             if (dataWords.length == 0) {
                 continue;
             }
-            if (moistureMode) {
+            if (mode == COMBINED) {
+                int moistureCode = dataWords[0];
+                int ocrssiCode = dataWords[2];
+                System.out.println("  - On-Chip RSSI: " + ocrssiCode);
+                String moistureStatus;
+                if (ocrssiCode < 5) {
+                    moistureStatus = "power too low";
+                }
+                else if (ocrssiCode > 21) {
+                    moistureStatus = "power too high";
+                }
+                else {
+                    moistureStatus = moistureCode + " at " + tag.getFreq() + " kHz";
+                }
+                System.out.println("  - Moisture: " + moistureStatus);
+            }
+            else if (mode == MOISTURE) {
                 System.out.println("  - Moisture: " + dataWords[0] + " at " + tag.getFreq() + " kHz");
             }
             else {
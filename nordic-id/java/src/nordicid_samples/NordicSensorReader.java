@@ -0,0 +1,276 @@
+package nordicid_samples;
+
+import com.nordicid.nurapi.*;
+import magnus_engine.*;
+
+// SensorReader on top of NurApi, using Common.connectReader() and Common.initializeReader()
+public class NordicSensorReader implements SensorReader {
+
+    /**
+     * Tag Settings
+     *
+     * Read Attempts: number of tries to read all nearby sensor tags
+     *
+     * Convergence: instead of Read Attempts, read until every tag's sensor codes
+     * are consistent, in 3 to 30 tries (see ConvergenceScheduler)
+     *
+     * Sensor Type: which sensor tag family to read
+     *
+     * Power Control: adjust each antenna's power between rounds so that the tags'
+     * on-chip RSSI codes stay within the limits of valid sensor values
+     *
+     * Settle Time Tuning: find the shortest CW settle time for the reader and sensor
+     * type on the tags in front of it, once, and keep it in Common.settleTimeFile
+     *
+     * Metrics Interval: print each reader's phase latencies and read counts this
+     * often, in seconds, and once more at the end (0 for none, JMX has them anyway)
+     *
+     * Mixed Types: read a population of these families with one inventory per round
+     * (see MixedSensorEngine) instead of Sensor Type, for Read Attempts rounds without
+     * convergence, power control, settle time tuning or the capture file
+     */
+    static int readAttempts = 10;
+    static boolean convergence = true;
+    static SensorType sensorType = SensorType.MAGNUS_S3;
+    static boolean powerControl = true;
+    static boolean settleTimeTuning = true;
+    static int metricsInterval = 10;
+    static SensorType[] mixedTypes = null;
+
+    /**
+     * Shared class objects
+     */
+    final String address;
+    final NurApi reader;
+    final ReaderShadow shadow;
+    final ReaderMetrics metrics;
+    magnus_engine.Select[] selects;  // the current Select sequence and its encodings
+    CustomExchangeParams params;
+    NurInventoryExtended invEx;
+    NurInventoryExtendedFilter[] filters;
+    int settleMicros;
+
+    public NordicSensorReader() {
+        this.address = Common.address;
+        this.reader = new NurApi();
+        this.shadow = ReaderShadow.of(this.reader);
+        this.metrics = ReaderMetrics.of(this.address);
+        Common.connectReader(this.reader);
+        Common.initializeReader(this.reader);
+        setupInventory();
+    }
+
+    // one reader of a fleet, unlike connectReader(reader) failures to connect are thrown
+    public NordicSensorReader(String address) throws Exception {
+        this.address = address;
+        this.reader = new NurApi();
+        this.shadow = ReaderShadow.of(this.reader);
+        this.metrics = ReaderMetrics.of(this.address);
+        try {
+            Common.connectReader(this.reader, address);
+        }
+        catch (Exception e) {
+            ReaderShadow.remove(this.reader);
+            this.reader.dispose();
+            throw e;
+        }
+        try {
+            Common.configureReader(this.reader);
+        }
+        catch (Exception e) {
+            try {
+                this.reader.disconnect();
+            }
+            catch (Exception disconnectError) {
+                // the initialization error is the one passed on
+            }
+            ReaderShadow.remove(this.reader);
+            this.reader.dispose();
+            throw e;
+        }
+        setupInventory();
+    }
+
+    void setupInventory() {
+        // Inventory parameters
+        this.invEx = new NurInventoryExtended();
+        this.invEx.inventorySelState = NurApi.INVSELSTATE_SL;
+        this.invEx.session = Common.session;
+        this.invEx.inventoryTarget = NurApi.INVTARGET_A;
+        this.invEx.Q = Common.q;  // auto
+        this.invEx.rounds = Common.rounds;
+    }
+
+    public static void main(String[] args) {
+        if (mixedTypes != null) {
+            readMixed();
+            return;
+        }
+        SensorReader reader = Common.capture(new NordicSensorReader(), sensorType);
+        ReadingSink sink = Common.readingSink(Common.openReadingLog());
+        ConvergenceScheduler schedule = convergence ? new ConvergenceScheduler(sensorType) : null;
+        SensorEngine engine = new SensorEngine(reader, sensorType, schedule == null ? sink : ReadingSink.tee(sink, schedule));
+        if (settleTimeTuning) {
+            engine.settleMicros = Common.tuneSettleTime(reader, sensorType);
+        }
+        if (powerControl) {
+            engine.powerControl = new PowerController(sensorType, Common.power, Common.antennas);
+        }
+        MetricsReporter metrics = MetricsReporter.start(metricsInterval);
+        try {
+            for (int i = 1; schedule == null ? i <= readAttempts : schedule.next(); i++) {
+                Common.println("Read Attempt #" + i);
+                if (engine.readRound() == 0) {
+                    Common.println("No tag(s) found");
+                }
+                Common.println("");
+            }
+            if (schedule != null) {
+                Common.println("Reading cycle: " + schedule.attempts + " read attempt(s), " + schedule.roundPending + " tag(s) not converged, "
+                    + schedule.roundUnreadable + " without valid readings");
+            }
+            reader.close();
+            if (metrics != null) {
+                metrics.close();
+            }
+            sink.close();
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    // the rounds with a MixedSensorEngine
+    static void readMixed() {
+        SensorReader reader = new NordicSensorReader();
+        ReadingSink sink = Common.readingSink(Common.openReadingLog());
+        MixedSensorEngine engine = new MixedSensorEngine(reader, mixedTypes, sink);
+        MetricsReporter metrics = MetricsReporter.start(metricsInterval);
+        try {
+            for (int i = 1; i <= readAttempts; i++) {
+                Common.println("Read Attempt #" + i);
+                if (engine.readRound() == 0) {
+                    Common.println("No tag(s) found");
+                }
+                Common.println("");
+            }
+            Common.println("Tag reads: " + engine.tagReads + ", TID reads: " + engine.tidReads + ", other tags: " + engine.unknownTags);
+            reader.close();
+            if (metrics != null) {
+                metrics.close();
+            }
+            sink.close();
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    public String name() {
+        return this.address;
+    }
+
+    public void select(magnus_engine.Select[] selects, int settleMicros) {
+        if (selects == this.selects && (settleMicros > 0) == (this.settleMicros > 0)) {
+            // the sensor types' sequences are shared, the same one again needs no new encoding
+            this.settleMicros = settleMicros;
+            return;
+        }
+        // Selects which require CW must occur first, they are sent as a custom exchange
+        // followed by the delay, the remaining ones go with the inventory
+        int first = 0;
+        this.params = null;
+        if (settleMicros > 0 && selects.length > 0) {
+            this.params = Common.customExchangeSelects.compile(selects[0]);
+            first = 1;
+        }
+        this.filters = Common.inventorySelects.compile(selects, first, new NurInventoryExtendedFilter[selects.length - first]);
+        this.selects = selects;
+        this.settleMicros = settleMicros;
+    }
+
+    public TagRead[] inventory(int bank, int address, int length) throws Exception {
+        // Read command parameters
+        NurIRConfig config = new NurIRConfig();
+        config.irType = NurApi.IRTYPE_EPCDATA;
+        config.irBank = bank;
+        config.irAddr = address;
+        config.irWordCount = length;
+        config.IsRunning = true;
+        TagRead[] results = { };
+        try {
+            long start = System.nanoTime();
+            this.shadow.setIRState(false);
+            if (this.params != null) {
+                this.reader.inventory(1, 1, NurApi.SESSION_S0);
+            }
+            this.reader.clearIdBuffer();
+            this.shadow.setIRConfig(config);
+            if (this.params != null) {
+                this.shadow.setExtendedCarrier(true);
+                this.reader.customExchange(NurApi.BANK_USER, 0, 0, new byte[] { }, this.params);  // enable sensors
+                Thread.sleep((this.settleMicros + 999) / 1000);  // delay to provide CW while the sensors run
+            }
+            this.metrics.time(ReaderMetrics.SELECT, start);
+            start = System.nanoTime();
+            NurRespInventory response = this.reader.inventoryExtended(this.invEx, this.filters, this.filters.length);
+            this.metrics.time(ReaderMetrics.INVENTORY, start);
+            if (this.params != null) {
+                this.shadow.setExtendedCarrier(false);
+            }
+            if (response.numTagsFound != 0) {
+                start = System.nanoTime();
+                this.reader.fetchTags();
+                NurTagStorage tagStorage = this.reader.getStorage();
+                results = new TagRead[tagStorage.size()];
+                for (int i = 0; i < results.length; i++) {
+                    NurTag tag = tagStorage.get(i);
+                    results[i] = new TagRead(tag.getEpc(), tag.getAntennaId() + 1, tag.getFreq(), tag.getRssi(), tag.getIrData(), System.currentTimeMillis(), tag);
+                }
+                this.metrics.time(ReaderMetrics.FETCH, start);
+            }
+            this.shadow.setIRState(false);
+        }
+        finally {
+            if (this.params != null) {
+                this.shadow.setExtendedCarrier(false);
+            }
+        }
+        return results;
+    }
+
+    public short[] readMemBlock(TagRead tag, int bank, int address, int length) throws Exception {
+        // singulation narrows the antennas down to the tag's one, they are set back
+        // unless the reader failed, which the fleet answers with a reconnect
+        short[] words;
+        try {
+            words = Common.readTagMemory((NurTag)tag.source, bank, address, length, 3);
+        }
+        catch (RuntimeException e) {
+            Common.setAntennas(this.reader, Common.antennas);
+            throw e;
+        }
+        Common.setAntennas(this.reader, Common.antennas);
+        return words;
+    }
+
+    public void setPower(int antenna, double dBm) throws Exception {
+        this.shadow.setAntennaPower(antenna, Common.txLevel(dBm));
+    }
+
+    public void close() {
+        System.out.println("Reader settings sent: " + this.shadow.sent + ", round trips saved: " + this.shadow.saved);
+        try {
+            this.reader.disconnect();
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+        ReaderShadow.remove(this.reader);
+        this.reader.dispose();
+    }
+}
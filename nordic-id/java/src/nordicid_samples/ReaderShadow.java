@@ -0,0 +1,136 @@
+package nordicid_samples;
+
+import java.util.Arrays;
+import java.util.WeakHashMap;
+import com.nordicid.nurapi.*;
+
+// shadow copy of the settings made on a reader connection, so that switching between
+// sensor reading and memory reading only sends the settings which actually change
+//
+// Every setting sent is one serial/TCP round trip. The shadow only knows what was set
+// through it, so the inventory read, extended carrier and antenna settings of a
+// shadowed reader should all go through it. If a setting fails the reader's state is
+// unknown and the shadow is cleared.
+public class ReaderShadow {
+
+    static final WeakHashMap<NurApi, ReaderShadow> shadows = new WeakHashMap<>();
+
+    final NurApi reader;
+
+    // known reader state, null if unknown
+    NurIRConfig irConfig;
+    Boolean irRunning;
+    Boolean extendedCarrier;
+    Integer antennaMask;
+    int[] antennaPower;
+
+    // round trips since the shadow was created
+    public long sent;
+    public long saved;
+
+    ReaderShadow(NurApi reader) {
+        this.reader = reader;
+    }
+
+    // the shadow of a reader connection, created on first use
+    public static synchronized ReaderShadow of(NurApi reader) {
+        ReaderShadow shadow = shadows.get(reader);
+        if (shadow == null) {
+            shadow = new ReaderShadow(reader);
+            shadows.put(reader, shadow);
+        }
+        return shadow;
+    }
+
+    // forget the shadow of a closed reader connection; the shadow refers to its reader,
+    // so the weak map alone would keep both
+    public static synchronized void remove(NurApi reader) {
+        shadows.remove(reader);
+    }
+
+    // configure the inventory read, only turning it on or off if just that differs
+    public synchronized void setIRConfig(NurIRConfig config) throws Exception {
+        if (sameIRConfig(config)) {
+            setIRState(config.IsRunning);
+            return;
+        }
+        this.irConfig = null;
+        this.irRunning = null;
+        this.reader.setIRConfig(config);
+        this.irConfig = config;
+        this.irRunning = config.IsRunning;
+        this.sent++;
+    }
+
+    public synchronized void setIRState(boolean running) throws Exception {
+        if (this.irRunning != null && this.irRunning == running) {
+            this.saved++;
+            return;
+        }
+        this.irRunning = null;
+        this.reader.setIRState(running);
+        this.irRunning = running;
+        this.sent++;
+    }
+
+    public synchronized void setExtendedCarrier(boolean on) throws Exception {
+        if (this.extendedCarrier != null && this.extendedCarrier == on) {
+            this.saved++;
+            return;
+        }
+        this.extendedCarrier = null;
+        this.reader.setExtendedCarrier(on);
+        this.extendedCarrier = on;
+        this.sent++;
+    }
+
+    // both antenna masks, two round trips
+    public synchronized void setAntennaMask(int mask) throws Exception {
+        if (this.antennaMask != null && this.antennaMask == mask) {
+            this.saved += 2;
+            return;
+        }
+        this.antennaMask = null;
+        this.reader.setSetupAntennaMask(mask);
+        this.reader.setSetupAntennaMaskEx(mask);
+        this.antennaMask = mask;
+        this.sent += 2;
+    }
+
+    // TX level of one antenna, the other antennas keep theirs (-1 for the global TX level)
+    public synchronized void setAntennaPower(int antenna, int txLevel) throws Exception {
+        int[] levels = new int[32];
+        if (this.antennaPower == null) {
+            Arrays.fill(levels, -1);
+        }
+        else {
+            System.arraycopy(this.antennaPower, 0, levels, 0, levels.length);
+        }
+        levels[antenna - 1] = txLevel;
+        if (Arrays.equals(levels, this.antennaPower)) {
+            this.saved++;
+            return;
+        }
+        this.antennaPower = null;
+        this.reader.setPerAntennaPowerEx(levels);
+        this.antennaPower = levels;
+        this.sent++;
+    }
+
+    // forget the reader's state, e.g. after a reconnect
+    public synchronized void invalidate() {
+        this.irConfig = null;
+        this.irRunning = null;
+        this.extendedCarrier = null;
+        this.antennaMask = null;
+        this.antennaPower = null;
+    }
+
+    boolean sameIRConfig(NurIRConfig config) {
+        return this.irConfig != null
+            && this.irConfig.irType == config.irType
+            && this.irConfig.irBank == config.irBank
+            && this.irConfig.irAddr == config.irAddr
+            && this.irConfig.irWordCount == config.irWordCount;
+    }
+}
@@ -0,0 +1,253 @@
+package nordicid_samples;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import com.nordicid.nurapi.*;
+import magnus_engine.CalibrationStore;
+import magnus_engine.ReadPipeline;
+import magnus_engine.ReadingSink;
+import magnus_engine.SensorType;
+import magnus_engine.TagRead;
+
+// reads sensor tags with an extended inventory stream, handing every tag reported by
+// the stream's events to a bounded queue which worker threads decode and calibrate
+//
+// There is no fetchTags() round trip and no idle gap between inventory rounds. Tags
+// are taken out of the tag storage as the events arrive, so the storage never grows
+// and is never copied as a whole.
+//
+// The stream can't hold CW between a custom exchange and the inventory, the sensors
+// are enabled by the stream's first select instead, with only the reader's own delay
+// before the inventory. That is enough for the moisture and On-Chip RSSI codes but
+// not for a temperature measurement, so the stream reads Magnus S2 by default;
+// temperature codes of Magnus S3 and Xerxes come out as "bad read", use the
+// NordicSensorReader sample (DemoSensorEngine) for those.
+public class SensorStream implements NurApiListener {
+
+    /**
+     * Streaming Settings
+     *
+     * Sensor Type: which sensor tag family to read, one without a temperature
+     * sensor (see above)
+     *
+     * Run Time: how long to stream, in seconds
+     *
+     * Queue Capacity: tag reads buffered between the reader and the workers,
+     * reads arriving while it is full are dropped and counted
+     *
+     * Worker Threads: number of threads decoding and calibrating tag reads
+     *
+     * Calibration Interval: how often to pause the stream to read the calibration
+     * of new tags, in milliseconds
+     */
+    static SensorType sensorType = SensorType.MAGNUS_S2;
+    static int runTime = 30;
+    static int queueCapacity = 4096;
+    static int workerThreads = 2;
+    static int calibrationInterval = 2000;
+
+    /**
+     * Restart Policy
+     *
+     * Restart Stream: restart the stream when the reader stops it on its own (the
+     * reader ends a stream after its stream timeout)
+     *
+     * Stream Timeout: restart the stream when no event arrived for this long,
+     * in milliseconds
+     *
+     * Restart Delay: wait before restarting, doubled after each restart without
+     * tag reads in between, in milliseconds
+     *
+     * Max Restarts: give up after this many restarts, -1 to never give up
+     */
+    static boolean restartStream = true;
+    static int streamTimeout = 5000;
+    static int restartDelay = 100;
+    static int maxRestarts = -1;
+
+    /**
+     * On-Chip RSSI Filters: sensor tags with on-chip RSSI codes outside
+     * of these limits won't respond
+     */
+    static byte ocrssiMin = 3;
+    static byte ocrssiMax = 31;
+
+    /**
+     * Shared class objects
+     */
+    NurApi reader;
+    ReaderShadow shadow;
+    ReadPipeline pipeline;
+    NurInventoryExtended invEx;
+    NurInventoryExtendedFilter[] filters;
+    NurIRConfig config;
+    final Object lock = new Object();
+    volatile boolean streaming;
+    volatile boolean stopped;
+    volatile long lastEvent;
+    int restarts;
+    int delay = restartDelay;
+    long offeredAtRestart = -1;
+
+    public static void main(String[] args) {
+        if (sensorType.hasTemperature()) {
+            System.out.println("Error: the stream can't provide the settle time of the " + sensorType
+                + " temperature sensor, its temperatures will read as bad, use DemoSensorEngine");
+        }
+        SensorStream stream = new SensorStream();
+        stream.reader = new NurApi();
+        stream.shadow = ReaderShadow.of(stream.reader);
+        Common.connectReader(stream.reader);
+        Common.initializeReader(stream.reader);
+        CalibrationStore calibrationStore = Common.openCalibrationStore();
+        ReadingSink sink = Common.readingSink(Common.openReadingLog());
+        try {
+            stream.pipeline = new ReadPipeline(sensorType, sink, queueCapacity);
+            stream.pipeline.calibrationStore = calibrationStore;
+            stream.pipeline.start(workerThreads);
+            stream.setupSensorReading();
+            stream.reader.setListener(stream);
+
+            long end = System.currentTimeMillis() + runTime * 1000L;
+            long nextCalibration = System.currentTimeMillis() + calibrationInterval;
+            stream.startStream();
+            while (System.currentTimeMillis() < end) {
+                synchronized (stream.lock) {
+                    stream.lock.wait(100);
+                }
+                if (stream.stopped || System.currentTimeMillis() - stream.lastEvent > streamTimeout) {
+                    if (!stream.restart()) {
+                        break;
+                    }
+                }
+                if (System.currentTimeMillis() >= nextCalibration) {
+                    // tags can't be singulated while streaming, read new calibrations in between
+                    Set<String> uncalibrated = stream.pipeline.takeUncalibrated();
+                    if (!uncalibrated.isEmpty()) {
+                        stream.stopStream();
+                        HashMap<String, short[]> calibrations = Common.readCalibrationBulk(stream.reader, calibrationStore, sensorType, uncalibrated);
+                        for (Map.Entry<String, short[]> entry: calibrations.entrySet()) {
+                            stream.pipeline.addCalibration(entry.getKey(), entry.getValue());
+                        }
+                        stream.startStream();
+                    }
+                    Common.println("Tag reads: " + stream.pipeline.offered() + ", decoded: " + stream.pipeline.processed()
+                        + ", dropped: " + stream.pipeline.dropped() + ", queued: " + stream.pipeline.queued() + ", restarts: " + stream.restarts);
+                    nextCalibration = System.currentTimeMillis() + calibrationInterval;
+                }
+            }
+
+            // shut down
+            stream.stopStream();
+            stream.pipeline.stop();
+            if (calibrationStore != null) {
+                calibrationStore.close();
+            }
+            sink.close();
+            System.out.println("Reader settings sent: " + stream.shadow.sent + ", round trips saved: " + stream.shadow.saved);
+            stream.reader.disconnect();
+            stream.reader.dispose();
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    void setupSensorReading() {
+        // Inventory parameters
+        this.invEx = new NurInventoryExtended();
+        this.invEx.inventorySelState = NurApi.INVSELSTATE_SL;
+        this.invEx.session = Common.session;
+        this.invEx.inventoryTarget = NurApi.INVTARGET_A;
+        this.invEx.Q = Common.q;  // auto
+        this.invEx.rounds = Common.rounds;
+        // sensor activation commands and filters, the activation goes first
+        magnus_engine.Select[] selects = sensorType.selects(ocrssiMin, ocrssiMax);
+        this.filters = Common.inventorySelects.compile(selects, 0, new NurInventoryExtendedFilter[selects.length]);
+        // Read command parameters
+        this.config = new NurIRConfig();
+        this.config.irType = NurApi.IRTYPE_EPCDATA;
+        this.config.irBank = NurApi.BANK_PASSWD;
+        this.config.irAddr = sensorType.dataAddress;
+        this.config.irWordCount = sensorType.dataLength;
+        this.config.IsRunning = true;
+    }
+
+    void startStream() throws Exception {
+        this.reader.clearIdBuffer();
+        this.shadow.setIRConfig(this.config);
+        this.stopped = false;
+        this.lastEvent = System.currentTimeMillis();
+        this.streaming = true;
+        this.reader.startInventoryExtendedStream(this.invEx, this.filters);
+    }
+
+    void stopStream() throws Exception {
+        this.streaming = false;
+        if (this.reader.isInventoryExtendedStreamRunning()) {
+            this.reader.stopInventoryExtendedStream();
+        }
+        this.shadow.setIRState(false);
+    }
+
+    // restart the stream according to the restart policy, false to give up
+    boolean restart() throws Exception {
+        if (!restartStream || (maxRestarts >= 0 && this.restarts >= maxRestarts)) {
+            System.out.println("Error: inventory stream stopped");
+            return false;
+        }
+        // back off while restarts bring no tag reads
+        long offered = this.pipeline.offered();
+        this.delay = offered == this.offeredAtRestart ? Math.min(this.delay * 2, streamTimeout) : restartDelay;
+        this.offeredAtRestart = offered;
+        stopStream();
+        Thread.sleep(this.delay);
+        startStream();
+        this.restarts++;
+        return true;
+    }
+
+    // called from NurApi's notification thread, hands the new tags over and empties the storage
+    public void inventoryExtendedStreamEvent(NurEventInventory event) {
+        this.lastEvent = System.currentTimeMillis();
+        if (event.tagsAdded > 0) {
+            NurTagStorage tagStorage = this.reader.getStorage();
+            synchronized (tagStorage) {
+                for (int i = 0; i < tagStorage.size(); i++) {
+                    NurTag tag = tagStorage.get(i);
+                    this.pipeline.offer(new TagRead(tag.getEpc(), tag.getAntennaId() + 1, tag.getFreq(), tag.getRssi(), tag.getIrData(), this.lastEvent, tag));
+                }
+                tagStorage.clear();
+            }
+        }
+        if (event.stopped && this.streaming) {
+            this.stopped = true;
+            synchronized (this.lock) {
+                this.lock.notify();
+            }
+        }
+    }
+
+    public void logEvent(int level, String text) { }
+    public void connectedEvent() { }
+    public void disconnectedEvent() { }
+    public void bootEvent(String event) { }
+    public void inventoryStreamEvent(NurEventInventory event) { }
+    public void IOChangeEvent(NurEventIOChange event) { }
+    public void traceTagEvent(NurEventTraceTag event) { }
+    public void triggeredReadEvent(NurEventTriggeredRead event) { }
+    public void frequencyHopEvent(NurEventFrequencyHop event) { }
+    public void debugMessageEvent(String event) { }
+    public void programmingProgressEvent(NurEventProgrammingProgress event) { }
+    public void deviceSearchEvent(NurEventDeviceInfo event) { }
+    public void clientConnectedEvent(NurEventClientInfo event) { }
+    public void clientDisconnectedEvent(NurEventClientInfo event) { }
+    public void nxpEasAlarmEvent(NurEventNxpAlarm event) { }
+    public void epcEnumEvent(NurEventEpcEnum event) { }
+    public void autotuneEvent(NurEventAutotune event) { }
+    public void tagTrackingScanEvent(NurEventTagTrackingData event) { }
+    public void tagTrackingChangeEvent(NurEventTagTrackingChange event) { }
+}
@@ -1,7 +1,13 @@
 package nordicid_samples;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import com.nordicid.nurapi.*;
+import magnus_engine.CalibrationStore;
+import magnus_engine.EpcTable;
+import magnus_engine.SensorType;
+import magnus_engine.TagRead;
 
 public class Xerxes {
 
@@ -12,26 +18,40 @@ public class Xerxes {
      *
      * On-Chip RSSI Filters: sensor tags with on-chip RSSI codes outside
      * of these limits won't respond
+     *
+     * Bulk Calibration: read the calibration of all new tags in one inventory
+     * instead of singulating them one at a time
+     *
+     * Bulk Calibration Share: smallest share of a read attempt's tags needing a
+     * calibration for the bulk read, fewer new tags are singulated one at a time
      */
     int readAttempts = 10;
     byte ocrssiMin = 3;
     byte ocrssiMax = 31;
+    boolean bulkCalibration = true;
+    double bulkCalibrationShare = 0.25;
     
     /**
      * Shared class objects
      */
     NurApi reader;
+    ReaderShadow shadow;
     NurIRConfig config;
     CustomExchangeParams params;
     NurInventoryExtended invEx;
     NurInventoryExtendedFilter[] filters;
-    HashMap<String, TemperatureCalibration> lookupCalibration = new HashMap<>();
+    EpcTable<TemperatureCalibration> lookupCalibration = new EpcTable<>();
+    CalibrationStore calibrationStore;
+    int settleMicros;
 
     public static void main(String[] args) {
         Xerxes x1 = new Xerxes();
         x1.reader = new NurApi();
+        x1.shadow = ReaderShadow.of(x1.reader);
         Common.connectReader(x1.reader);
         Common.initializeReader(x1.reader);
+        x1.calibrationStore = Common.openCalibrationStore();
+        x1.settleMicros = Common.settleMicros(Common.address, SensorType.XERXES);  // tuned by NordicSensorReader
         try {
             x1.setupSensorReading();
             for (int i = 1; i <= x1.readAttempts; i++) {
@@ -41,13 +61,16 @@ public class Xerxes {
                     System.out.println("No tag(s) found\n");
                     continue;
                 }
+                if (x1.bulkCalibration) {
+                    x1.readNewCalibrations(results);
+                }
                 for (NurTag tag: results) {
-                    // retrieve calibration if unknown
-                    if (!x1.lookupCalibration.containsKey(tag.getEpcString())) {
+                    // retrieve calibration if unknown (or missed by the bulk calibration read)
+                    if (x1.lookupCalibration.get(tag.getEpc()) == null) {
                         try {
-                            short[] calibrationWords = Common.readMemBlockByEpc(tag, NurApi.BANK_USER, 0x12, 4);
+                            short[] calibrationWords = Common.readCalibration(x1.calibrationStore, tag, SensorType.XERXES);
                             TemperatureCalibration cal = new TemperatureCalibration(calibrationWords);
-                            x1.lookupCalibration.put(tag.getEpcString(), cal);
+                            x1.lookupCalibration.put(tag.getEpc(), cal);
                         }
                         catch (RuntimeException e) { }
                     }
@@ -55,6 +78,10 @@ public class Xerxes {
                 }
                 System.out.println();
             }
+            if (x1.calibrationStore != null) {
+                x1.calibrationStore.close();
+            }
+            System.out.println("Reader settings sent: " + x1.shadow.sent + ", round trips saved: " + x1.shadow.saved);
             x1.reader.disconnect();
             x1.reader.dispose();
         }
@@ -97,15 +124,15 @@ public class Xerxes {
     NurTag[] readSensors() {
         NurTag[] results = { };
         try {
-            this.reader.setIRState(false);
+            this.shadow.setIRState(false);
             this.reader.inventory(1, 1, NurApi.SESSION_S0);
             this.reader.clearIdBuffer();
-            this.reader.setIRConfig(this.config);
-            this.reader.setExtendedCarrier(true);
+            this.shadow.setIRConfig(this.config);
+            this.shadow.setExtendedCarrier(true);
             this.reader.customExchange(NurApi.BANK_USER, 0, 0, new byte[] { }, this.params);  // enable Temperature and Backport Sensors
-            Thread.sleep(9);  // delay to provide CW
+            Thread.sleep((this.settleMicros + 999) / 1000);  // delay to provide CW
             NurRespInventory response = this.reader.inventoryExtended(this.invEx, this.filters, this.filters.length);
-            this.reader.setExtendedCarrier(false); 
+            this.shadow.setExtendedCarrier(false); 
             if (response.numTagsFound != 0) {
                 this.reader.fetchTags();
                 NurTagStorage tagStorage = this.reader.getStorage();
@@ -114,13 +141,13 @@ public class Xerxes {
                     results[i] = tagStorage.get(i);
                 }
             }
-            this.reader.setIRState(false);
+            this.shadow.setIRState(false);
         }
         catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
         }
         try {
-            this.reader.setExtendedCarrier(false); 
+            this.shadow.setExtendedCarrier(false); 
         }
         catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
@@ -128,6 +155,41 @@ public class Xerxes {
         return results;
     }
     
+    // read, decode and keep the calibration of all tags not seen before at once
+    void readNewCalibrations(NurTag[] results) {
+        HashSet<String> uncalibrated = new HashSet<>();
+        for (NurTag tag: results) {
+            // tags without sensor data weren't read this time, they are tried again
+            // once they are
+            byte[] irData = tag.getIrData();
+            if (irData == null || irData.length == 0 || this.lookupCalibration.get(tag.getEpc()) != null) {
+                continue;
+            }
+            // only tags with a temperature code to calibrate, see printSensorResults()
+            short[] dataWords = Common.convertByteArrayToShortArray(irData);
+            int ocrssiCode = dataWords[3];
+            int temperatureCode = dataWords[4];
+            if (ocrssiCode < 5 || ocrssiCode > 18 || temperatureCode < 1000 || 4000 < temperatureCode) {
+                continue;
+            }
+            short[] calibrationWords = this.calibrationStore == null ? null : this.calibrationStore.wordsByEpc(tag.getEpc());
+            if (calibrationWords != null) {
+                this.lookupCalibration.put(tag.getEpc(), new TemperatureCalibration(calibrationWords));
+            }
+            else {
+                uncalibrated.add(tag.getEpcString());
+            }
+        }
+        // a few new tags are cheaper to singulate than up to three more inventories
+        if (uncalibrated.isEmpty() || uncalibrated.size() < this.bulkCalibrationShare * results.length) {
+            return;
+        }
+        HashMap<String, short[]> calibrations = Common.readCalibrationBulk(this.reader, this.calibrationStore, SensorType.XERXES, uncalibrated);
+        for (Map.Entry<String, short[]> entry: calibrations.entrySet()) {
+            this.lookupCalibration.put(TagRead.fromHex(entry.getKey()), new TemperatureCalibration(entry.getValue()));
+        }
+    }
+
     void printSensorResults(NurTag tag) {
         System.out.println("* EPC: " + tag.getEpcString());
         short[] dataWords = Common.convertByteArrayToShortArray(tag.getIrData());
@@ -159,6 +221,7 @@ public class Xerxes {
         // Temperature Sensor
         
         // Temperature Sensor
+        TemperatureCalibration cal = this.lookupCalibration.get(tag.getEpc());
         String temperatureStatus;
         if (ocrssiCode < 5) {
             temperatureStatus = "power too low";
@@ -169,11 +232,10 @@ public class Xerxes {
         else if (temperatureCode < 1000 || 4000 < temperatureCode){
             temperatureStatus = "bad read";
         }
-        else if (!this.lookupCalibration.containsKey(tag.getEpcString())) {
+        else if (cal == null) {
             temperatureStatus = "failed to read calibration";
         }
         else {
-            TemperatureCalibration cal = this.lookupCalibration.get(tag.getEpcString());
             if (cal.valid) {
                 double temperatureValue = cal.slope * temperatureCode + cal.offset;
                 temperatureStatus = String.format("%.02f degC", temperatureValue);
@@ -208,7 +270,7 @@ public class Xerxes {
         else {
             backport2Status = backport2Code + "";
         }
-        System.out.println("  - Backport 1: " + backport2Status);
+        System.out.println("  - Backport 2: " + backport2Status);
     }
     
     static class TemperatureCalibration {
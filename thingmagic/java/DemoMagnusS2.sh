@@ -1,7 +1,7 @@
 #!/bin/bash
 clear
 mkdir -p ./build
-javac -cp .:./lib/* -d ./build src/thingmagic_samples/Common.java src/thingmagic_samples/MagnusS2.java
+javac -cp .:./lib/* -d ./build ../../engine/java/src/magnus_engine/*.java src/thingmagic_samples/Common.java src/thingmagic_samples/ReaderShadow.java src/thingmagic_samples/MagnusS2.java
 if [ $? -eq 0 ]; then
     java -cp ./lib/*:./build thingmagic_samples.MagnusS2
 fi
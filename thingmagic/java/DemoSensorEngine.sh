@@ -0,0 +1,8 @@
+#!/bin/bash
+clear
+mkdir -p ./build
+javac -cp .:./lib/* -d ./build ../../engine/java/src/magnus_engine/*.java src/thingmagic_samples/Common.java src/thingmagic_samples/ReaderShadow.java src/thingmagic_samples/ThingMagicSensorReader.java
+if [ $? -eq 0 ]; then
+    java -cp ./lib/*:./build thingmagic_samples.ThingMagicSensorReader
+fi
+read -p "Press any key to continue . . ."
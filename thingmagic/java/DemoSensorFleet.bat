@@ -0,0 +1,8 @@
+echo off
+cls
+if not exist ".\build" mkdir .\build
+javac -cp .;./lib/* -d ./build ../../engine/java/src/magnus_engine/*.java src/thingmagic_samples/Common.java src/thingmagic_samples/ReaderShadow.java src/thingmagic_samples/ThingMagicSensorReader.java src/thingmagic_samples/SensorFleet.java
+if %ERRORLEVEL% EQU 0 (
+    java -cp ./lib/*;./build thingmagic_samples.SensorFleet
+)
+pause
@@ -1,6 +1,23 @@
 package thingmagic_samples;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import com.thingmagic.*;
+import magnus_engine.BatchingWriter;
+import magnus_engine.CalibrationStore;
+import magnus_engine.CaptureReader;
+import magnus_engine.ConsoleSink;
+import magnus_engine.ReaderMetrics;
+import magnus_engine.ReadingLog;
+import magnus_engine.ReadingSink;
+import magnus_engine.SelectCompiler;
+import magnus_engine.SensorReader;
+import magnus_engine.SensorType;
+import magnus_engine.SettleTimeTuner;
+import magnus_engine.SettleTimes;
+import magnus_engine.TagRead;
 
 public class Common{
 
@@ -23,12 +40,32 @@ public class Common{
      * Session: specify which RFID Session Flag to use
      * - S0: smaller tag populations
      * - S1: larger tag populations (along with filtering by OCRSSI)
+     *
+     * Calibration File: keeps the temperature calibration of every tag
+     * across restarts (set to 'null' to read it from the tags every run)
+     *
+     * History Directory: keeps every reading of the engine based samples in an
+     * append-only log (set to 'null' to keep no history)
+     *
+     * Settle Time File: keeps the CW settle time tuned for each reader and sensor
+     * type (set to 'null' to use the sensor types' defaults)
+     *
+     * Output File: also write every reading of the engine based samples to this file,
+     * as JSON Lines (.jsonl), CSV (.csv) or compact binary (.bin) (set to 'null' for none)
+     *
+     * Capture File: record the raw tag reads of the engine based samples for
+     * ReplayReader (set to 'null' for none)
      */
     static String uri = "tmr:///COM19";
     static int power = 20;
     public static int[] antennas = {1};
     static Reader.Region region = Reader.Region.NA;
     public static Gen2.Session session = Gen2.Session.S0;
+    public static String calibrationFile = "calibration.dat";
+    public static String historyDirectory = "history";
+    public static String settleTimeFile = "settle-times.properties";
+    public static String outputFile = null;
+    public static String captureFile = null;
 
     /**
      * Reader Performance Settings
@@ -39,12 +76,37 @@ public class Common{
     static Gen2.TagEncoding encoding = Gen2.TagEncoding.M4;
     public static long readTime = 75 * antennas.length;  // milliseconds
 
+    // metrics of the reader connections, for the memory reads which only get the connection
+    static final WeakHashMap<Reader, ReaderMetrics> metrics = new WeakHashMap<>();
+
+    // Gen2 Selects of the engine's Select sequences, created once for all readers
+    public static final SelectCompiler<Gen2.Select> gen2Selects = new SelectCompiler<>(new SelectCompiler.Encoder<Gen2.Select>() {
+        public Gen2.Select encode(magnus_engine.Select select) {
+            return createGen2Select(select.target, select.action, gen2Bank(select.bank), select.pointer, select.length, select.mask);
+        }
+    });
+
+    // Gen2 bank of an engine Select or memory read bank
+    public static Gen2.Bank gen2Bank(int bank) {
+        switch (bank) {
+            case magnus_engine.Select.BANK_RESERVED:
+                return Gen2.Bank.RESERVED;
+            case magnus_engine.Select.BANK_EPC:
+                return Gen2.Bank.EPC;
+            case magnus_engine.Select.BANK_TID:
+                return Gen2.Bank.TID;
+            case magnus_engine.Select.BANK_USER:
+                return Gen2.Bank.USER;
+            default:
+                throw new IllegalArgumentException("invalid bank value");
+        }
+    }
+
     // connect to and initialize reader
     public static Reader establishReader() {
         Reader reader = null;
         try {
-            reader = Reader.create(uri);
-            reader.connect();
+            reader = connectReader(uri);
         }
         catch (ReaderException e) {
             System.out.println("Error: could not connect to reader at " + uri);
@@ -52,20 +114,7 @@ public class Common{
             System.exit(-1);
         }
         try {
-            reader.paramSet(TMConstants.TMR_PARAM_RADIO_READPOWER, power * 100);
-            // reader.paramSet(TMConstants.TMR_PARAM_RADIO_WRITEPOWER, power * 100);
-            if (region != null) {
-                reader.paramSet(TMConstants.TMR_PARAM_REGION_ID, region);
-            }
-            reader.paramSet(TMConstants.TMR_PARAM_GEN2_BLF, blf);
-            reader.paramSet(TMConstants.TMR_PARAM_GEN2_TAGENCODING, encoding);
-            reader.paramSet(TMConstants.TMR_PARAM_GEN2_SESSION, session);
-            reader.paramSet(TMConstants.TMR_PARAM_GEN2_TARGET, Gen2.Target.A);
-            reader.paramSet(TMConstants.TMR_PARAM_GEN2_TARI, Gen2.Tari.TARI_25US);
-            reader.paramSet(TMConstants.TMR_PARAM_GEN2_SEND_SELECT, true);
-            reader.paramSet(TMConstants.TMR_PARAM_GEN2_Q, new Gen2.DynamicQ());
-            reader.paramSet(TMConstants.TMR_PARAM_GEN2_INITIAL_Q, new Gen2.InitQ());
-            // reader.paramSet(TMConstants.TMR_PARAM_COMMANDTIMEOUT, readTime);
+            initializeReader(reader);
         }
         catch (Exception e) {
             System.out.println("Error: could not initialize reader");
@@ -75,6 +124,48 @@ public class Common{
         return reader;
     }
 
+    // connect to the reader at 'uri', which may be one of many readers of a fleet
+    public static Reader connectReader(String uri) throws ReaderException {
+        Reader reader = Reader.create(uri);
+        try {
+            reader.connect();
+        }
+        catch (ReaderException e) {
+            reader.destroy();
+            throw e;
+        }
+        synchronized (metrics) {
+            metrics.put(reader, ReaderMetrics.of(uri));
+        }
+        return reader;
+    }
+
+    // metrics of a reader connection, by the URI it was connected with
+    public static ReaderMetrics metrics(Reader reader) {
+        synchronized (metrics) {
+            ReaderMetrics readerMetrics = metrics.get(reader);
+            return readerMetrics == null ? ReaderMetrics.of(uri) : readerMetrics;
+        }
+    }
+
+    public static void initializeReader(Reader reader) throws ReaderException {
+        ReaderShadow shadow = ReaderShadow.of(reader);
+        shadow.set(TMConstants.TMR_PARAM_RADIO_READPOWER, power * 100);
+        // reader.paramSet(TMConstants.TMR_PARAM_RADIO_WRITEPOWER, power * 100);
+        if (region != null) {
+            shadow.set(TMConstants.TMR_PARAM_REGION_ID, region);
+        }
+        shadow.set(TMConstants.TMR_PARAM_GEN2_BLF, blf);
+        shadow.set(TMConstants.TMR_PARAM_GEN2_TAGENCODING, encoding);
+        shadow.set(TMConstants.TMR_PARAM_GEN2_SESSION, session);
+        shadow.set(TMConstants.TMR_PARAM_GEN2_TARGET, Gen2.Target.A);
+        shadow.set(TMConstants.TMR_PARAM_GEN2_TARI, Gen2.Tari.TARI_25US);
+        shadow.set(TMConstants.TMR_PARAM_GEN2_SEND_SELECT, true);
+        shadow.set(TMConstants.TMR_PARAM_GEN2_Q, new Gen2.DynamicQ());
+        shadow.set(TMConstants.TMR_PARAM_GEN2_INITIAL_Q, new Gen2.InitQ());
+        // reader.paramSet(TMConstants.TMR_PARAM_COMMANDTIMEOUT, readTime);
+    }
+
     // create an RFID Gen2 Select Command with custom parameters
     public static Gen2.Select createGen2Select(int target, int action, Gen2.Bank bank, int pointer, int length, byte[] mask) {
         Gen2.Select select = new Gen2.Select(false, bank, pointer, length, mask);
@@ -130,13 +221,31 @@ public class Common{
 
     // read multiple registers from one tag singulated by its EPC
     public static short[] readMemBlockByEpc(Reader reader, TagReadData tag, Gen2.Bank bank, int address, int length, int attempts){
+        try {
+            return readTagMemory(reader, tag, bank, address, length, attempts);
+        }
+        catch (ReaderException e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    // like readMemBlockByEpc(), but reader failures are thrown rather than ending the
+    // program, for one reader of a fleet
+    public static short[] readTagMemory(Reader reader, TagReadData tag, Gen2.Bank bank, int address, int length, int attempts) throws ReaderException {
         byte[] epcBytes = tag.getTag().epcBytes();
         Gen2.Select epcFilter = createGen2Select(4, 0, Gen2.Bank.EPC, 0x20, epcBytes.length * 8, epcBytes);
         Gen2.ReadData operation = new Gen2.ReadData(bank, address, (byte)length);
         SimpleReadPlan config = new SimpleReadPlan(new int[] { tag.getAntenna() }, TagProtocol.GEN2, epcFilter, operation, 1000);
         short[] values = null;
+        long start = System.nanoTime();
         try {
-            reader.paramSet(TMConstants.TMR_PARAM_READ_PLAN, config);
+            // optimize settings for reading an individual tag's memory
+            ReaderShadow shadow = ReaderShadow.of(reader);
+            shadow.singulatedRead();
+            shadow.set(TMConstants.TMR_PARAM_READ_PLAN, config);
             for (int i = 0; i < attempts; i++) {
                 if (values != null) {
                     break;
@@ -153,10 +262,8 @@ public class Common{
                 }
             }
         }
-        catch (ReaderException e) {
-            System.out.println("Error: " + e.getMessage());
-            e.printStackTrace(System.out);
-            System.exit(-1);
+        finally {
+            metrics(reader).time(ReaderMetrics.CALIBRATION, start);
         }
         if (values == null) {
             throw new RuntimeException("Tag not found");
@@ -170,6 +277,196 @@ public class Common{
         return values;
     }
 
+    // open the calibration store, null if disabled or it can't be opened
+    public static CalibrationStore openCalibrationStore() {
+        if (calibrationFile == null) {
+            return null;
+        }
+        try {
+            return CalibrationStore.open(calibrationFile);
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not open calibration file " + calibrationFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // open the reading history, null if disabled or it can't be opened
+    public static ReadingLog openReadingLog() {
+        if (historyDirectory == null) {
+            return null;
+        }
+        try {
+            return ReadingLog.open(historyDirectory);
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not open history directory " + historyDirectory + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // open the tuned settle times, null if disabled or they can't be read
+    public static SettleTimes openSettleTimes() {
+        if (settleTimeFile == null) {
+            return null;
+        }
+        try {
+            return SettleTimes.load(settleTimeFile);
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not read settle time file " + settleTimeFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // CW settle time of a reader for a sensor type, the sensor type's default if not tuned
+    public static int settleMicros(String reader, SensorType type) {
+        SettleTimes settleTimes = openSettleTimes();
+        return settleTimes == null ? type.settleMicros : settleTimes.get(reader, type);
+    }
+
+    // CW settle time of a reader for a sensor type, tuned on the tags in front of the
+    // reader and kept in the settle time file the first time
+    public static int tuneSettleTime(SensorReader reader, SensorType type) {
+        SettleTimes settleTimes = openSettleTimes();
+        if (settleTimes == null) {
+            return type.settleMicros;
+        }
+        if (settleTimes.has(reader.name(), type)) {
+            return settleTimes.get(reader.name(), type);
+        }
+        try {
+            int settleMicros = new SettleTimeTuner(reader, type).tune();
+            if (settleMicros == 0) {
+                System.out.println("No temperature readings to tune the settle time with");
+                return type.settleMicros;
+            }
+            settleTimes.put(reader.name(), type, settleMicros);
+            System.out.println("Settle time for " + type + " on " + reader.name() + ": " + settleMicros + " us\n");
+            return settleMicros;
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            return type.settleMicros;
+        }
+    }
+
+    // the reader, recording its raw tag reads to the capture file if one is set
+    public static SensorReader capture(SensorReader reader, SensorType type) {
+        if (captureFile == null) {
+            return reader;
+        }
+        try {
+            return new CaptureReader(reader, type, captureFile);
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not open capture file " + captureFile + ": " + e.getMessage());
+            return reader;
+        }
+    }
+
+    // the console of the last readingSink()
+    static ConsoleSink console;
+
+    // print every reading, also write it to the output file and keep it in 'history'
+    // unless those are null; close() the sink at the end to write out what is queued
+    public static ReadingSink readingSink(ReadingLog history) {
+        console = new ConsoleSink();
+        ReadingSink sink = console;
+        if (outputFile != null) {
+            try {
+                sink = ReadingSink.tee(sink, BatchingWriter.open(outputFile));
+            }
+            catch (Exception e) {
+                System.out.println("Error: could not open output file " + outputFile + ": " + e.getMessage());
+            }
+        }
+        return history == null ? sink : ReadingSink.tee(sink, history);
+    }
+
+    // print a line in order with the readings printed by readingSink()'s console, until
+    // the sink is closed
+    public static void println(String line) {
+        if (console == null) {
+            System.out.println(line);
+        }
+        else {
+            console.println(line);
+        }
+    }
+
+    // read calibration words from the store, or from the tag if it hasn't been seen before
+    public static short[] readCalibration(Reader reader, CalibrationStore store, TagReadData tag, SensorType type) {
+        if (store == null) {
+            return readMemBlockByEpc(reader, tag, Gen2.Bank.USER, type.calibrationAddress, 4);
+        }
+        short[] calibrationWords = store.wordsByEpc(tag.getTag().epcBytes());
+        if (calibrationWords == null) {
+            // the TID identifies the tag even if its EPC has been rewritten
+            byte[] tid = convertShortArrayToByteArray(readMemBlockByEpc(reader, tag, Gen2.Bank.TID, 0, 6));
+            calibrationWords = store.words(tid);
+            if (calibrationWords == null) {
+                calibrationWords = readMemBlockByEpc(reader, tag, Gen2.Bank.USER, type.calibrationAddress, 4);
+            }
+            try {
+                store.put(tid, tag.getTag().epcBytes(), type, calibrationWords);
+            }
+            catch (Exception e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+        }
+        return calibrationWords;
+    }
+
+    // read the calibration of many tags in one inventory with an embedded read of their
+    // calibration block, returns calibration words by EPC for every tag that responded
+    public static HashMap<String, short[]> readCalibrationBulk(Reader reader, CalibrationStore store, SensorType type, Set<String> epcs) {
+        Gen2.Select tidFilter = createGen2Select(4, 0, Gen2.Bank.TID, 0x00, 28, type.tidPrefix);
+        HashMap<String, short[]> calibrations = new HashMap<>();
+        try {
+            calibrations = readMemBlocks(reader, tidFilter, Gen2.Bank.USER, type.calibrationAddress, 4, epcs, 3);
+            if (store != null && !calibrations.isEmpty()) {
+                // one more inventory collects the TIDs to key the stored calibration by
+                HashMap<String, short[]> tids = readMemBlocks(reader, tidFilter, Gen2.Bank.TID, 0, 6, calibrations.keySet(), 3);
+                for (Map.Entry<String, short[]> entry: tids.entrySet()) {
+                    try {
+                        store.put(convertShortArrayToByteArray(entry.getValue()), TagRead.fromHex(entry.getKey()), type, calibrations.get(entry.getKey()));
+                    }
+                    catch (Exception e) {
+                        System.out.println("Error: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        catch (ReaderException e) {
+            // the tags left out are read one at a time instead
+            System.out.println("Error: " + e.getMessage());
+        }
+        return calibrations;
+    }
+
+    // read multiple registers from every tag matching the filter with an embedded read,
+    // repeating the inventory until all of 'epcs' responded or the attempts are used up
+    public static HashMap<String, short[]> readMemBlocks(Reader reader, TagFilter filter, Gen2.Bank bank, int address, int length, Set<String> epcs, int attempts) throws ReaderException {
+        Gen2.ReadData operation = new Gen2.ReadData(bank, address, (byte)length);
+        SimpleReadPlan config = new SimpleReadPlan(antennas, TagProtocol.GEN2, filter, operation, 1000);
+        HashMap<String, short[]> values = new HashMap<>();
+        ReaderShadow.of(reader).sensorInventory(config, 300);
+        for (int i = 0; i < attempts; i++) {
+            TagReadData[] readResults = reader.read(readTime);
+            for (TagReadData readResult: readResults) {
+                byte[] dataBytes = readResult.getData();
+                if (dataBytes.length == length * 2) {
+                    values.put(readResult.epcString(), convertByteArrayToShortArray(dataBytes));
+                }
+            }
+            if (values.keySet().containsAll(epcs)) {
+                break;
+            }
+        }
+        return values;
+    }
+
     // read one register from one tag singulated by its EPC
     public static short readMemByEpc(Reader reader, TagReadData tag, Gen2.Bank bank, int address, int attempts){
         short[] values = readMemBlockByEpc(reader, tag, bank, address, 1, attempts);
@@ -1,6 +1,9 @@
 package thingmagic_samples;
 
+import java.util.Arrays;
 import com.thingmagic.*;
+import magnus_engine.AirTiming;
+import magnus_engine.SensorType;
 
 public class MagnusS2 {
 
@@ -13,13 +16,17 @@ public class MagnusS2 {
      * of these limits won't respond.
      *
      * Mode: select which sensor to use
-     * - Moisture: 'true'
-     * - On-Chip RSSI: 'false'
+     * - Moisture and On-Chip RSSI in one read: COMBINED
+     * - Moisture: MOISTURE
+     * - On-Chip RSSI: OCRSSI
      */
+    static final int COMBINED = 0;
+    static final int MOISTURE = 1;
+    static final int OCRSSI = 2;
     static int readAttempts = 10;
     static byte ocrssiMin = 3;
     static byte ocrssiMax = 31;
-    static boolean moistureMode = true;
+    static int mode = COMBINED;
 
     public static void main(String[] args) {
         try {
@@ -33,7 +40,11 @@ public class MagnusS2 {
             MultiFilter selects = new MultiFilter(new Gen2.Select[] { reset, ocrssiMinFilter, ocrssiMaxFilter });
 
             Gen2.ReadData operation;
-            if (moistureMode){
+            if (mode == COMBINED) {
+                // read parameters for moisture code (0xB) through on-chip RSSI code (0xD)
+                operation = new Gen2.ReadData(Gen2.Bank.RESERVED, 0xB, (byte)3);
+            }
+            else if (mode == MOISTURE) {
                 // read parameters for moisture code
                 operation = new Gen2.ReadData(Gen2.Bank.RESERVED, 0xB, (byte)1);
             }
@@ -46,6 +57,12 @@ public class MagnusS2 {
             SimpleReadPlan config = new SimpleReadPlan(Common.antennas, TagProtocol.GEN2, selects, operation, 1000);
             reader.paramSet(TMConstants.TMR_PARAM_READ_PLAN, config);
 
+            // estimated air time of the rounds, and of reading both codes by alternating modes
+            AirTiming timing = new AirTiming();
+            magnus_engine.Select[] airSelects = Arrays.copyOf(SensorType.MAGNUS_S2.selects(ocrssiMin, ocrssiMax), 3);
+            long combinedMicros = 0;
+            long alternatingMicros = 0;
+
             for (int i = 1; i <= readAttempts; i++) {
                 System.out.println("Read Attempt #" + i);
 
@@ -55,6 +72,9 @@ public class MagnusS2 {
                 if (results.length == 0) {
                     System.out.println("No tag(s) found");
                 }
+                int epcBytes = results.length == 0 ? 12 : results[0].getTag().epcBytes().length;
+                combinedMicros += timing.roundMicros(airSelects, results.length, epcBytes, 3);
+                alternatingMicros += 2 * timing.roundMicros(airSelects, results.length, epcBytes, 1);
                 for (TagReadData tag: results) {
                     String epc = tag.epcString();
                     System.out.println("* EPC: " + epc);
@@ -62,7 +82,27 @@ public class MagnusS2 {
                     if (dataWords.length == 0) {
                         continue;
                     }
-                    if (moistureMode) {
+                    if (mode == COMBINED) {
+                        int moistureCode = dataWords[0];
+                        int ocrssiCode = dataWords[2];
+
+                        // On-Chip RSSI Sensor
+                        System.out.println("  - On-Chip RSSI: " + ocrssiCode);
+
+                        // Moisture Sensor
+                        String moistureStatus;
+                        if (ocrssiCode < 5) {
+                            moistureStatus = "power too low";
+                        }
+                        else if (ocrssiCode > 21) {
+                            moistureStatus = "power too high";
+                        }
+                        else {
+                            moistureStatus = moistureCode + " at " + tag.getFrequency() + " kHz";
+                        }
+                        System.out.println("  - Moisture: " + moistureStatus);
+                    }
+                    else if (mode == MOISTURE) {
                         // Moisture Sensor
                         System.out.println("  - Moisture: " + dataWords[0] + " at " + tag.getFrequency() + " kHz");
                     }
@@ -73,6 +113,10 @@ public class MagnusS2 {
                 }
                 System.out.println();
             }
+            if (mode == COMBINED) {
+                System.out.println(String.format("Air time (estimated): %.1f ms, %.1f ms alternating Moisture and On-Chip RSSI modes, %.0f%% saved",
+                    combinedMicros / 1000.0, alternatingMicros / 1000.0, 100.0 * (alternatingMicros - combinedMicros) / Math.max(1, alternatingMicros)));
+            }
         }
         catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
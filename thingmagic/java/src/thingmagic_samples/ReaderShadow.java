@@ -0,0 +1,107 @@
+package thingmagic_samples;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import com.thingmagic.*;
+
+// shadow copy of the parameters set on a reader connection, so that switching between
+// sensor reading and memory reading only sends the parameters which actually change
+//
+// Every parameter sent is one serial/TCP round trip. The shadow only knows what was
+// set through it, so all paramSet() calls on a shadowed reader should go through
+// set(). If a paramSet() fails the reader's state is unknown and the shadow is cleared.
+public class ReaderShadow {
+
+    static final WeakHashMap<Reader, ReaderShadow> shadows = new WeakHashMap<>();
+
+    final Reader reader;
+    final HashMap<String, Object> values = new HashMap<>();
+    final TreeMap<Integer, Integer> portPower = new TreeMap<>();  // cdBm by antenna port
+
+    // round trips since the shadow was created
+    public long sent;
+    public long saved;
+
+    ReaderShadow(Reader reader) {
+        this.reader = reader;
+    }
+
+    // the shadow of a reader connection, created on first use
+    public static synchronized ReaderShadow of(Reader reader) {
+        ReaderShadow shadow = shadows.get(reader);
+        if (shadow == null) {
+            shadow = new ReaderShadow(reader);
+            shadows.put(reader, shadow);
+        }
+        return shadow;
+    }
+
+    // forget the shadow of a closed reader connection; the shadow refers to its reader,
+    // so the weak map alone would keep both
+    public static synchronized void remove(Reader reader) {
+        shadows.remove(reader);
+    }
+
+    // set a parameter unless the reader already has this value
+    public synchronized void set(String key, Object value) throws ReaderException {
+        if (values.containsKey(key) && same(values.get(key), value)) {
+            saved++;
+            return;
+        }
+        values.remove(key);
+        try {
+            reader.paramSet(key, value);
+        }
+        catch (ReaderException e) {
+            invalidate();
+            throw e;
+        }
+        values.put(key, value);
+        sent++;
+    }
+
+    // read power of one antenna port in dBm, the other ports keep theirs
+    public synchronized void setPortPower(int antenna, double dBm) throws ReaderException {
+        portPower.put(antenna, (int)Math.round(dBm * 100));
+        int[][] list = new int[portPower.size()][];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> port: portPower.entrySet()) {
+            list[i++] = new int[] { port.getKey(), port.getValue() };
+        }
+        set(TMConstants.TMR_PARAM_RADIO_PORTREADPOWERLIST, list);
+    }
+
+    // settings for reading sensors with an embedded read
+    public void sensorInventory(ReadPlan config, int settleMicros) throws ReaderException {
+        set(TMConstants.TMR_PARAM_READ_PLAN, config);
+        set(TMConstants.TMR_PARAM_GEN2_T4, Math.max(settleMicros, 300));  // CW delay in microseconds
+        set(TMConstants.TMR_PARAM_GEN2_SESSION, Common.session);
+        set(TMConstants.TMR_PARAM_GEN2_Q, new Gen2.DynamicQ());
+    }
+
+    // settings for reading an individual tag's memory
+    public void singulatedRead() throws ReaderException {
+        set(TMConstants.TMR_PARAM_GEN2_T4, 300);
+        set(TMConstants.TMR_PARAM_GEN2_SESSION, Gen2.Session.S0);
+        set(TMConstants.TMR_PARAM_GEN2_Q, new Gen2.StaticQ(0));
+    }
+
+    // forget the reader's state, e.g. after a reconnect
+    public synchronized void invalidate() {
+        values.clear();
+    }
+
+    // read plans are only equal to themselves, Q settings don't implement equals()
+    static boolean same(Object a, Object b) {
+        if (a == b || a.equals(b)) {
+            return true;
+        }
+        if (a instanceof Object[] && b instanceof Object[]) {
+            return Arrays.deepEquals((Object[])a, (Object[])b);
+        }
+        return a instanceof Gen2.Q && a.getClass() == b.getClass() && a.toString().equals(b.toString());
+    }
+}
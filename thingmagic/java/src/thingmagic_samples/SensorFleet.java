@@ -0,0 +1,62 @@
+package thingmagic_samples;
+
+import magnus_engine.MetricsReporter;
+import magnus_engine.ReaderFleet;
+import magnus_engine.ReadingSink;
+import magnus_engine.SensorReader;
+import magnus_engine.SensorType;
+
+// reads sensor tags with many readers from one process, printing each tag once even
+// where the readers' zones overlap
+public class SensorFleet {
+
+    /**
+     * Fleet Settings
+     *
+     * Reader URIs: one entry per reader, in the same format as Common.uri
+     *
+     * Sensor Type: which sensor tag family to read
+     *
+     * Run Time: how long to read, in seconds
+     *
+     * Metrics Interval: print each reader's phase latencies and read counts this
+     * often, in seconds, and once more at the end (0 for none, JMX has them anyway)
+     */
+    static String[] uris = { "tmr:///COM19", "tmr:///COM20" };
+    static SensorType sensorType = SensorType.MAGNUS_S3;
+    static int runTime = 30;
+    static int metricsInterval = 10;
+
+    public static void main(String[] args) {
+        ReadingSink sink = Common.readingSink(Common.openReadingLog());
+        ReaderFleet fleet = new ReaderFleet(sensorType, sink);
+        fleet.calibrationStore = Common.openCalibrationStore();
+        for (final String uri: uris) {
+            fleet.add(uri, new ReaderFleet.ReaderFactory() {
+                public SensorReader open() throws Exception {
+                    return new ThingMagicSensorReader(uri);
+                }
+            });
+        }
+        MetricsReporter metrics = MetricsReporter.start(metricsInterval);
+        try {
+            fleet.start();
+            Thread.sleep(runTime * 1000L);
+            fleet.stop();
+            if (metrics != null) {
+                metrics.close();
+            }
+            System.out.println("Readers: " + uris.length + ", rounds: " + fleet.rounds() + ", errors: " + fleet.errors());
+            System.out.println("Readings: " + fleet.accepted + ", duplicates: " + fleet.duplicates + ", dropped: " + fleet.dropped());
+            if (fleet.calibrationStore != null) {
+                fleet.calibrationStore.close();
+            }
+            sink.close();
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package thingmagic_samples;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import com.thingmagic.*;
+import magnus_engine.CalibrationStore;
+import magnus_engine.ReadPipeline;
+import magnus_engine.ReadingSink;
+import magnus_engine.SensorType;
+import magnus_engine.TagRead;
+
+// reads sensor tags continuously, handing every tag read to a bounded queue which worker
+// threads decode and calibrate, so that the radio never waits on decoding
+public class SensorStream {
+
+    /**
+     * Streaming Settings
+     *
+     * Sensor Type: which sensor tag family to read
+     *
+     * Run Time: how long to stream, in seconds
+     *
+     * Queue Capacity: tag reads buffered between the reader and the workers,
+     * reads arriving while it is full are dropped and counted
+     *
+     * Worker Threads: number of threads decoding and calibrating tag reads
+     *
+     * Calibration Interval: how often to pause the stream to read the calibration
+     * of new tags, in milliseconds
+     *
+     * Async Off Time: idle time between the reader's continuous inventory rounds,
+     * in milliseconds
+     */
+    static SensorType sensorType = SensorType.MAGNUS_S3;
+    static int runTime = 30;
+    static int queueCapacity = 4096;
+    static int workerThreads = 2;
+    static int calibrationInterval = 2000;
+    static int asyncOffTime = 0;
+
+    /**
+     * On-Chip RSSI Filters: sensor tags with on-chip RSSI codes outside
+     * of these limits won't respond
+     */
+    static byte ocrssiMin = 3;
+    static byte ocrssiMax = 31;
+
+    public static void main(String[] args) {
+        try {
+            // connect to and initialize reader
+            Reader reader = Common.establishReader();
+            CalibrationStore calibrationStore = Common.openCalibrationStore();
+            ReadingSink sink = Common.readingSink(Common.openReadingLog());
+
+            final ReadPipeline pipeline = new ReadPipeline(sensorType, sink, queueCapacity);
+            pipeline.calibrationStore = calibrationStore;
+            pipeline.start(workerThreads);
+
+            // the listener runs on the reader's receiving thread and only queues the read
+            reader.addReadListener(new ReadListener() {
+                public void tagRead(Reader r, TagReadData tag) {
+                    pipeline.offer(new TagRead(tag.getTag().epcBytes(), tag.getAntenna(), tag.getFrequency(), tag.getRssi(), tag.getData(), tag.getTime(), tag));
+                }
+            });
+            reader.addReadExceptionListener(new ReadExceptionListener() {
+                public void tagReadException(Reader r, ReaderException re) {
+                    System.out.println("Error: " + re.getMessage());
+                }
+            });
+
+            long end = System.currentTimeMillis() + runTime * 1000L;
+            while (System.currentTimeMillis() < end) {
+                configureSensorReading(reader);
+                reader.startReading();
+                Thread.sleep(Math.min(calibrationInterval, Math.max(0, end - System.currentTimeMillis())));
+                reader.stopReading();
+
+                // tags can't be singulated while streaming, read new calibrations in between
+                Set<String> uncalibrated = pipeline.takeUncalibrated();
+                if (!uncalibrated.isEmpty()) {
+                    HashMap<String, short[]> calibrations = Common.readCalibrationBulk(reader, calibrationStore, sensorType, uncalibrated);
+                    for (Map.Entry<String, short[]> entry: calibrations.entrySet()) {
+                        pipeline.addCalibration(entry.getKey(), entry.getValue());
+                    }
+                }
+                Common.println("Tag reads: " + pipeline.offered() + ", decoded: " + pipeline.processed()
+                    + ", dropped: " + pipeline.dropped() + ", queued: " + pipeline.queued());
+            }
+
+            // shut down
+            pipeline.stop();
+            if (calibrationStore != null) {
+                calibrationStore.close();
+            }
+            sink.close();
+            reader.destroy();
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    static SimpleReadPlan config;
+    static int settleMicros;
+
+    // settings for reading sensors continuously, only changed settings are sent
+    static void configureSensorReading(Reader reader) throws ReaderException {
+        if (config == null) {
+            config = createReadPlan();
+            settleMicros = Common.settleMicros(Common.uri, sensorType);  // tuned by ThingMagicSensorReader
+        }
+        ReaderShadow shadow = ReaderShadow.of(reader);
+        shadow.sensorInventory(config, settleMicros);
+        shadow.set(TMConstants.TMR_PARAM_READ_ASYNCONTIME, (int)Common.readTime);
+        shadow.set(TMConstants.TMR_PARAM_READ_ASYNCOFFTIME, asyncOffTime);
+    }
+
+    static SimpleReadPlan createReadPlan() {
+        // the reader accepts a maximum of 3x Select commands, the TID filter comes last and is left out
+        magnus_engine.Select[] selects = sensorType.selects(ocrssiMin, ocrssiMax);
+        Gen2.Select[] gen2Selects = Common.gen2Selects.compile(selects, 0, new Gen2.Select[Math.min(selects.length, 3)]);
+        Gen2.ReadData operation = new Gen2.ReadData(Gen2.Bank.RESERVED, sensorType.dataAddress, (byte)sensorType.dataLength);
+        return new SimpleReadPlan(Common.antennas, TagProtocol.GEN2, new MultiFilter(gen2Selects), operation, 1000);
+    }
+}
@@ -0,0 +1,209 @@
+package thingmagic_samples;
+
+import com.thingmagic.*;
+import magnus_engine.*;
+
+// SensorReader on top of the Mercury API, using the reader from Common.establishReader()
+public class ThingMagicSensorReader implements SensorReader {
+
+    /**
+     * Tag Settings
+     *
+     * Read Attempts: number of tries to read all nearby sensor tags
+     *
+     * Convergence: instead of Read Attempts, read until every tag's sensor codes
+     * are consistent, in 3 to 30 tries (see ConvergenceScheduler)
+     *
+     * Sensor Type: which sensor tag family to read
+     *
+     * Power Control: adjust each antenna's power between rounds so that the tags'
+     * on-chip RSSI codes stay within the limits of valid sensor values
+     *
+     * Settle Time Tuning: find the shortest CW settle time for the reader and sensor
+     * type on the tags in front of it, once, and keep it in Common.settleTimeFile
+     *
+     * Metrics Interval: print each reader's phase latencies and read counts this
+     * often, in seconds, and once more at the end (0 for none, JMX has them anyway)
+     *
+     * Mixed Types: read a population of these families with one inventory per round
+     * (see MixedSensorEngine) instead of Sensor Type, for Read Attempts rounds without
+     * convergence, power control, settle time tuning or the capture file
+     */
+    static int readAttempts = 10;
+    static boolean convergence = true;
+    static SensorType sensorType = SensorType.MAGNUS_S3;
+    static boolean powerControl = true;
+    static boolean settleTimeTuning = true;
+    static int metricsInterval = 10;
+    static SensorType[] mixedTypes = null;
+
+    // the ThingMagic samples count temperature codes above 3500 as bad reads, where
+    // the decoder's default is the Nordic ID samples' 4000
+    static {
+        SensorDecoder.temperatureCodeMax = 3500;
+    }
+
+    final String uri;
+    final Reader reader;
+    final ReaderMetrics metrics;
+    magnus_engine.Select[] selects;  // the current Select sequence and its filter
+    TagFilter filter;
+    SimpleReadPlan config;           // kept while unchanged, so the shadow doesn't send it again
+    int settleMicros;
+
+    public ThingMagicSensorReader() {
+        this.uri = Common.uri;
+        this.reader = Common.establishReader();
+        this.metrics = ReaderMetrics.of(this.uri);
+    }
+
+    // one reader of a fleet, unlike establishReader() failures are thrown
+    public ThingMagicSensorReader(String uri) throws ReaderException {
+        this.uri = uri;
+        this.reader = Common.connectReader(uri);
+        this.metrics = ReaderMetrics.of(uri);
+        try {
+            Common.initializeReader(this.reader);
+        }
+        catch (ReaderException e) {
+            ReaderShadow.remove(this.reader);
+            this.reader.destroy();
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (mixedTypes != null) {
+            readMixed();
+            return;
+        }
+        SensorReader reader = Common.capture(new ThingMagicSensorReader(), sensorType);
+        ReadingSink sink = Common.readingSink(Common.openReadingLog());
+        ConvergenceScheduler schedule = convergence ? new ConvergenceScheduler(sensorType) : null;
+        SensorEngine engine = new SensorEngine(reader, sensorType, schedule == null ? sink : ReadingSink.tee(sink, schedule));
+        if (settleTimeTuning) {
+            engine.settleMicros = Common.tuneSettleTime(reader, sensorType);
+        }
+        if (powerControl) {
+            engine.powerControl = new PowerController(sensorType, Common.power, Common.antennas);
+        }
+        MetricsReporter metrics = MetricsReporter.start(metricsInterval);
+        try {
+            for (int i = 1; schedule == null ? i <= readAttempts : schedule.next(); i++) {
+                Common.println("Read Attempt #" + i);
+                if (engine.readRound() == 0) {
+                    Common.println("No tag(s) found");
+                }
+                Common.println("");
+            }
+            if (schedule != null) {
+                Common.println("Reading cycle: " + schedule.attempts + " read attempt(s), " + schedule.roundPending + " tag(s) not converged, "
+                    + schedule.roundUnreadable + " without valid readings");
+            }
+            reader.close();
+            if (metrics != null) {
+                metrics.close();
+            }
+            sink.close();
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    // the rounds with a MixedSensorEngine
+    static void readMixed() {
+        SensorReader reader = new ThingMagicSensorReader();
+        ReadingSink sink = Common.readingSink(Common.openReadingLog());
+        MixedSensorEngine engine = new MixedSensorEngine(reader, mixedTypes, sink);
+        MetricsReporter metrics = MetricsReporter.start(metricsInterval);
+        try {
+            for (int i = 1; i <= readAttempts; i++) {
+                Common.println("Read Attempt #" + i);
+                if (engine.readRound() == 0) {
+                    Common.println("No tag(s) found");
+                }
+                Common.println("");
+            }
+            Common.println("Tag reads: " + engine.tagReads + ", TID reads: " + engine.tidReads + ", other tags: " + engine.unknownTags);
+            reader.close();
+            if (metrics != null) {
+                metrics.close();
+            }
+            sink.close();
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    public String name() {
+        return this.uri;
+    }
+
+    public void select(magnus_engine.Select[] selects, int settleMicros) {
+        this.settleMicros = settleMicros;
+        if (selects == this.selects) {
+            // the sensor types' sequences are shared, the same one again needs no new filter
+            return;
+        }
+        // the reader accepts a maximum of 3x Select commands, the TID filter which
+        // only narrows down the population comes last and is left out
+        int count = Math.min(selects.length, maxSelects());
+        this.filter = new MultiFilter(Common.gen2Selects.compile(selects, 0, new Gen2.Select[count]));
+        this.selects = selects;
+        this.config = null;
+    }
+
+    public int maxSelects() {
+        return 3;
+    }
+
+    public TagRead[] inventory(int bank, int address, int length) throws ReaderException {
+        Gen2.ReadData operation = config == null ? null : (Gen2.ReadData)config.Op;
+        if (operation == null || operation.Bank != Common.gen2Bank(bank) || operation.WordAddress != address || operation.Len != length
+                || config.antennas != Common.antennas) {
+            operation = new Gen2.ReadData(Common.gen2Bank(bank), address, (byte)length);
+            config = new SimpleReadPlan(Common.antennas, TagProtocol.GEN2, filter, operation, 1000);
+        }
+
+        // optimize settings for reading sensors, only changed settings are sent; the
+        // Selects and the CW delay themselves run within read()
+        long start = System.nanoTime();
+        ReaderShadow.of(reader).sensorInventory(config, settleMicros);
+        metrics.time(ReaderMetrics.SELECT, start);
+
+        // attempt to read sensor tags
+        start = System.nanoTime();
+        TagReadData[] results = reader.read(Common.readTime);
+        metrics.time(ReaderMetrics.INVENTORY, start);
+        start = System.nanoTime();
+        TagRead[] tags = new TagRead[results.length];
+        for (int i = 0; i < results.length; i++) {
+            TagReadData tag = results[i];
+            tags[i] = new TagRead(tag.getTag().epcBytes(), tag.getAntenna(), tag.getFrequency(), tag.getRssi(), tag.getData(), tag.getTime(), tag);
+        }
+        metrics.time(ReaderMetrics.FETCH, start);
+        return tags;
+    }
+
+    public short[] readMemBlock(TagRead tag, int bank, int address, int length) throws ReaderException {
+        // readTagMemory() switches to the settings for reading an individual tag's memory
+        return Common.readTagMemory(reader, (TagReadData)tag.source, Common.gen2Bank(bank), address, length, 3);
+    }
+
+    public void setPower(int antenna, double dBm) throws ReaderException {
+        ReaderShadow.of(reader).setPortPower(antenna, dBm);
+    }
+
+    public void close() {
+        ReaderShadow shadow = ReaderShadow.of(reader);
+        System.out.println("Reader settings sent: " + shadow.sent + ", round trips saved: " + shadow.saved);
+        ReaderShadow.remove(reader);
+        reader.destroy();
+    }
+}
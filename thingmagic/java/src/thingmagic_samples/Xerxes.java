@@ -1,6 +1,12 @@
 package thingmagic_samples;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import com.thingmagic.*;
+import magnus_engine.CalibrationCache;
+import magnus_engine.CalibrationStore;
+import magnus_engine.SensorType;
 
 public class Xerxes {
 
@@ -11,15 +17,32 @@ public class Xerxes {
      *
      * On-Chip RSSI Filters: sensor tags with on-chip RSSI codes outside
      * of these limits won't respond.
+     *
+     * Calibration Cache Size: number of tags whose calibration is kept
+     * in memory, least recently seen tags are dropped first
+     *
+     * Bulk Calibration: read the calibration of all new tags in one inventory
+     * instead of singulating them one at a time
+     *
+     * Bulk Calibration Share: smallest share of a read attempt's tags needing a
+     * calibration for the bulk read, fewer new tags are singulated one at a time
      */
     static int readAttempts = 10;
     static byte ocrssiMin = 3;
     static byte ocrssiMax = 31;
+    static int calibrationCacheSize = 10000;
+    static boolean bulkCalibration = true;
+    static double bulkCalibrationShare = 0.25;
+
+    static CalibrationCache<TemperatureCalibration> lookupCalibration = new CalibrationCache<>(calibrationCacheSize);
 
     public static void main(String[] args) {
         try {
             // connect to and initialize reader
             Reader reader = Common.establishReader();
+            CalibrationStore calibrationStore = Common.openCalibrationStore();
+            ReaderShadow shadow = ReaderShadow.of(reader);
+            int settleMicros = Common.settleMicros(Common.uri, SensorType.XERXES);  // tuned by ThingMagicSensorReader
 
             // setup sensor activation commands and filters ensuring On-Chip RSSI Min Filter is applied
             Gen2.Select globalEnable = Common.createGen2Select(4, 2, Gen2.Bank.USER, 0x3B0, 8, new byte[] { (byte)0x00 });
@@ -36,19 +59,16 @@ public class Xerxes {
             for (int i = 1; i <= readAttempts; i++) {
                 System.out.println("Read Attempt #" + i);
 
-                // optimize settings for reading sensors
-                reader.paramSet(TMConstants.TMR_PARAM_READ_PLAN, config);
-                reader.paramSet(TMConstants.TMR_PARAM_GEN2_T4, 9000);  // CW delay in microseconds
-                reader.paramSet(TMConstants.TMR_PARAM_GEN2_SESSION, Common.session);
-                reader.paramSet(TMConstants.TMR_PARAM_GEN2_Q, new Gen2.DynamicQ());
+                // optimize settings for reading sensors, only changed settings are sent
+                shadow.sensorInventory(config, settleMicros);  // CW delay in microseconds
 
                 // attempt to read sensor tags
                 TagReadData[] results = reader.read(Common.readTime);
 
-                // optimize settings for reading an individual tag's memory
-                reader.paramSet(TMConstants.TMR_PARAM_GEN2_T4, 300);
-                reader.paramSet(TMConstants.TMR_PARAM_GEN2_SESSION, Gen2.Session.S0);
-                reader.paramSet(TMConstants.TMR_PARAM_GEN2_Q, new Gen2.StaticQ(0));
+                // read the calibration of all new tags at once
+                if (bulkCalibration) {
+                    readNewCalibrations(reader, calibrationStore, results);
+                }
 
                 if (results.length == 0) {
                     System.out.println("No tag(s) found");
@@ -94,21 +114,27 @@ public class Xerxes {
                         temperatureStatus = "bad read";
                     }
                     else {
-                        try {
-                            // read, decode and apply calibration one tag at a time
-                            short[] calibrationWords = Common.readMemBlockByEpc(reader, tag, Gen2.Bank.USER, 0x12, 4);
-                            TemperatureCalibration cal = new TemperatureCalibration(calibrationWords);
-                            if (cal.valid) {
-                                double temperatureValue = cal.slope * temperatureCode + cal.offset;
-                                temperatureStatus = String.format("%.02f degC", temperatureValue);
-                            }
-                            else {
-                                temperatureStatus = "invalid calibration";
+                        // read and decode calibration only for tags not seen before
+                        // (or missed by the bulk calibration read)
+                        TemperatureCalibration cal = lookupCalibration.get(epc);
+                        if (cal == null) {
+                            try {
+                                short[] calibrationWords = Common.readCalibration(reader, calibrationStore, tag, SensorType.XERXES);
+                                cal = new TemperatureCalibration(calibrationWords);
+                                lookupCalibration.put(epc, cal, cal.valid);
                             }
+                            catch (RuntimeException e) { }
                         }
-                        catch (RuntimeException e) {
+                        if (cal == null) {
                             temperatureStatus = "failed to read calibration";
                         }
+                        else if (cal.valid) {
+                            double temperatureValue = cal.slope * temperatureCode + cal.offset;
+                            temperatureStatus = String.format("%.02f degC", temperatureValue);
+                        }
+                        else {
+                            temperatureStatus = "invalid calibration";
+                        }
                     }
                     System.out.println("  - Temperature: " + temperatureStatus);
 
@@ -136,10 +162,15 @@ public class Xerxes {
                     else {
                         backport2Status = backport2Code + "";
                     }
-                    System.out.println("  - Backport 1: " + backport2Status);
+                    System.out.println("  - Backport 2: " + backport2Status);
                 }
                 System.out.println();
             }
+            System.out.println("Reader settings sent: " + shadow.sent + ", round trips saved: " + shadow.saved);
+            if (calibrationStore != null) {
+                calibrationStore.close();
+            }
+            reader.destroy();
         }
         catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
@@ -148,6 +179,41 @@ public class Xerxes {
         }
     }
 
+    // read, decode and cache the calibration of all tags not seen before at once
+    static void readNewCalibrations(Reader reader, CalibrationStore calibrationStore, TagReadData[] results) {
+        HashSet<String> uncalibrated = new HashSet<>();
+        for (TagReadData tag: results) {
+            String epc = tag.epcString();
+            short[] dataWords = Common.convertByteArrayToShortArray(tag.getData());
+            if (dataWords.length == 0 || lookupCalibration.get(epc) != null) {
+                continue;
+            }
+            // only tags with a temperature code to calibrate, see the Temperature Sensor above
+            int ocrssiCode = dataWords[3];
+            int temperatureCode = dataWords[4];
+            if (ocrssiCode < 5 || ocrssiCode > 18 || temperatureCode < 1000 || 3500 < temperatureCode) {
+                continue;
+            }
+            short[] calibrationWords = calibrationStore == null ? null : calibrationStore.wordsByEpc(tag.getTag().epcBytes());
+            if (calibrationWords != null) {
+                TemperatureCalibration cal = new TemperatureCalibration(calibrationWords);
+                lookupCalibration.put(epc, cal, cal.valid);
+            }
+            else {
+                uncalibrated.add(epc);
+            }
+        }
+        // a few new tags are cheaper to singulate than up to three more inventories
+        if (uncalibrated.isEmpty() || uncalibrated.size() < bulkCalibrationShare * results.length) {
+            return;
+        }
+        HashMap<String, short[]> calibrations = Common.readCalibrationBulk(reader, calibrationStore, SensorType.XERXES, uncalibrated);
+        for (Map.Entry<String, short[]> entry: calibrations.entrySet()) {
+            TemperatureCalibration cal = new TemperatureCalibration(entry.getValue());
+            lookupCalibration.put(entry.getKey(), cal, cal.valid);
+        }
+    }
+
     static class TemperatureCalibration {
         public boolean valid = false;
         public int fmt;
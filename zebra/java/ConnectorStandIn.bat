@@ -0,0 +1,7 @@
+echo off
+rem usage: ConnectorStandIn.bat [readers] [events per second per reader] [tags per reader]
+if not exist ".\build" mkdir .\build
+javac -d ./build ../../engine/java/src/magnus_engine/*.java src/zebra_samples/ConnectorStandIn.java
+if %ERRORLEVEL% EQU 0 (
+    java -cp ./build zebra_samples.ConnectorStandIn %*
+)
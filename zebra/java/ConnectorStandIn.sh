@@ -0,0 +1,7 @@
+#!/bin/bash
+# usage: ./ConnectorStandIn.sh [readers] [events per second per reader] [tags per reader]
+mkdir -p ./build
+javac -d ./build ../../engine/java/src/magnus_engine/*.java src/zebra_samples/ConnectorStandIn.java
+if [ $? -eq 0 ]; then
+    java -cp ./build zebra_samples.ConnectorStandIn "$@"
+fi
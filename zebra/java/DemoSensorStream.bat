@@ -0,0 +1,9 @@
+echo off
+rem usage: DemoSensorStream.bat [reader[:port] ...]
+cls
+if not exist ".\build" mkdir .\build
+javac -d ./build ../../engine/java/src/magnus_engine/*.java src/zebra_samples/Common.java src/zebra_samples/TagEventParser.java src/zebra_samples/TagDataReceiver.java src/zebra_samples/SensorStream.java
+if %ERRORLEVEL% EQU 0 (
+    java -cp ./build zebra_samples.SensorStream %*
+)
+pause
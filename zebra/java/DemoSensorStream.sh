@@ -0,0 +1,9 @@
+#!/bin/bash
+# usage: ./DemoSensorStream.sh [reader[:port] ...]
+clear
+mkdir -p ./build
+javac -d ./build ../../engine/java/src/magnus_engine/*.java src/zebra_samples/Common.java src/zebra_samples/TagEventParser.java src/zebra_samples/TagDataReceiver.java src/zebra_samples/SensorStream.java
+if [ $? -eq 0 ]; then
+    java -cp ./build zebra_samples.SensorStream "$@"
+fi
+read -p "Press any key to continue . . ."
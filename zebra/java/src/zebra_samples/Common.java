@@ -0,0 +1,80 @@
+package zebra_samples;
+
+import magnus_engine.BatchingWriter;
+import magnus_engine.ConsoleSink;
+import magnus_engine.ReadingLog;
+import magnus_engine.ReadingSink;
+
+public class Common {
+
+    /**
+     * Application Settings
+     * These are common parameters which are intended to be customized
+     * based on how the readers and tags are deployed.
+     *
+     * Readers: data endpoints of the readers' IoT Connector, "host" or "host:port",
+     * set up as described in "Reading Magnus S3 Temperature Using Zebra's IOT Connector"
+     *
+     * Port: port of the TCP data endpoint, unless the reader names one
+     *
+     * Calibration Access, Data Access: position of the calibration block read
+     * (USER bank, 4 words) and of the sensor code read (RESERVED bank) in the
+     * operating mode's "accesses", -1 if the mode doesn't read it
+     *
+     * History Directory: keeps every reading in an append-only log (set to 'null'
+     * to keep no history)
+     *
+     * Output File: also write every reading to this file, as JSON Lines (.jsonl),
+     * CSV (.csv) or compact binary (.bin) (set to 'null' for none)
+     */
+    static String[] readers = { "192.168.1.100" };
+    static int port = 8081;
+    static int calibrationAccess = 0;
+    static int dataAccess = 1;
+    public static String historyDirectory = "history";
+    public static String outputFile = null;
+
+    // open the reading history, null if disabled or it can't be opened
+    public static ReadingLog openReadingLog() {
+        if (historyDirectory == null) {
+            return null;
+        }
+        try {
+            return ReadingLog.open(historyDirectory);
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not open history directory " + historyDirectory + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // the console of the last readingSink()
+    static ConsoleSink console;
+
+    // print every reading, also write it to the output file and keep it in 'history'
+    // unless those are null; close() the sink at the end to write out what is queued
+    public static ReadingSink readingSink(ReadingLog history) {
+        console = new ConsoleSink();
+        ReadingSink sink = console;
+        if (outputFile != null) {
+            try {
+                sink = ReadingSink.tee(sink, BatchingWriter.open(outputFile));
+            }
+            catch (Exception e) {
+                System.out.println("Error: could not open output file " + outputFile + ": " + e.getMessage());
+            }
+        }
+        return history == null ? sink : ReadingSink.tee(sink, history);
+    }
+
+    // print a line in order with the readings printed by readingSink()'s console, until
+    // the sink is closed
+    public static void println(String line) {
+        if (console == null) {
+            System.out.println(line);
+        }
+        else {
+            console.println(line);
+        }
+    }
+}
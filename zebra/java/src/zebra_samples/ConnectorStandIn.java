@@ -0,0 +1,147 @@
+package zebra_samples;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.locks.LockSupport;
+import magnus_engine.PopulationGenerator;
+import magnus_engine.SensorType;
+import magnus_engine.SimulatedTag;
+import magnus_engine.TagRead;
+
+// local stand-in for the TCP data endpoints of several readers running the IoT
+// Connector, for trying SensorStream and load testing it without readers
+//
+// Each stand-in reader listens on its own port on localhost and sends every client
+// tag data events in the connector's format, with the calibration block and the
+// sensor codes as the two access results. The tags come from a PopulationGenerator,
+// each reader with its own tags.
+//
+// usage: ConnectorStandIn [readers] [events per second per reader] [tags per reader]
+public class ConnectorStandIn {
+
+    /**
+     * Stand-In Settings
+     *
+     * Readers: number of stand-in readers, on consecutive ports from Port
+     *
+     * Event Rate: tag data events per second sent by each reader
+     *
+     * Tag Count: tags in front of each reader
+     *
+     * Corruption Rate: share of the tags with corrupted calibration words
+     */
+    static int readers = 4;
+    static int port = 8081;
+    static int eventRate = 5000;
+    static int tagCount = 500;
+    static double corruptionRate = 0.01;
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            readers = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            eventRate = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            tagCount = Integer.parseInt(args[2]);
+        }
+        try {
+            for (int reader = 0; reader < readers; reader++) {
+                final ServerSocket server = new ServerSocket(port + reader, 50, InetAddress.getLoopbackAddress());
+                final int first = reader * tagCount;
+                Thread acceptor = new Thread(new Runnable() {
+                    public void run() {
+                        accept(server, first);
+                    }
+                }, "StandIn-" + server.getLocalPort());
+                acceptor.start();
+                System.out.println("Stand-in reader on localhost:" + server.getLocalPort() + ", " + eventRate + " events/s");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    static void accept(ServerSocket server, final int first) {
+        while (true) {
+            try {
+                final Socket client = server.accept();
+                Thread sender = new Thread(new Runnable() {
+                    public void run() {
+                        send(client, first);
+                    }
+                }, "StandIn-" + server.getLocalPort() + "-client");
+                sender.setDaemon(true);
+                sender.start();
+            }
+            catch (IOException e) {
+                System.out.println("Error: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // send events to one client until it disconnects, paced in 10 ms slices
+    static void send(Socket client, int first) {
+        PopulationGenerator generator = new PopulationGenerator(1);
+        generator.types = new SensorType[] { SensorType.MAGNUS_S3 };
+        generator.mix = new double[] { 1 };
+        generator.corruptionRate = corruptionRate;
+        SimulatedTag[] tags = new SimulatedTag[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            tags[i] = generator.tag(first + i);
+        }
+        SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+        timestamp.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Random random = new Random(first);
+        StringBuilder line = new StringBuilder(512);
+        long eventNum = 0;
+        try (OutputStream out = new BufferedOutputStream(client.getOutputStream(), 65536)) {
+            long next = System.nanoTime();
+            double due = 0;
+            while (true) {
+                due += eventRate / 100.0;
+                String time = timestamp.format(new Date());
+                for (; due >= 1; due--) {
+                    SimulatedTag tag = tags[random.nextInt(tags.length)];
+                    event(line, ++eventNum, generator.read(tag), PopulationGenerator.calibrationWords(tag), time);
+                    for (int i = 0; i < line.length(); i++) {
+                        out.write(line.charAt(i));
+                    }
+                }
+                out.flush();
+                next += 10000000;
+                LockSupport.parkNanos(next - System.nanoTime());
+            }
+        }
+        catch (IOException e) {
+            // the client disconnected
+        }
+    }
+
+    // one tag data event line as the connector sends it
+    static void event(StringBuilder line, long eventNum, TagRead read, short[] calibrationWords, String time) {
+        line.setLength(0);
+        line.append("{\"data\":{\"eventNum\":").append(eventNum);
+        line.append(",\"format\":\"epc\",\"idHex\":\"").append(TagRead.toHex(read.epc).toLowerCase());
+        line.append("\",\"antenna\":").append(read.antenna);
+        line.append(",\"peakRssi\":").append(read.rssi);
+        line.append(",\"channel\":").append(read.frequency / 1000.0);
+        line.append(",\"reads\":1,\"accessResults\":[\"");
+        line.append(TagRead.toHex(TagRead.wordsToBytes(calibrationWords)).toLowerCase()).append("\",\"");
+        line.append(TagRead.toHex(read.data).toLowerCase()).append("\"]},\"timestamp\":\"");
+        line.append(time).append("\",\"type\":\"SIMPLE\"}\n");
+    }
+}
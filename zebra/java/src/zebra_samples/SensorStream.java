@@ -0,0 +1,114 @@
+package zebra_samples;
+
+import magnus_engine.EpcTable;
+import magnus_engine.ReadPipeline;
+import magnus_engine.ReadingSink;
+import magnus_engine.SensorType;
+import magnus_engine.TagRead;
+import magnus_engine.TemperatureCalibration;
+
+// reads Magnus S3 temperature from the tag data events of one or more Zebra FX readers
+// running the IoT Connector, handing every event to a bounded queue which worker
+// threads decode and calibrate
+//
+// The readers run the operating mode from "Reading Magnus S3 Temperature Using Zebra's
+// IOT Connector": the sensor Selects, a 3 ms delay after them and two reads per tag,
+// the calibration block and the sensor codes. Every event therefore carries the tag's
+// calibration, which is handed to the pipeline the first time a tag is seen; no tag
+// ever needs to be singulated. All readers are received on one selector thread.
+//
+// Run ConnectorStandIn first to try it without readers, then give its endpoints on the
+// command line: SensorStream localhost:8081 localhost:8082
+public class SensorStream implements TagEventParser.Handler {
+
+    /**
+     * Streaming Settings
+     *
+     * Sensor Type: which sensor tag family the readers' operating mode reads
+     *
+     * Run Time: how long to stream, in seconds
+     *
+     * Queue Capacity: tag reads buffered between the receiver and the workers,
+     * reads arriving while it is full are dropped and counted
+     *
+     * Worker Threads: number of threads decoding and calibrating tag reads
+     *
+     * Status Interval: how often to print the receiver's and the pipeline's counts,
+     * in milliseconds
+     */
+    static SensorType sensorType = SensorType.MAGNUS_S3;
+    static int runTime = 30;
+    static int queueCapacity = 65536;
+    static int workerThreads = 2;
+    static int statusInterval = 2000;
+
+    /**
+     * Shared class objects
+     */
+    ReadPipeline pipeline;
+    final EpcTable<short[]> calibrated = new EpcTable<>();  // only used on the receiver's thread
+
+    public static void main(String[] args) {
+        String[] readers = args.length > 0 ? args : Common.readers;
+        SensorStream stream = new SensorStream();
+        ReadingSink sink = Common.readingSink(Common.openReadingLog());
+        try {
+            stream.pipeline = new ReadPipeline(sensorType, sink, queueCapacity);
+            stream.pipeline.start(workerThreads);
+            TagDataReceiver receiver = new TagDataReceiver();
+            for (String reader: readers) {
+                receiver.add(reader, Common.port, stream);
+            }
+            receiver.start();
+
+            long end = System.currentTimeMillis() + runTime * 1000L;
+            while (System.currentTimeMillis() < end) {
+                Thread.sleep(Math.max(1, Math.min(statusInterval, end - System.currentTimeMillis())));
+                stream.printStatus(receiver);
+            }
+
+            // shut down
+            receiver.close();
+            stream.pipeline.stop();
+            sink.close();
+            stream.printStatus(receiver);
+        }
+        catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace(System.out);
+            System.exit(-1);
+        }
+    }
+
+    // called on the receiver's thread for every tag data event
+    public void tagEvent(TagEventParser event) {
+        byte[] epc = event.epc();
+        if (Common.calibrationAccess >= 0 && (epc.length > EpcTable.MAX_EPC_LENGTH || this.calibrated.find(epc) < 0)) {
+            short[] calibrationWords = event.accessWords(Common.calibrationAccess, 4);
+            if (calibrationWords != null) {
+                this.pipeline.addCalibration(TagRead.toHex(epc), calibrationWords);
+                // words that fail their CRC are taken again from the tag's next event
+                boolean valid = !sensorType.hasTemperature() || TemperatureCalibration.decode(sensorType, calibrationWords).valid;
+                if (valid && epc.length <= EpcTable.MAX_EPC_LENGTH) {
+                    this.calibrated.put(epc, calibrationWords);
+                }
+            }
+        }
+        byte[] data = Common.dataAccess >= 0 ? event.access(Common.dataAccess) : new byte[0];
+        this.pipeline.offer(new TagRead(epc, event.antenna, event.frequency, event.rssi, data, System.currentTimeMillis(), null));
+    }
+
+    void printStatus(TagDataReceiver receiver) {
+        long events = 0;
+        long malformed = 0;
+        int connected = 0;
+        for (TagDataReceiver.Connection connection: receiver.connections()) {
+            events += connection.parser.events;
+            malformed += connection.parser.malformed;
+            connected += connection.connected() ? 1 : 0;
+        }
+        Common.println("Readers connected: " + connected + "/" + receiver.connections().size() + ", events: " + events
+            + " (" + malformed + " malformed), decoded: " + this.pipeline.processed() + ", dropped: " + this.pipeline.dropped()
+            + ", queued: " + this.pipeline.queued());
+    }
+}
@@ -0,0 +1,214 @@
+package zebra_samples;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+// receives the tag data events of many readers' IoT Connector TCP endpoints on one
+// selector thread
+//
+// Every connection is a non-blocking channel with its own receive buffer and parser, so
+// a reader sending slowly or in pieces never holds up the others. The buffers are
+// allocated once and parsed in place. A connection that fails or is closed by the
+// reader is reopened after reconnectMillis.
+public class TagDataReceiver {
+
+    /**
+     * Receiver Settings
+     *
+     * Buffer Size: receive buffer of each connection in bytes, also the longest event
+     *
+     * Reconnect Delay: wait before reopening a lost connection, in milliseconds
+     */
+    public int bufferSize = 65536;
+    public int reconnectMillis = 2000;
+
+    // one reader's data endpoint
+    public static class Connection {
+        public final String name;
+        final String host;
+        final int port;
+        final ByteBuffer buffer;
+        public final TagEventParser parser;
+        volatile SocketChannel channel;
+        long reconnectAt;
+
+        // totals since the receiver was created
+        public volatile long bytes;
+        public volatile long connects;
+
+        Connection(String host, int port, int bufferSize, TagEventParser parser) {
+            this.name = host + ":" + port;
+            this.host = host;
+            this.port = port;
+            this.buffer = ByteBuffer.allocate(bufferSize);
+            this.parser = parser;
+        }
+
+        public boolean connected() {
+            return channel != null && channel.isConnected();
+        }
+    }
+
+    final Selector selector;
+    final ArrayList<Connection> connections = new ArrayList<>();
+    Thread thread;
+    volatile boolean running;
+
+    public TagDataReceiver() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    // add a reader's endpoint, "host" or "host:port", before start(); its events go to
+    // 'handler' on the receiver's thread
+    public Connection add(String endpoint, int defaultPort, TagEventParser.Handler handler) {
+        int colon = endpoint.lastIndexOf(':');
+        String host = colon < 0 ? endpoint : endpoint.substring(0, colon);
+        int port = colon < 0 ? defaultPort : Integer.parseInt(endpoint.substring(colon + 1));
+        Connection connection = new Connection(host, port, bufferSize, new TagEventParser(handler));
+        connections.add(connection);
+        return connection;
+    }
+
+    public ArrayList<Connection> connections() {
+        return connections;
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                receive();
+            }
+        }, "TagDataReceiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // stop receiving and close all connections
+    public void close() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        if (thread != null) {
+            thread.join();
+        }
+        for (Connection connection: connections) {
+            disconnect(connection, 0);
+        }
+        try {
+            selector.close();
+        }
+        catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    void receive() {
+        for (Connection connection: connections) {
+            connect(connection);
+        }
+        while (running) {
+            try {
+                selector.select(100);
+            }
+            catch (IOException e) {
+                System.out.println("Error: " + e.getMessage());
+                return;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection)key.attachment();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isConnectable()) {
+                    finishConnect(connection, key);
+                }
+                else if (key.isReadable()) {
+                    read(connection);
+                }
+            }
+            long now = System.currentTimeMillis();
+            for (Connection connection: connections) {
+                if (connection.channel == null && now >= connection.reconnectAt) {
+                    connect(connection);
+                }
+            }
+        }
+    }
+
+    void connect(Connection connection) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            connection.channel = channel;
+            channel.configureBlocking(false);
+            if (channel.connect(new InetSocketAddress(connection.host, connection.port))) {
+                channel.register(selector, SelectionKey.OP_READ, connection);
+                connected(connection);
+            }
+            else {
+                channel.register(selector, SelectionKey.OP_CONNECT, connection);
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Error: could not connect to " + connection.name + ": " + e.getMessage());
+            disconnect(connection, reconnectMillis);
+        }
+    }
+
+    void finishConnect(Connection connection, SelectionKey key) {
+        try {
+            connection.channel.finishConnect();
+            key.interestOps(SelectionKey.OP_READ);
+            connected(connection);
+        }
+        catch (IOException e) {
+            System.out.println("Error: could not connect to " + connection.name + ": " + e.getMessage());
+            disconnect(connection, reconnectMillis);
+        }
+    }
+
+    void connected(Connection connection) {
+        connection.parser.reset(connection.buffer);
+        connection.connects++;
+        System.out.println("Connected to " + connection.name);
+    }
+
+    void read(Connection connection) {
+        try {
+            int count = connection.channel.read(connection.buffer);
+            if (count < 0) {
+                System.out.println("Error: " + connection.name + " closed the connection");
+                disconnect(connection, reconnectMillis);
+                return;
+            }
+            connection.bytes += count;
+            connection.buffer.flip();
+            connection.parser.parse(connection.buffer);
+        }
+        catch (IOException e) {
+            System.out.println("Error: " + connection.name + ": " + e.getMessage());
+            disconnect(connection, reconnectMillis);
+        }
+    }
+
+    void disconnect(Connection connection, int delayMillis) {
+        if (connection.channel != null) {
+            try {
+                connection.channel.close();
+            }
+            catch (IOException e) {
+                // closed anyway
+            }
+            connection.channel = null;
+        }
+        connection.reconnectAt = System.currentTimeMillis() + delayMillis;
+    }
+}
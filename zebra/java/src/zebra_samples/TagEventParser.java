@@ -0,0 +1,269 @@
+package zebra_samples;
+
+import java.nio.ByteBuffer;
+
+// incremental parser of the newline-delimited JSON tag data events the IoT Connector
+// sends to a TCP data endpoint, for example:
+//
+// {"data":{"eventNum":1,"format":"epc","idHex":"e28240300000...","antenna":1,"peakRssi":-52,
+//  "channel":915.25,"reads":1,"accessResults":["c60390689b3e5604","0087001608d0"]},
+//  "timestamp":"2024-01-16T19:42:05.163+0000","type":"SIMPLE"}
+//
+// The parser works on the bytes of the connection's receive buffer as they arrive,
+// without building strings. It only knows the fields a sensor reading needs and skips
+// everything else, wherever the connector puts it. A line cut off by the end of the
+// buffer is left in it for the next read; a line longer than the buffer is skipped
+// and counted as malformed.
+public class TagEventParser {
+
+    public static final int MAX_ACCESSES = 8;
+    static final int MAX_EPC_BYTES = 62;
+
+    // fields of the current event
+    public final byte[] epc = new byte[MAX_EPC_BYTES];
+    public int epcLength;
+    public int antenna;
+    public int rssi;       // dBm
+    public int frequency;  // kHz
+    public int accessCount;
+    final byte[][] accessData = new byte[MAX_ACCESSES][64];
+    final int[] accessLength = new int[MAX_ACCESSES];
+
+    // called for every complete tag event
+    public interface Handler {
+        void tagEvent(TagEventParser event);
+    }
+
+    final Handler handler;
+    boolean skipping;  // inside a line too long for the buffer
+
+    // totals since the parser was created
+    public volatile long events;
+    public volatile long malformed;
+
+    public TagEventParser(Handler handler) {
+        this.handler = handler;
+    }
+
+    // parse the complete lines between the buffer's position and limit, leaving the buffer
+    // compacted for the next read with what is left of an incomplete line
+    public void parse(ByteBuffer buffer) {
+        byte[] bytes = buffer.array();
+        int start = buffer.arrayOffset() + buffer.position();
+        int end = buffer.arrayOffset() + buffer.limit();
+        int lineStart = start;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == '\n') {
+                if (skipping) {
+                    skipping = false;
+                }
+                else {
+                    line(bytes, lineStart, i);
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (skipping || (lineStart == start && end - start == buffer.capacity())) {
+            // no end of line yet in a line longer than the buffer
+            if (!skipping) {
+                skipping = true;
+                malformed++;
+            }
+            lineStart = end;
+        }
+        buffer.position(lineStart - buffer.arrayOffset());
+        buffer.compact();
+    }
+
+    // a connection was closed or reopened, drop what is left of its last line
+    public void reset(ByteBuffer buffer) {
+        buffer.clear();
+        skipping = false;
+    }
+
+    // the embedded read result of access 'index' as big-endian words, empty if missing
+    public byte[] access(int index) {
+        byte[] data = new byte[index < accessCount ? accessLength[index] : 0];
+        if (data.length > 0) {
+            System.arraycopy(accessData[index], 0, data, 0, data.length);
+        }
+        return data;
+    }
+
+    // the result of access 'index' as words, null if it has fewer than 'count' words
+    public short[] accessWords(int index, int count) {
+        if (index >= accessCount || accessLength[index] < count * 2) {
+            return null;
+        }
+        short[] words = new short[count];
+        for (int i = 0; i < count; i++) {
+            words[i] = (short)(((accessData[index][2 * i] & 0xFF) << 8) | (accessData[index][2 * i + 1] & 0xFF));
+        }
+        return words;
+    }
+
+    public byte[] epc() {
+        byte[] bytes = new byte[epcLength];
+        System.arraycopy(epc, 0, bytes, 0, epcLength);
+        return bytes;
+    }
+
+    // one event from 'from' up to the newline at 'to'
+    void line(byte[] bytes, int from, int to) {
+        epcLength = -1;
+        antenna = 0;
+        rssi = 0;
+        frequency = 0;
+        accessCount = 0;
+        int i = skipSpace(bytes, from, to);
+        if (i == to) {
+            return;  // keep-alive or blank line
+        }
+        try {
+            while (i < to) {
+                if (bytes[i] != '"') {
+                    i++;
+                    continue;
+                }
+                int keyStart = i + 1;
+                int keyEnd = stringEnd(bytes, keyStart, to);
+                i = skipSpace(bytes, keyEnd + 1, to);
+                if (i == to || bytes[i] != ':') {
+                    continue;  // a string value, not a key
+                }
+                i = skipSpace(bytes, i + 1, to);
+                i = value(bytes, keyStart, keyEnd, i, to);
+            }
+        }
+        catch (RuntimeException e) {
+            malformed++;
+            return;
+        }
+        if (epcLength < 0) {
+            malformed++;
+            return;
+        }
+        events++;
+        handler.tagEvent(this);
+    }
+
+    // parse the value of a known key starting at 'i', returns where parsing goes on
+    int value(byte[] bytes, int keyStart, int keyEnd, int i, int to) {
+        if (is(bytes, keyStart, keyEnd, "idHex")) {
+            int valueEnd = stringEnd(bytes, i + 1, to);
+            epcLength = hex(bytes, i + 1, valueEnd, epc);
+            return valueEnd + 1;
+        }
+        if (is(bytes, keyStart, keyEnd, "antenna")) {
+            antenna = (int)number(bytes, i, to, 1);
+        }
+        else if (is(bytes, keyStart, keyEnd, "peakRssi")) {
+            rssi = (int)number(bytes, i, to, 1);
+        }
+        else if (is(bytes, keyStart, keyEnd, "channel")) {
+            frequency = (int)number(bytes, i, to, 1000);  // MHz
+        }
+        else if (is(bytes, keyStart, keyEnd, "accessResults") && bytes[i] == '[') {
+            i = skipSpace(bytes, i + 1, to);
+            while (i < to && bytes[i] != ']') {
+                if (bytes[i] == '"') {
+                    int valueEnd = stringEnd(bytes, i + 1, to);
+                    if (accessCount < MAX_ACCESSES) {
+                        if (accessData[accessCount].length < (valueEnd - i) / 2) {
+                            accessData[accessCount] = new byte[(valueEnd - i) / 2];
+                        }
+                        accessLength[accessCount] = hex(bytes, i + 1, valueEnd, accessData[accessCount]);
+                        accessCount++;
+                    }
+                    i = valueEnd + 1;
+                }
+                else {
+                    i++;
+                }
+            }
+            return i;
+        }
+        return i;
+    }
+
+    // a JSON number times 'scale', rounded to a long
+    static long number(byte[] bytes, int i, int to, int scale) {
+        boolean negative = bytes[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long whole = 0;
+        while (i < to && bytes[i] >= '0' && bytes[i] <= '9') {
+            whole = whole * 10 + (bytes[i++] - '0');
+        }
+        long value = whole * scale;
+        if (i < to && bytes[i] == '.') {
+            // rounded to the scale, digits beyond nine don't matter
+            long fraction = 0;
+            long divisor = 1;
+            for (i++; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                if (divisor < 1000000000L) {
+                    fraction = fraction * 10 + (bytes[i] - '0');
+                    divisor *= 10;
+                }
+            }
+            value += (fraction * scale * 2 + divisor) / (divisor * 2);
+        }
+        return negative ? -value : value;
+    }
+
+    // hex digits between 'from' and 'to' into 'out', returns the bytes written
+    static int hex(byte[] bytes, int from, int to, byte[] out) {
+        if ((to - from) % 2 != 0 || (to - from) / 2 > out.length) {
+            throw new IllegalArgumentException("bad hex field");
+        }
+        int length = 0;
+        for (int i = from; i < to; i += 2) {
+            out[length++] = (byte)((digit(bytes[i]) << 4) | digit(bytes[i + 1]));
+        }
+        return length;
+    }
+
+    static int digit(byte c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        throw new IllegalArgumentException("bad hex digit");
+    }
+
+    // index of the quote closing a string which starts at 'i'
+    static int stringEnd(byte[] bytes, int i, int to) {
+        while (i < to && bytes[i] != '"') {
+            i += bytes[i] == '\\' ? 2 : 1;
+        }
+        if (i >= to) {
+            throw new IllegalArgumentException("unterminated string");
+        }
+        return i;
+    }
+
+    static int skipSpace(byte[] bytes, int i, int to) {
+        while (i < to && (bytes[i] == ' ' || bytes[i] == '\t' || bytes[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    static boolean is(byte[] bytes, int from, int to, String key) {
+        if (to - from != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (bytes[from + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}